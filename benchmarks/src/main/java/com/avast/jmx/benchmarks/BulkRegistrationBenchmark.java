@@ -0,0 +1,57 @@
+package com.avast.jmx.benchmarks;
+
+import com.avast.jmx.MyDynamicBean;
+import com.avast.jmx.RegistrationResult;
+import org.openjdk.jmh.annotations.*;
+
+import javax.management.MBeanServerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exposing many objects at startup - {@link MyDynamicBean#exposeAndRegisterSilently(Object)} one by one versus
+ * {@link MyDynamicBean#registerAll(java.util.Collection)}. Every invocation registers and unregisters all the objects.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BulkRegistrationBenchmark {
+    @Param({"1000", "10000"})
+    public int objects;
+
+    private List<SampleBean> samples;
+
+    @Setup
+    public void setUp() {
+        MyDynamicBean.setDefaultMBeanServer(MBeanServerFactory.newMBeanServer());
+        samples = new ArrayList<>(objects);
+        for (int i = 0; i < objects; i++) {
+            samples.add(new SampleBean());
+        }
+    }
+
+    @Benchmark
+    public List<MyDynamicBean> oneByOne() {
+        final List<MyDynamicBean> beans = new ArrayList<>(objects);
+        for (SampleBean sample : samples) {
+            beans.add(MyDynamicBean.exposeAndRegisterSilently(sample));
+        }
+        MyDynamicBean.unregisterAll(beans);
+        return beans;
+    }
+
+    @Benchmark
+    public List<RegistrationResult> registerAll() {
+        final List<RegistrationResult> results = MyDynamicBean.registerAll(samples);
+        final List<MyDynamicBean> beans = new ArrayList<>(results.size());
+        for (RegistrationResult result : results) {
+            beans.add(result.getBean());
+        }
+        MyDynamicBean.unregisterAll(beans);
+        return results;
+    }
+}
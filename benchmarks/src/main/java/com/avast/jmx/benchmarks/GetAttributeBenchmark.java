@@ -0,0 +1,60 @@
+package com.avast.jmx.benchmarks;
+
+import com.avast.jmx.BeanOptions;
+import com.avast.jmx.DispatchMode;
+import com.avast.jmx.MyDynamicBean;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading single attribute of every kind, for both dispatch modes. The <code>as*</code> benchmarks read the primitive
+ * value directly, without boxing.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GetAttributeBenchmark {
+    @Param({"LOOKUP", "COMPILED"})
+    public DispatchMode dispatchMode;
+
+    private MyDynamicBean bean;
+
+    @Setup
+    public void setUp() {
+        bean = new MyDynamicBean("com.avast.jmx.benchmarks:type=GetAttribute", "Benchmark", new SampleBean(), BeanOptions.defaults().withDispatchMode(dispatchMode));
+    }
+
+    @Benchmark
+    public Object field() throws Exception {
+        return bean.getAttribute("field");
+    }
+
+    @Benchmark
+    public Object atomicField() throws Exception {
+        return bean.getAttribute("atomicField");
+    }
+
+    @Benchmark
+    public Object getterMethod() throws Exception {
+        return bean.getAttribute("getterMethod");
+    }
+
+    @Benchmark
+    public long fieldAsLong() {
+        return bean.getLongAttribute("field");
+    }
+
+    @Benchmark
+    public double atomicFieldAsDouble() {
+        return bean.getDoubleAttribute("atomicField");
+    }
+
+    @Benchmark
+    public Object map() throws Exception {
+        return bean.getAttribute("map");
+    }
+}
@@ -0,0 +1,40 @@
+package com.avast.jmx.benchmarks;
+
+import com.avast.jmx.BeanOptions;
+import com.avast.jmx.DispatchMode;
+import com.avast.jmx.MyDynamicBean;
+import org.openjdk.jmh.annotations.*;
+
+import javax.management.AttributeList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading several attributes at once, the way monitoring collectors usually do.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GetAttributesBenchmark {
+    @Param({"1", "10", "100"})
+    public int count;
+
+    @Param({"LOOKUP", "COMPILED"})
+    public DispatchMode dispatchMode;
+
+    private MyDynamicBean bean;
+    private String[] names;
+
+    @Setup
+    public void setUp() {
+        bean = new MyDynamicBean("com.avast.jmx.benchmarks:type=GetAttributes", "Benchmark", new WideBean(), BeanOptions.defaults().withDispatchMode(dispatchMode));
+        names = WideBean.names(count);
+    }
+
+    @Benchmark
+    public AttributeList getAttributes() {
+        return bean.getAttributes(names);
+    }
+}
@@ -0,0 +1,58 @@
+package com.avast.jmx.benchmarks;
+
+import com.avast.jmx.BeanOptions;
+import com.avast.jmx.DispatchMode;
+import com.avast.jmx.MyDynamicBean;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Invoking operations with 0 - 3 parameters, for both dispatch modes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InvokeBenchmark {
+    @Param({"LOOKUP", "COMPILED"})
+    public DispatchMode dispatchMode;
+
+    private MyDynamicBean bean;
+
+    private final Object[] params0 = {};
+    private final String[] signature0 = {};
+    private final Object[] params1 = {1L};
+    private final String[] signature1 = {"long"};
+    private final Object[] params2 = {1L, 2};
+    private final String[] signature2 = {"long", "int"};
+    private final Object[] params3 = {1L, 2, "three"};
+    private final String[] signature3 = {"long", "int", String.class.getName()};
+
+    @Setup
+    public void setUp() {
+        bean = new MyDynamicBean("com.avast.jmx.benchmarks:type=Invoke", "Benchmark", new SampleBean(), BeanOptions.defaults().withDispatchMode(dispatchMode));
+    }
+
+    @Benchmark
+    public Object invoke0() throws Exception {
+        return bean.invoke("operation0", params0, signature0);
+    }
+
+    @Benchmark
+    public Object invoke1() throws Exception {
+        return bean.invoke("operation1", params1, signature1);
+    }
+
+    @Benchmark
+    public Object invoke2() throws Exception {
+        return bean.invoke("operation2", params2, signature2);
+    }
+
+    @Benchmark
+    public Object invoke3() throws Exception {
+        return bean.invoke("operation3", params3, signature3);
+    }
+}
@@ -0,0 +1,32 @@
+package com.avast.jmx.benchmarks;
+
+import com.avast.jmx.MyDynamicBean;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading {@link java.util.Map} property, i.e. its conversion to {@link javax.management.openmbean.CompositeData}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MapConversionBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    public int size;
+
+    private MyDynamicBean bean;
+
+    @Setup
+    public void setUp() {
+        bean = new MyDynamicBean("com.avast.jmx.benchmarks:type=MapConversion", new SampleBean(size));
+    }
+
+    @Benchmark
+    public Object convertMap() throws Exception {
+        return bean.getAttribute("map");
+    }
+}
@@ -0,0 +1,69 @@
+package com.avast.jmx.benchmarks;
+
+import com.avast.jmx.BeanOptions;
+import com.avast.jmx.DispatchMode;
+import com.avast.jmx.MyDynamicBean;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heap retained by one {@link MyDynamicBean} (not registered) of {@link SampleBean}, in the <code>LOOKUP</code> and
+ * <code>COMPILED</code> dispatch modes and lazily (see {@link BeanOptions#withLazy(boolean)}). Every shot creates
+ * {@link #BEANS} beans and reports the growth of used heap per bean as the <code>retainedBytesPerBean</code> counter;
+ * the time of the shot is not interesting.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-XX:+UseSerialGC")
+public class MemoryBenchmark {
+    private static final int BEANS = 20000;
+    private static final String NAME = "com.avast.jmx.benchmarks:type=Memory";
+
+    @State(Scope.Benchmark)
+    public static class Objects {
+        @Param({"LOOKUP", "COMPILED", "LAZY"})
+        public String mode;
+
+        private BeanOptions options;
+        private SampleBean[] samples;
+
+        @Setup
+        public void setUp() {
+            options = "LAZY".equals(mode) ? BeanOptions.defaults().withLazy(true) : BeanOptions.defaults().withDispatchMode(DispatchMode.valueOf(mode));
+            samples = new SampleBean[BEANS];
+            for (int i = 0; i < BEANS; i++) {
+                samples[i] = new SampleBean();
+            }
+            // metadata of the class is shared, it must not be counted
+            new MyDynamicBean(NAME, "Memory", samples[0], options);
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+        public long retainedBytesPerBean;
+    }
+
+    @Benchmark
+    public MyDynamicBean[] construct(Objects objects, Counters counters) {
+        final MyDynamicBean[] beans = new MyDynamicBean[BEANS];
+        final long before = usedHeap();
+        for (int i = 0; i < BEANS; i++) {
+            beans[i] = new MyDynamicBean(NAME, "Memory", objects.samples[i], objects.options);
+        }
+        counters.retainedBytesPerBean = (usedHeap() - before) / BEANS;
+        return beans;
+    }
+
+    private static long usedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,50 @@
+package com.avast.jmx.benchmarks;
+
+import com.avast.jmx.BeanOptions;
+import com.avast.jmx.MyDynamicBean;
+import org.openjdk.jmh.annotations.*;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of exposing an object - {@link MyDynamicBean} construction and registration to the MBeanServer, eagerly and
+ * lazily (see {@link BeanOptions#withLazy(boolean)}).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RegistrationBenchmark {
+    private static final String NAME = "com.avast.jmx.benchmarks:type=Registration";
+
+    @Param({"false", "true"})
+    public boolean lazy;
+
+    private MBeanServer server;
+    private SampleBean sample;
+    private BeanOptions options;
+
+    @Setup
+    public void setUp() {
+        server = MBeanServerFactory.newMBeanServer();
+        sample = new SampleBean();
+        options = BeanOptions.defaults().withLazy(lazy);
+    }
+
+    @Benchmark
+    public MyDynamicBean construct() {
+        return new MyDynamicBean(NAME, "Registration", sample, options);
+    }
+
+    @Benchmark
+    public MyDynamicBean constructAndRegister() throws Exception {
+        final MyDynamicBean bean = new MyDynamicBean(NAME, "Registration", sample, options).registerWith(server);
+        bean.register();
+        bean.unregister();
+        return bean;
+    }
+}
@@ -0,0 +1,60 @@
+package com.avast.jmx.benchmarks;
+
+import com.avast.jmx.JMXOperation;
+import com.avast.jmx.JMXProperty;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bean with one attribute of every kind the benchmarks read.
+ */
+@SuppressWarnings("unused")
+public class SampleBean {
+    @JMXProperty(setable = true)
+    private long field = 42;
+
+    @JMXProperty(setable = true)
+    private AtomicLong atomicField = new AtomicLong(42);
+
+    @JMXProperty
+    private Map<String, Long> map = new HashMap<>();
+
+    private long computed = 42;
+
+    public SampleBean() {
+        this(10);
+    }
+
+    public SampleBean(int mapSize) {
+        for (long i = 0; i < mapSize; i++) {
+            map.put("key" + i, i);
+        }
+    }
+
+    @JMXProperty(name = "getterMethod")
+    public long getComputed() {
+        return computed;
+    }
+
+    @JMXOperation
+    public long operation0() {
+        return computed;
+    }
+
+    @JMXOperation
+    public long operation1(long a) {
+        return a;
+    }
+
+    @JMXOperation
+    public long operation2(long a, int b) {
+        return a + b;
+    }
+
+    @JMXOperation
+    public String operation3(long a, int b, String c) {
+        return c;
+    }
+}
@@ -0,0 +1,39 @@
+package com.avast.jmx.benchmarks;
+
+import com.avast.jmx.MyDynamicBean;
+import org.openjdk.jmh.annotations.*;
+
+import javax.management.Attribute;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing attributes through the generated setters (value conversion included).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SetAttributeBenchmark {
+    private MyDynamicBean bean;
+    private Attribute field;
+    private Attribute atomicField;
+
+    @Setup
+    public void setUp() {
+        bean = new MyDynamicBean("com.avast.jmx.benchmarks:type=SetAttribute", new SampleBean());
+        field = new Attribute("field", 123456L);
+        atomicField = new Attribute("atomicField", 123456L);
+    }
+
+    @Benchmark
+    public void field() throws Exception {
+        bean.setAttribute(field);
+    }
+
+    @Benchmark
+    public void atomicField() throws Exception {
+        bean.setAttribute(atomicField);
+    }
+}
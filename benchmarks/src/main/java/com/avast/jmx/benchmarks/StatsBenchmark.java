@@ -0,0 +1,42 @@
+package com.avast.jmx.benchmarks;
+
+import com.avast.jmx.BeanOptions;
+import com.avast.jmx.DispatchMode;
+import com.avast.jmx.MyDynamicBean;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of the statistics of calls ({@link BeanOptions#withStats(boolean)}) on reading an attribute and invoking an
+ * operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StatsBenchmark {
+    @Param({"false", "true"})
+    public boolean stats;
+
+    private final Object[] params = new Object[0];
+    private final String[] signature = new String[0];
+    private MyDynamicBean bean;
+
+    @Setup
+    public void setUp() {
+        bean = new MyDynamicBean("com.avast.jmx.benchmarks:type=Stats", "Benchmark", new SampleBean(), BeanOptions.defaults().withDispatchMode(DispatchMode.COMPILED).withStats(stats));
+    }
+
+    @Benchmark
+    public Object field() throws Exception {
+        return bean.getAttribute("field");
+    }
+
+    @Benchmark
+    public Object invoke0() throws Exception {
+        return bean.invoke("operation0", params, signature);
+    }
+}
@@ -0,0 +1,39 @@
+package com.avast.jmx.benchmarks;
+
+import com.avast.jmx.LatencyHistogram;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recording into {@link LatencyHistogram} from one and from several threads, and reading it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TimerBenchmark {
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    private long value = 1;
+
+    @Benchmark
+    public void record() {
+        // spread the values over buckets, cheaper than a random number
+        value = value * 6364136223846793005L + 1442695040888963407L;
+        histogram.record(value >>> 40);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordContended() {
+        histogram.record(System.identityHashCode(Thread.currentThread()) & 0xFFFFF);
+    }
+
+    @Benchmark
+    public Object read() {
+        return histogram.toCompositeData(TimeUnit.MICROSECONDS);
+    }
+}
@@ -0,0 +1,220 @@
+package com.avast.jmx.benchmarks;
+
+import com.avast.jmx.JMXProperty;
+
+/**
+ * Bean with 100 attributes, for the bulk benchmarks.
+ */
+@SuppressWarnings("unused")
+public class WideBean {
+    public static final int ATTRIBUTES = 100;
+
+    @JMXProperty
+    public long field00 = 0;
+    @JMXProperty
+    public long field01 = 1;
+    @JMXProperty
+    public long field02 = 2;
+    @JMXProperty
+    public long field03 = 3;
+    @JMXProperty
+    public long field04 = 4;
+    @JMXProperty
+    public long field05 = 5;
+    @JMXProperty
+    public long field06 = 6;
+    @JMXProperty
+    public long field07 = 7;
+    @JMXProperty
+    public long field08 = 8;
+    @JMXProperty
+    public long field09 = 9;
+    @JMXProperty
+    public long field10 = 10;
+    @JMXProperty
+    public long field11 = 11;
+    @JMXProperty
+    public long field12 = 12;
+    @JMXProperty
+    public long field13 = 13;
+    @JMXProperty
+    public long field14 = 14;
+    @JMXProperty
+    public long field15 = 15;
+    @JMXProperty
+    public long field16 = 16;
+    @JMXProperty
+    public long field17 = 17;
+    @JMXProperty
+    public long field18 = 18;
+    @JMXProperty
+    public long field19 = 19;
+    @JMXProperty
+    public long field20 = 20;
+    @JMXProperty
+    public long field21 = 21;
+    @JMXProperty
+    public long field22 = 22;
+    @JMXProperty
+    public long field23 = 23;
+    @JMXProperty
+    public long field24 = 24;
+    @JMXProperty
+    public long field25 = 25;
+    @JMXProperty
+    public long field26 = 26;
+    @JMXProperty
+    public long field27 = 27;
+    @JMXProperty
+    public long field28 = 28;
+    @JMXProperty
+    public long field29 = 29;
+    @JMXProperty
+    public long field30 = 30;
+    @JMXProperty
+    public long field31 = 31;
+    @JMXProperty
+    public long field32 = 32;
+    @JMXProperty
+    public long field33 = 33;
+    @JMXProperty
+    public long field34 = 34;
+    @JMXProperty
+    public long field35 = 35;
+    @JMXProperty
+    public long field36 = 36;
+    @JMXProperty
+    public long field37 = 37;
+    @JMXProperty
+    public long field38 = 38;
+    @JMXProperty
+    public long field39 = 39;
+    @JMXProperty
+    public long field40 = 40;
+    @JMXProperty
+    public long field41 = 41;
+    @JMXProperty
+    public long field42 = 42;
+    @JMXProperty
+    public long field43 = 43;
+    @JMXProperty
+    public long field44 = 44;
+    @JMXProperty
+    public long field45 = 45;
+    @JMXProperty
+    public long field46 = 46;
+    @JMXProperty
+    public long field47 = 47;
+    @JMXProperty
+    public long field48 = 48;
+    @JMXProperty
+    public long field49 = 49;
+    @JMXProperty
+    public long field50 = 50;
+    @JMXProperty
+    public long field51 = 51;
+    @JMXProperty
+    public long field52 = 52;
+    @JMXProperty
+    public long field53 = 53;
+    @JMXProperty
+    public long field54 = 54;
+    @JMXProperty
+    public long field55 = 55;
+    @JMXProperty
+    public long field56 = 56;
+    @JMXProperty
+    public long field57 = 57;
+    @JMXProperty
+    public long field58 = 58;
+    @JMXProperty
+    public long field59 = 59;
+    @JMXProperty
+    public long field60 = 60;
+    @JMXProperty
+    public long field61 = 61;
+    @JMXProperty
+    public long field62 = 62;
+    @JMXProperty
+    public long field63 = 63;
+    @JMXProperty
+    public long field64 = 64;
+    @JMXProperty
+    public long field65 = 65;
+    @JMXProperty
+    public long field66 = 66;
+    @JMXProperty
+    public long field67 = 67;
+    @JMXProperty
+    public long field68 = 68;
+    @JMXProperty
+    public long field69 = 69;
+    @JMXProperty
+    public long field70 = 70;
+    @JMXProperty
+    public long field71 = 71;
+    @JMXProperty
+    public long field72 = 72;
+    @JMXProperty
+    public long field73 = 73;
+    @JMXProperty
+    public long field74 = 74;
+    @JMXProperty
+    public long field75 = 75;
+    @JMXProperty
+    public long field76 = 76;
+    @JMXProperty
+    public long field77 = 77;
+    @JMXProperty
+    public long field78 = 78;
+    @JMXProperty
+    public long field79 = 79;
+    @JMXProperty
+    public long field80 = 80;
+    @JMXProperty
+    public long field81 = 81;
+    @JMXProperty
+    public long field82 = 82;
+    @JMXProperty
+    public long field83 = 83;
+    @JMXProperty
+    public long field84 = 84;
+    @JMXProperty
+    public long field85 = 85;
+    @JMXProperty
+    public long field86 = 86;
+    @JMXProperty
+    public long field87 = 87;
+    @JMXProperty
+    public long field88 = 88;
+    @JMXProperty
+    public long field89 = 89;
+    @JMXProperty
+    public long field90 = 90;
+    @JMXProperty
+    public long field91 = 91;
+    @JMXProperty
+    public long field92 = 92;
+    @JMXProperty
+    public long field93 = 93;
+    @JMXProperty
+    public long field94 = 94;
+    @JMXProperty
+    public long field95 = 95;
+    @JMXProperty
+    public long field96 = 96;
+    @JMXProperty
+    public long field97 = 97;
+    @JMXProperty
+    public long field98 = 98;
+    @JMXProperty
+    public long field99 = 99;
+
+    public static String[] names(int count) {
+        final String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = String.format("field%02d", i % ATTRIBUTES);
+        }
+        return names;
+    }
+}
@@ -0,0 +1,577 @@
+package com.avast.jmx.processor;
+
+import com.avast.jmx.AdapterSupport;
+import com.avast.jmx.JMXCounter;
+import com.avast.jmx.JMXOperation;
+import com.avast.jmx.JMXProperty;
+import com.avast.jmx.JMXPropertyGetter;
+import com.avast.jmx.JMXPropertySetter;
+import com.avast.jmx.JMXTimer;
+import com.avast.jmx.LatencyHistogram;
+import com.avast.jmx.MapExposure;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.*;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import java.lang.annotation.Annotation;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Description of one generated adapter - attributes and operations of the annotated class, resolved by the same rules
+ * {@link com.avast.jmx.MyDynamicBean} uses at runtime.
+ *
+ * @author Jan Kolena - kolena@avast.com
+ */
+final class AdapterModel {
+    private static final String COMPOSITE_DATA = "javax.management.openmbean.CompositeData";
+    private static final String HISTOGRAM = LatencyHistogram.class.getName();
+    private static final String ATOMIC_PACKAGE = "java.util.concurrent.atomic.";
+    private static final List<Class<? extends Annotation>> ANNOTATIONS = Arrays.asList(JMXProperty.class, JMXPropertyGetter.class, JMXPropertySetter.class, JMXOperation.class, JMXTimer.class, JMXCounter.class);
+
+    /**
+     * Types of setable fields the adapter writes directly (other fields are written by their setters or the class uses
+     * reflection), values are converted by {@link com.avast.jmx.AdapterSupport#convertValue(Object, Class)}.
+     */
+    private static final Set<String> CONVERTIBLE = new HashSet<>(Arrays.asList(
+            "int", "long", "double", "float", "boolean", "byte", "char",
+            "java.lang.Integer", "java.lang.Long", "java.lang.Double", "java.lang.Float", "java.lang.Boolean", "java.lang.Byte", "java.lang.Character",
+            "java.lang.String"
+    ));
+
+    static final class Attribute {
+        String name;
+        String description;
+        String type;
+        boolean readable;
+        boolean setable;
+        /**
+         * Expression giving the value, reads <code>target</code>.
+         */
+        String readExpression;
+        /**
+         * Statement storing <code>value</code>, writes to <code>target</code>.
+         */
+        String writeStatement;
+    }
+
+    static final class Operation {
+        String name;
+        String description;
+        String returnType;
+        boolean returnsVoid;
+        final List<String> parameterTypes = new ArrayList<>();
+        /**
+         * Expression invoking the method with <code>params</code>.
+         */
+        String invokeExpression;
+    }
+
+    static class UnsupportedClassException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedClassException(String message) {
+            super(message);
+        }
+    }
+
+    private final Elements elements;
+    private final Types types;
+
+    final TypeElement type;
+    final String packageName;
+    final String adapterName;
+    final String targetType;
+    final List<Attribute> attributes = new ArrayList<>();
+    final List<Operation> operations = new ArrayList<>();
+    /**
+     * Method handles for fields which cannot be accessed directly (names of the constants of the adapter), mapped to
+     * the fields they read or write.
+     */
+    final Map<String, VariableElement> getterHandles = new LinkedHashMap<>();
+    final Map<String, VariableElement> setterHandles = new LinkedHashMap<>();
+    /**
+     * Declarations of per-instance converters of {@link java.util.Map} attributes.
+     */
+    final List<String> converters = new ArrayList<>();
+
+    AdapterModel(ProcessingEnvironment env, TypeElement type) throws UnsupportedClassException {
+        this.elements = env.getElementUtils();
+        this.types = env.getTypeUtils();
+        this.type = type;
+
+        if (type.getKind() != ElementKind.CLASS) throw new UnsupportedClassException("not a class");
+        for (Element e = type; e instanceof TypeElement; e = e.getEnclosingElement()) {
+            final TypeElement t = (TypeElement) e;
+            if (t.getModifiers().contains(Modifier.PRIVATE)) throw new UnsupportedClassException(t + " is private");
+            if (t.getNestingKind() == NestingKind.LOCAL || t.getNestingKind() == NestingKind.ANONYMOUS) {
+                throw new UnsupportedClassException("local and anonymous classes are not supported");
+            }
+        }
+        checkSupertypes(type);
+
+        this.packageName = elements.getPackageOf(type).getQualifiedName().toString();
+        final String binaryName = elements.getBinaryName(type).toString();
+        this.adapterName = binaryName.substring(packageName.isEmpty() ? 0 : packageName.length() + 1).replace('$', '_') + AdapterSupport.ADAPTER_SUFFIX;
+        this.targetType = sourceType(type.asType());
+
+        resolveProperties();
+        resolveOperations();
+    }
+
+    /**
+     * Annotated members of supertypes are merged by rules which are not worth repeating here - such classes use reflection.
+     */
+    private void checkSupertypes(TypeElement cls) throws UnsupportedClassException {
+        for (TypeMirror supertype : types.directSupertypes(cls.asType())) {
+            final TypeElement element = (TypeElement) types.asElement(supertype);
+            if (element == null) continue;
+            for (Element member : element.getEnclosedElements()) {
+                for (Class<? extends Annotation> annotation : ANNOTATIONS) {
+                    if (member.getAnnotation(annotation) != null) {
+                        throw new UnsupportedClassException("supertype " + element + " has annotated members");
+                    }
+                }
+            }
+            checkSupertypes(element);
+        }
+    }
+
+    private void resolveProperties() throws UnsupportedClassException {
+        final Map<String, VariableElement> fields = new LinkedHashMap<>();
+        final Map<String, ExecutableElement> getters = new HashMap<>();
+        final Map<String, ExecutableElement> setters = new HashMap<>();
+        final List<ExecutableElement> propertyMethods = new ArrayList<>();
+
+        for (VariableElement f : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            final JMXProperty an = f.getAnnotation(JMXProperty.class);
+            final JMXTimer timer = f.getAnnotation(JMXTimer.class);
+            // rates need the sampler and per-instance state of the reflective implementation
+            if (f.getAnnotation(JMXCounter.class) != null) throw new UnsupportedClassException("counter " + f.getSimpleName() + " is not supported");
+            if (an == null && timer == null) continue;
+            // so do cached values and deadlines
+            if (an != null && (an.cacheMillis() > 0 || an.timeoutMillis() > 0)) throw new UnsupportedClassException("cached or guarded property " + f.getSimpleName() + " is not supported");
+            final String annotatedName = an != null ? an.name() : timer.name();
+            final String name = annotatedName.trim().isEmpty() ? f.getSimpleName().toString() : annotatedName;
+            if (fields.put(name, f) != null) throw new UnsupportedClassException("duplicate attribute name " + name);
+        }
+
+        // only public methods are considered, just like Class.getMethods() does
+        for (ExecutableElement m : publicMethods()) {
+            final JMXPropertyGetter getter = m.getAnnotation(JMXPropertyGetter.class);
+            if (getter != null) {
+                if (getter.cacheMillis() > 0 || getter.timeoutMillis() > 0) throw new UnsupportedClassException("cached or guarded getter " + m.getSimpleName() + " is not supported");
+                final String name = getter.name().trim().isEmpty() ? stripPrefix(m.getSimpleName().toString(), "is", "get") : getter.name();
+                if (getters.put(name, m) != null) throw new UnsupportedClassException("duplicate getter name " + name);
+            }
+            final JMXPropertySetter setter = m.getAnnotation(JMXPropertySetter.class);
+            if (setter != null) {
+                final String name = setter.name().trim().isEmpty() ? stripPrefix(m.getSimpleName().toString(), "set") : setter.name();
+                if (setters.put(name, m) != null) throw new UnsupportedClassException("duplicate setter name " + name);
+            }
+            if (m.getAnnotation(JMXProperty.class) != null) {
+                final JMXProperty an = m.getAnnotation(JMXProperty.class);
+                if (an.cacheMillis() > 0 || an.timeoutMillis() > 0) throw new UnsupportedClassException("cached or guarded property " + m.getSimpleName() + " is not supported");
+                propertyMethods.add(m);
+            }
+        }
+
+        final Set<String> names = new HashSet<>();
+        for (Map.Entry<String, VariableElement> e : fields.entrySet()) {
+            names.add(e.getKey());
+            attributes.add(fieldAttribute(e.getKey(), e.getValue(), getters.get(e.getKey()), setters.get(e.getKey())));
+        }
+        for (ExecutableElement m : propertyMethods) {
+            final JMXProperty an = m.getAnnotation(JMXProperty.class);
+            final String name = an.name().trim().isEmpty() ? m.getSimpleName().toString() : an.name();
+            if (setters.containsKey(name) || getters.containsKey(name) || fields.containsKey(name) || !names.add(name)) {
+                throw new UnsupportedClassException("duplicate getter name " + name);
+            }
+            attributes.add(methodAttribute(name, an, m));
+        }
+
+        if (!names.containsAll(getters.keySet())) throw new UnsupportedClassException("orphaned getters");
+        if (!names.containsAll(setters.keySet())) throw new UnsupportedClassException("orphaned setters");
+    }
+
+    private Attribute fieldAttribute(String name, VariableElement field, ExecutableElement getter, ExecutableElement setter) throws UnsupportedClassException {
+        final JMXProperty an = field.getAnnotation(JMXProperty.class);
+        final JMXTimer timer = field.getAnnotation(JMXTimer.class);
+        final TypeMirror fieldType = field.asType();
+        final String fieldTypeName = binaryName(fieldType);
+        final boolean map = "java.util.Map".equals(binaryName(types.erasure(fieldType)));
+        final boolean histogram = HISTOGRAM.equals(fieldTypeName);
+
+        if (map) checkMapExposure(name, an);
+        if (timer != null && !histogram) throw new UnsupportedClassException("timer " + name + " is not " + HISTOGRAM);
+
+        final Attribute a = new Attribute();
+        a.name = name;
+        a.description = an != null ? an.description() : timer.description();
+        a.readable = an == null || an.readeable();
+        a.setable = an != null && an.setable() && !map && !histogram; // never set CompositeData
+        a.type = fieldTypeName;
+        if (!a.readable && !a.setable) throw new UnsupportedClassException("attribute " + name + " is not readable, nor setable");
+
+        final boolean atomic = fieldType.getKind() == TypeKind.DECLARED && types.asElement(fieldType).getSimpleName().toString().startsWith("Atomic");
+        final String adderType = adderBasicType(fieldTypeName);
+        final boolean readsField = (a.readable && getter == null) || (a.setable && setter == null && atomic) || adderType != null;
+        final String rawRead = readsField ? fieldRead(field) : null;
+
+        if (a.readable) {
+            final String read;
+            if (getter != null) {
+                read = call(getter) + "()";
+            } else if (adderType != null) {
+                read = rawRead + (fieldTypeName.endsWith("Adder") ? ".sum()" : ".get()");
+            } else if (atomic) {
+                if ("java.util.concurrent.atomic.AtomicReference".equals(fieldTypeName)) {
+                    read = rawRead + ".toString()";
+                } else if (hasNoArgMethod(fieldType, "get")) {
+                    read = rawRead + ".get()";
+                } else {
+                    throw new UnsupportedClassException("unsupported atomic type of " + name);
+                }
+            } else {
+                read = rawRead;
+            }
+            if (map) {
+                a.readExpression = compositeData(a, read);
+            } else if (histogram) {
+                a.readExpression = histogramData(read, timer != null ? timer.unit() : TimeUnit.MICROSECONDS);
+            } else {
+                a.readExpression = read;
+            }
+        }
+
+        if (a.setable) {
+            if (setter != null) {
+                if (setter.getParameters().size() != 1) throw new UnsupportedClassException("setter of " + name + " must have one parameter");
+                a.writeStatement = call(setter) + "(" + convert("value", setter.getParameters().get(0).asType()) + ");";
+            } else if (adderType != null) {
+                a.writeStatement = "AdapterSupport.setAdder(" + rawRead + ", value);";
+            } else if (atomic) {
+                final String basic = atomicBasicType(fieldTypeName);
+                if (basic == null) throw new UnsupportedClassException("unsupported atomic type of " + name);
+                a.writeStatement = rawRead + ".set(" + convert("value", basic) + ");";
+                a.type = plainType(fieldTypeName);
+            } else {
+                if (!CONVERTIBLE.contains(fieldTypeName)) throw new UnsupportedClassException("unsupported setable type of " + name);
+                if (field.getModifiers().contains(Modifier.FINAL)) throw new UnsupportedClassException(name + " is final");
+                a.writeStatement = fieldWrite(field, convert("value", fieldTypeName));
+                a.type = plainType(fieldTypeName);
+            }
+        }
+
+        if (map || histogram) a.type = COMPOSITE_DATA;
+        if (adderType != null) {
+            a.type = adderType;
+            operations.add(resetOperation(name, rawRead));
+        }
+        return a;
+    }
+
+    private Attribute methodAttribute(String name, JMXProperty an, ExecutableElement m) throws UnsupportedClassException {
+        final boolean map = "java.util.Map".equals(binaryName(types.erasure(m.getReturnType())));
+        final boolean histogram = HISTOGRAM.equals(binaryName(m.getReturnType()));
+
+        if (map) checkMapExposure(name, an);
+
+        final Attribute a = new Attribute();
+        a.name = name;
+        a.description = an.description();
+        a.readable = true;
+        a.setable = false;
+        a.type = map || histogram ? COMPOSITE_DATA : binaryName(m.getReturnType());
+        final String read = call(m) + "()";
+        if (map) {
+            a.readExpression = compositeData(a, read);
+        } else if (histogram) {
+            a.readExpression = histogramData(read, TimeUnit.MICROSECONDS);
+        } else {
+            a.readExpression = read;
+        }
+        return a;
+    }
+
+    private static void checkMapExposure(String name, JMXProperty an) throws UnsupportedClassException {
+        if (an.mapExposure() != MapExposure.COMPOSITE) {
+            throw new UnsupportedClassException("map " + name + " is published as " + an.mapExposure());
+        }
+    }
+
+    private String compositeData(Attribute a, String read) {
+        final String converter = "converter" + converters.size();
+        converters.add("private final CompositeDataConverter " + converter + " = new CompositeDataConverter(" + literal(a.name) + ", " + literal(a.description) + ");");
+        return "AdapterSupport.toCompositeData(" + converter + ", " + read + ")";
+    }
+
+    private static String histogramData(String read, TimeUnit unit) {
+        return "AdapterSupport.toCompositeData(" + read + ", java.util.concurrent.TimeUnit." + unit.name() + ")";
+    }
+
+    private void resolveOperations() {
+        for (ExecutableElement m : publicMethods()) {
+            final JMXOperation an = m.getAnnotation(JMXOperation.class);
+            if (an == null) continue;
+
+            final Operation op = new Operation();
+            op.name = m.getSimpleName().toString();
+            op.description = an.description();
+            op.returnType = binaryName(m.getReturnType());
+            op.returnsVoid = m.getReturnType().getKind() == TypeKind.VOID;
+
+            final StringBuilder args = new StringBuilder();
+            final List<? extends VariableElement> parameters = m.getParameters();
+            for (int i = 0; i < parameters.size(); i++) {
+                final TypeMirror paramType = parameters.get(i).asType();
+                op.parameterTypes.add(binaryName(paramType));
+                if (i > 0) args.append(", ");
+                args.append('(').append(castType(paramType)).append(") params[").append(i).append(']');
+            }
+            op.invokeExpression = call(m) + "(" + args + ")";
+            operations.add(op);
+        }
+    }
+
+    private List<ExecutableElement> publicMethods() {
+        final List<ExecutableElement> result = new ArrayList<>();
+        for (ExecutableElement m : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            if (m.getModifiers().contains(Modifier.PUBLIC)) result.add(m);
+        }
+        return result;
+    }
+
+    private String call(ExecutableElement method) {
+        return (method.getModifiers().contains(Modifier.STATIC) ? targetType : "target") + "." + method.getSimpleName();
+    }
+
+    private String fieldRead(VariableElement field) {
+        final boolean isStatic = field.getModifiers().contains(Modifier.STATIC);
+        final String name = field.getSimpleName().toString();
+        if (!field.getModifiers().contains(Modifier.PRIVATE)) {
+            return (isStatic ? targetType : "target") + "." + name;
+        }
+
+        final String handle = "GET_" + name;
+        getterHandles.put(handle, field);
+        return "((" + sourceType(field.asType()) + ") " + handle + ".invokeExact(" + (isStatic ? "" : "target") + "))";
+    }
+
+    private String fieldWrite(VariableElement field, String value) {
+        final boolean isStatic = field.getModifiers().contains(Modifier.STATIC);
+        final String name = field.getSimpleName().toString();
+        if (!field.getModifiers().contains(Modifier.PRIVATE)) {
+            return (isStatic ? targetType : "target") + "." + name + " = " + value + ";";
+        }
+
+        final String handle = "SET_" + name;
+        setterHandles.put(handle, field);
+        // invokeExact needs the exact field type
+        return handle + ".invokeExact(" + (isStatic ? "" : "target, ") + "(" + sourceType(field.asType()) + ") " + value + ");";
+    }
+
+    /**
+     * Expression converting <code>value</code> (Object) to given type.
+     */
+    private String convert(String value, TypeMirror type) {
+        final String name = binaryName(type);
+        if (CONVERTIBLE.contains(name)) return convert(value, name);
+        return "(" + castType(type) + ") AdapterSupport.convertValue(" + value + ", " + sourceType(type) + ".class)";
+    }
+
+    private String convert(String value, String basicType) {
+        return "(" + boxed(basicType) + ") AdapterSupport.convertValue(" + value + ", " + basicType + ".class)";
+    }
+
+    private boolean hasNoArgMethod(TypeMirror type, String name) {
+        for (ExecutableElement m : ElementFilter.methodsIn(elements.getAllMembers((TypeElement) types.asElement(type)))) {
+            if (m.getSimpleName().contentEquals(name) && m.getParameters().isEmpty()) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Name of the type as returned by {@link Class#getName()}.
+     */
+    private String binaryName(TypeMirror type) {
+        switch (type.getKind()) {
+            case DECLARED:
+                return elements.getBinaryName((TypeElement) ((DeclaredType) type).asElement()).toString();
+            case ARRAY:
+                return "[" + descriptor(((ArrayType) type).getComponentType());
+            case TYPEVAR:
+            case WILDCARD:
+                return binaryName(types.erasure(type));
+            default:
+                return type.getKind().name().toLowerCase(Locale.ENGLISH);
+        }
+    }
+
+    private String descriptor(TypeMirror type) {
+        switch (type.getKind()) {
+            case BOOLEAN:
+                return "Z";
+            case BYTE:
+                return "B";
+            case CHAR:
+                return "C";
+            case SHORT:
+                return "S";
+            case INT:
+                return "I";
+            case LONG:
+                return "J";
+            case FLOAT:
+                return "F";
+            case DOUBLE:
+                return "D";
+            case ARRAY:
+                return "[" + descriptor(((ArrayType) type).getComponentType());
+            default:
+                return "L" + binaryName(types.erasure(type)) + ";";
+        }
+    }
+
+    /**
+     * Name of the (erased) type usable in generated source.
+     */
+    private String sourceType(TypeMirror type) {
+        return types.erasure(type).toString();
+    }
+
+    /**
+     * Type an Object has to be cast to before it's passed as given type - primitives have to be cast to their boxes.
+     */
+    private String castType(TypeMirror type) {
+        return type.getKind().isPrimitive() ? boxed(type.getKind().name().toLowerCase(Locale.ENGLISH)) : sourceType(type);
+    }
+
+    private static String boxed(String type) {
+        switch (type) {
+            case "int":
+                return "Integer";
+            case "char":
+                return "Character";
+            case "long":
+            case "double":
+            case "float":
+            case "boolean":
+            case "byte":
+            case "short":
+                return Character.toUpperCase(type.charAt(0)) + type.substring(1);
+            default:
+                return type;
+        }
+    }
+
+    /**
+     * Operation resetting striped counter, see <code>com.avast.jmx.PropertyOperation.Reset</code>.
+     */
+    private static Operation resetOperation(String name, String rawRead) {
+        final Operation op = new Operation();
+        op.name = name + "Reset";
+        op.description = "Resets " + name;
+        op.returnType = "void";
+        op.returnsVoid = true;
+        op.invokeExpression = rawRead + ".reset()";
+        return op;
+    }
+
+    /**
+     * @return Basic type of striped counter (<code>LongAdder</code>, <code>DoubleAdder</code>...) or <code>null</code> for
+     * other types.
+     */
+    private static String adderBasicType(String type) {
+        switch (type) {
+            case ATOMIC_PACKAGE + "LongAdder":
+            case ATOMIC_PACKAGE + "LongAccumulator":
+                return "long";
+            case ATOMIC_PACKAGE + "DoubleAdder":
+            case ATOMIC_PACKAGE + "DoubleAccumulator":
+                return "double";
+            default:
+                return null;
+        }
+    }
+
+    private static String atomicBasicType(String atomicType) {
+        switch (atomicType) {
+            case ATOMIC_PACKAGE + "AtomicBoolean":
+                return "boolean";
+            case ATOMIC_PACKAGE + "AtomicInteger":
+                return "int";
+            case ATOMIC_PACKAGE + "AtomicLong":
+                return "long";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * The same as type reported by {@link com.avast.jmx.MyDynamicBean} for setable fields without a setter.
+     */
+    private static String plainType(String originalType) {
+        String type = originalType.substring(originalType.lastIndexOf('.') + 1);
+        if (type.startsWith("Atomic")) {
+            type = originalType.substring((ATOMIC_PACKAGE + "Atomic").length());
+        }
+        type = type.toLowerCase(Locale.ENGLISH);
+
+        switch (type) {
+            case "integer":
+                return "int";
+            case "reference":
+            case "string":
+                return String.class.getName();
+            default:
+                return type;
+        }
+    }
+
+    private static String stripPrefix(String name, String... prefixes) {
+        for (String prefix : prefixes) {
+            if (name.startsWith(prefix) && name.length() > prefix.length()) {
+                final String stripped = name.substring(prefix.length());
+                return Character.toLowerCase(stripped.charAt(0)) + stripped.substring(1);
+            }
+        }
+        return name;
+    }
+
+    static String literal(String value) {
+        final StringBuilder sb = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
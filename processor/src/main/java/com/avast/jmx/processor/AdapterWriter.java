@@ -0,0 +1,261 @@
+package com.avast.jmx.processor;
+
+import javax.annotation.processing.Filer;
+import javax.lang.model.element.VariableElement;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.avast.jmx.processor.AdapterModel.literal;
+
+/**
+ * Writes source of the adapter described by {@link AdapterModel}.
+ *
+ * @author Jan Kolena - kolena@avast.com
+ */
+final class AdapterWriter {
+    private final AdapterModel model;
+    private final StringBuilder out = new StringBuilder();
+
+    AdapterWriter(AdapterModel model) {
+        this.model = model;
+    }
+
+    void write(Filer filer) throws IOException {
+        final String name = model.packageName.isEmpty() ? model.adapterName : model.packageName + "." + model.adapterName;
+        final JavaFileObject file = filer.createSourceFile(name, model.type);
+        try (Writer writer = file.openWriter()) {
+            writer.write(generate());
+        }
+    }
+
+    String generate() {
+        line(0, "// Generated by " + JmxAdapterProcessor.class.getName() + " from " + model.type.getQualifiedName() + ", do not edit.");
+        if (!model.packageName.isEmpty()) {
+            line(0, "package " + model.packageName + ";");
+        }
+        line(0, "");
+        line(0, "import com.avast.jmx.AdapterSupport;");
+        line(0, "import com.avast.jmx.CompositeDataConverter;");
+        line(0, "");
+        line(0, "import javax.management.*;");
+        line(0, "import java.lang.invoke.MethodHandle;");
+        line(0, "import java.lang.invoke.MethodHandles;");
+        line(0, "import java.lang.reflect.Field;");
+        line(0, "");
+        line(0, "@SuppressWarnings({\"rawtypes\", \"unchecked\", \"static-access\"})");
+        line(0, "public final class " + model.adapterName + " implements DynamicMBean {");
+        writeInfo();
+        final List<String> signatures = writeSignatures();
+        writeHandles();
+        line(0, "");
+        line(1, "private final " + model.targetType + " target;");
+        for (String converter : model.converters) {
+            line(1, converter);
+        }
+        line(0, "");
+        line(1, "public " + model.adapterName + "(" + model.targetType + " target) {");
+        line(2, "this.target = target;");
+        line(1, "}");
+        writeGetAttribute();
+        writeSetAttribute();
+        writeBulkMethods();
+        writeInvoke(signatures);
+        line(0, "");
+        line(1, "@Override");
+        line(1, "public MBeanInfo getMBeanInfo() {");
+        line(2, "return INFO;");
+        line(1, "}");
+        line(0, "}");
+        return out.toString();
+    }
+
+    private void writeInfo() {
+        line(1, "private static final MBeanInfo INFO = new MBeanInfo(");
+        line(3, literal(model.type.getQualifiedName().toString()) + ", " + literal("Generated JMX adapter of " + model.type.getQualifiedName()) + ",");
+        line(3, "new MBeanAttributeInfo[]{");
+        for (AdapterModel.Attribute a : model.attributes) {
+            line(5, "new MBeanAttributeInfo(" + literal(a.name) + ", " + literal(a.type) + ", " + literal(a.description) + ", " + a.readable + ", " + a.setable + ", false),");
+        }
+        line(3, "},");
+        line(3, "new MBeanConstructorInfo[0],");
+        line(3, "new MBeanOperationInfo[]{");
+        for (AdapterModel.Operation op : model.operations) {
+            line(5, "new MBeanOperationInfo(" + literal(op.name) + ", " + literal(op.description) + ", new MBeanParameterInfo[]{");
+            for (int i = 0; i < op.parameterTypes.size(); i++) {
+                line(7, "new MBeanParameterInfo(\"p" + (i + 1) + "\", " + literal(op.parameterTypes.get(i)) + ", \"\"),");
+            }
+            line(5, "}, " + literal(op.returnType) + ", MBeanOperationInfo.UNKNOWN),");
+        }
+        line(3, "},");
+        line(3, "new MBeanNotificationInfo[0]);");
+    }
+
+    /**
+     * Writes handles of the fields the adapter cannot access directly (private ones). They are looked up by the adapter
+     * itself, so no public code of the library gives access to private fields.
+     */
+    private void writeHandles() {
+        if (model.getterHandles.isEmpty() && model.setterHandles.isEmpty()) return;
+        for (String handle : model.getterHandles.keySet()) {
+            line(1, "private static final MethodHandle " + handle + ";");
+        }
+        for (String handle : model.setterHandles.keySet()) {
+            line(1, "private static final MethodHandle " + handle + ";");
+        }
+        line(0, "");
+        line(1, "static {");
+        line(2, "try {");
+        line(3, "final MethodHandles.Lookup lookup = MethodHandles.lookup();");
+        for (Map.Entry<String, VariableElement> e : model.getterHandles.entrySet()) {
+            line(3, e.getKey() + " = lookup.unreflectGetter(field(" + literal(e.getValue().getSimpleName().toString()) + "));");
+        }
+        for (Map.Entry<String, VariableElement> e : model.setterHandles.entrySet()) {
+            line(3, e.getKey() + " = lookup.unreflectSetter(field(" + literal(e.getValue().getSimpleName().toString()) + "));");
+        }
+        line(2, "} catch (NoSuchFieldException | IllegalAccessException e) {");
+        line(3, "throw new ExceptionInInitializerError(e);");
+        line(2, "}");
+        line(1, "}");
+        line(0, "");
+        line(1, "private static Field field(String name) throws NoSuchFieldException {");
+        line(2, "final Field field = " + model.targetType + ".class.getDeclaredField(name);");
+        line(2, "field.setAccessible(true);");
+        line(2, "return field;");
+        line(1, "}");
+    }
+
+    private List<String> writeSignatures() {
+        final List<String> names = new ArrayList<>();
+        for (int i = 0; i < model.operations.size(); i++) {
+            final StringBuilder sb = new StringBuilder();
+            for (String type : model.operations.get(i).parameterTypes) {
+                if (sb.length() > 0) sb.append(", ");
+                sb.append(literal(type));
+            }
+            names.add("SIGNATURE_" + i);
+            line(1, "private static final String[] SIGNATURE_" + i + " = {" + sb + "};");
+        }
+        return names;
+    }
+
+    private void writeGetAttribute() {
+        line(0, "");
+        line(1, "@Override");
+        line(1, "public Object getAttribute(String attribute) throws AttributeNotFoundException, MBeanException, ReflectionException {");
+        line(2, "try {");
+        line(3, "switch (attribute) {");
+        for (AdapterModel.Attribute a : model.attributes) {
+            if (!a.readable) continue;
+            line(4, "case " + literal(a.name) + ":");
+            line(5, "return " + a.readExpression + ";");
+        }
+        line(3, "}");
+        line(2, "} catch (Throwable e) {");
+        line(3, "throw new RuntimeException(\"Error getting value for \" + attribute, e);");
+        line(2, "}");
+        line(2, "throw new IllegalArgumentException(\"Field \" + attribute + \" not found\");");
+        line(1, "}");
+    }
+
+    private void writeSetAttribute() {
+        line(0, "");
+        line(1, "@Override");
+        line(1, "public void setAttribute(Attribute attribute) throws AttributeNotFoundException, InvalidAttributeValueException, MBeanException, ReflectionException {");
+        line(2, "final String name = attribute.getName();");
+        line(2, "final Object value = attribute.getValue();");
+        line(2, "try {");
+        line(3, "switch (name) {");
+        for (AdapterModel.Attribute a : model.attributes) {
+            if (!a.setable) continue;
+            line(4, "case " + literal(a.name) + ":");
+            line(5, a.writeStatement);
+            line(5, "return;");
+        }
+        line(3, "}");
+        line(2, "} catch (Throwable e) {");
+        line(3, "throw new RuntimeException(\"Error setting value for \" + name, e);");
+        line(2, "}");
+        line(2, "throw new IllegalArgumentException(\"Field \" + name + \" not found\");");
+        line(1, "}");
+    }
+
+    private void writeBulkMethods() {
+        line(0, "");
+        line(1, "@Override");
+        line(1, "public AttributeList getAttributes(String[] attributes) {");
+        line(2, "final AttributeList list = new AttributeList();");
+        line(2, "for (String attribute : attributes) {");
+        line(3, "try {");
+        line(4, "list.add(new Attribute(attribute, getAttribute(attribute)));");
+        line(3, "} catch (JMException e) {");
+        line(4, "throw new IllegalArgumentException(\"Error encountered\", e);");
+        line(3, "}");
+        line(2, "}");
+        line(2, "return list;");
+        line(1, "}");
+        line(0, "");
+        line(1, "@Override");
+        line(1, "public AttributeList setAttributes(AttributeList attributes) {");
+        line(2, "final String[] names = new String[attributes.size()];");
+        line(2, "for (int i = 0; i < names.length; i++) {");
+        line(3, "final Attribute attribute = (Attribute) attributes.get(i);");
+        line(3, "try {");
+        line(4, "setAttribute(attribute);");
+        line(3, "} catch (JMException e) {");
+        line(4, "throw new IllegalArgumentException(\"Error encountered\", e);");
+        line(3, "}");
+        line(3, "names[i] = attribute.getName();");
+        line(2, "}");
+        line(2, "return getAttributes(names);");
+        line(1, "}");
+    }
+
+    private void writeInvoke(List<String> signatures) {
+        // overloaded operations share the case
+        final Map<String, List<Integer>> byName = new LinkedHashMap<>();
+        for (int i = 0; i < model.operations.size(); i++) {
+            final String name = model.operations.get(i).name;
+            if (!byName.containsKey(name)) byName.put(name, new ArrayList<Integer>());
+            byName.get(name).add(i);
+        }
+
+        line(0, "");
+        line(1, "@Override");
+        line(1, "public Object invoke(String actionName, Object[] params, String[] signature) throws MBeanException, ReflectionException {");
+        line(2, "try {");
+        line(3, "switch (actionName) {");
+        for (Map.Entry<String, List<Integer>> e : byName.entrySet()) {
+            line(4, "case " + literal(e.getKey()) + ":");
+            for (int i : e.getValue()) {
+                final AdapterModel.Operation op = model.operations.get(i);
+                line(5, "if (AdapterSupport.signatureMatches(signature, " + signatures.get(i) + ")) {");
+                if (op.returnsVoid) {
+                    line(6, op.invokeExpression + ";");
+                    line(6, "return null;");
+                } else {
+                    line(6, "return " + op.invokeExpression + ";");
+                }
+                line(5, "}");
+            }
+            line(5, "break;");
+        }
+        line(3, "}");
+        line(2, "} catch (Throwable e) {");
+        line(3, "throw new MBeanException(new java.lang.reflect.InvocationTargetException(e), \"Error invoking operation\");");
+        line(2, "}");
+        line(2, "throw new IllegalArgumentException(\"Operation \" + actionName + \" not found!\");");
+        line(1, "}");
+    }
+
+    private void line(int indent, String text) {
+        for (int i = 0; i < indent; i++) {
+            out.append("    ");
+        }
+        out.append(text).append('\n');
+    }
+}
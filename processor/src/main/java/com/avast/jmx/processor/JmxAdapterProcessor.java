@@ -0,0 +1,77 @@
+package com.avast.jmx.processor;
+
+import com.avast.jmx.JMXCounter;
+import com.avast.jmx.JMXOperation;
+import com.avast.jmx.JMXProperty;
+import com.avast.jmx.JMXPropertyGetter;
+import com.avast.jmx.JMXPropertySetter;
+import com.avast.jmx.JMXTimer;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Generates {@link javax.management.DynamicMBean} adapter for every class using JMX Publisher annotations. The adapter
+ * has precomputed {@link javax.management.MBeanInfo} and accesses fields and methods directly, so
+ * {@link com.avast.jmx.MyDynamicBean} does not have to scan the class and use reflection when it finds the adapter.
+ * <p/>
+ * Classes which the adapter cannot handle exactly like the reflective implementation (annotated superclasses,
+ * unsupported types, invalid annotations...) are skipped with a note - they keep working through reflection.
+ *
+ * @author Jan Kolena - kolena@avast.com
+ */
+public class JmxAdapterProcessor extends AbstractProcessor {
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return new HashSet<>(Arrays.asList(
+                JMXProperty.class.getCanonicalName(),
+                JMXPropertyGetter.class.getCanonicalName(),
+                JMXPropertySetter.class.getCanonicalName(),
+                JMXOperation.class.getCanonicalName(),
+                JMXTimer.class.getCanonicalName(),
+                JMXCounter.class.getCanonicalName()
+        ));
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        final Set<TypeElement> classes = new LinkedHashSet<>();
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                final Element enclosing = element.getEnclosingElement();
+                if (enclosing instanceof TypeElement) {
+                    classes.add((TypeElement) enclosing);
+                }
+            }
+        }
+
+        for (TypeElement cls : classes) {
+            try {
+                final AdapterModel model = new AdapterModel(processingEnv, cls);
+                new AdapterWriter(model).write(processingEnv.getFiler());
+            } catch (AdapterModel.UnsupportedClassException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, "No JMX adapter generated for " + cls + ", reflection will be used: " + e.getMessage(), cls);
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unable to write JMX adapter for " + cls + ": " + e, cls);
+            }
+        }
+
+        // the annotations are not claimed, other processors may be interested too
+        return false;
+    }
+}
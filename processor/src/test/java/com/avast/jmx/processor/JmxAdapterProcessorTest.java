@@ -0,0 +1,205 @@
+package com.avast.jmx.processor;
+
+import com.avast.jmx.MyDynamicBean;
+import junit.framework.TestCase;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.Attribute;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compiles the fixtures (<code>src/test/resources/fixtures</code>) with the processor and without it, and checks that
+ * beans of the classes with generated adapters behave exactly like the reflective ones.
+ */
+public class JmxAdapterProcessorTest extends TestCase {
+    private static final String[] FIXTURES = {"com/example/Monitored.java"};
+
+    private File generated;
+    private ClassLoader withAdapters;
+    private ClassLoader withoutAdapters;
+
+    @Before
+    public void setUp() throws Exception {
+        final File work = Files.createTempDirectory("jmx-adapters").toFile();
+        generated = new File(work, "generated");
+        withAdapters = compile(new File(work, "with"), true);
+        withoutAdapters = compile(new File(work, "without"), false);
+    }
+
+    private ClassLoader compile(File classes, boolean processor) throws Exception {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertNotNull("JDK is needed to run the test", compiler);
+        assertTrue(classes.mkdirs() && (generated.isDirectory() || generated.mkdirs()));
+
+        final List<File> sources = new ArrayList<>();
+        for (String fixture : FIXTURES) {
+            sources.add(new File(getClass().getResource("/fixtures/" + fixture).toURI()));
+        }
+        final String classpath = new File(MyDynamicBean.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+        final List<String> options = new ArrayList<>(Arrays.asList("-classpath", classpath, "-d", classes.getPath(), "-s", generated.getPath()));
+        if (!processor) options.add("-proc:none");
+
+        final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (StandardJavaFileManager files = compiler.getStandardFileManager(diagnostics, null, null)) {
+            final JavaCompiler.CompilationTask task = compiler.getTask(null, files, diagnostics, options, null, files.getJavaFileObjectsFromFiles(sources));
+            if (processor) task.setProcessors(Collections.singletonList(new JmxAdapterProcessor()));
+            // generated sources are compiled in the same task, so this fails if they do not compile
+            assertTrue("Compilation failed: " + errors(diagnostics), task.call());
+        }
+        for (Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics()) {
+            // the processor notes classes it skips
+            assertFalse(d.getMessage(null), d.getMessage(null).contains("No JMX adapter generated"));
+        }
+        return new URLClassLoader(new URL[]{classes.toURI().toURL()}, getClass().getClassLoader());
+    }
+
+    private static String errors(DiagnosticCollector<JavaFileObject> diagnostics) {
+        final StringBuilder sb = new StringBuilder();
+        for (Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics()) {
+            if (d.getKind() == Diagnostic.Kind.ERROR) sb.append('\n').append(d);
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testAdapterNames() throws Exception {
+        final Method adapterClassName = Class.forName("com.avast.jmx.GeneratedAdapters").getDeclaredMethod("adapterClassName", Class.class);
+        adapterClassName.setAccessible(true);
+        for (String name : new String[]{"com.example.Monitored", "com.example.Monitored$Inner"}) {
+            final String adapterName = (String) adapterClassName.invoke(null, withAdapters.loadClass(name));
+            // the processor names the file by AdapterModel.adapterName, the runtime looks the class up by adapterClassName
+            assertTrue(adapterName, new File(generated, adapterName.replace('.', File.separatorChar) + ".java").isFile());
+            assertNotNull(withAdapters.loadClass(adapterName));
+        }
+        assertTrue(new File(generated, "com/example/Monitored_Inner_JmxAdapter.java").isFile());
+    }
+
+    @Test
+    public void testMonitored() throws Exception {
+        assertSameBehavior("com.example.Monitored", Collections.<String, Object>singletonMap("counter", 5L));
+    }
+
+    @Test
+    public void testNestedClass() throws Exception {
+        assertSameBehavior("com.example.Monitored$Inner", Collections.<String, Object>singletonMap("value", 6));
+    }
+
+    private void assertSameBehavior(String className, Map<String, Object> values) throws Exception {
+        final MyDynamicBean generatedBean = bean(withAdapters, className);
+        final MyDynamicBean reflectiveBean = bean(withoutAdapters, className);
+        assertNotNull("Generated adapter is not used", adapterOf(generatedBean));
+        assertSame(withAdapters, adapterOf(generatedBean).getClass().getClassLoader());
+        assertNull(adapterOf(reflectiveBean));
+
+        final MBeanInfo info = generatedBean.getMBeanInfo();
+        assertEquals(attributes(reflectiveBean.getMBeanInfo()), attributes(info));
+        assertEquals(operations(reflectiveBean.getMBeanInfo()), operations(info));
+        assertReadsEqual(info, generatedBean, reflectiveBean);
+
+        // values coming from JMX clients are converted the same way, both from strings and from other types
+        for (MBeanAttributeInfo attribute : info.getAttributes()) {
+            if (!attribute.isWritable()) continue;
+            final List<Object> written = new ArrayList<>(Arrays.<Object>asList("7", 8));
+            if (values.containsKey(attribute.getName())) written.add(values.get(attribute.getName()));
+            if (String.class.getName().equals(attribute.getType())) written.add(null);
+            for (Object value : written) {
+                if (value instanceof Number && !isNumeric(attribute.getType())) continue;
+                generatedBean.setAttribute(new Attribute(attribute.getName(), value));
+                reflectiveBean.setAttribute(new Attribute(attribute.getName(), value));
+                assertEquals(attribute.getName() + " = " + value, reflectiveBean.getAttribute(attribute.getName()), generatedBean.getAttribute(attribute.getName()));
+            }
+        }
+
+        for (MBeanOperationInfo operation : info.getOperations()) {
+            final MBeanParameterInfo[] parameters = operation.getSignature();
+            final Object[] params = new Object[parameters.length];
+            final String[] signature = new String[parameters.length];
+            for (int i = 0; i < parameters.length; i++) {
+                signature[i] = parameters[i].getType();
+                params[i] = "long".equals(signature[i]) ? (Object) 2L : "int".equals(signature[i]) ? (Object) 3 : null;
+            }
+            assertEquals(operation.getName(), reflectiveBean.invoke(operation.getName(), params, signature), generatedBean.invoke(operation.getName(), params, signature));
+        }
+        assertReadsEqual(info, generatedBean, reflectiveBean);
+    }
+
+    private static void assertReadsEqual(MBeanInfo info, DynamicMBean generatedBean, DynamicMBean reflectiveBean) throws Exception {
+        final List<String> names = new ArrayList<>();
+        for (MBeanAttributeInfo attribute : info.getAttributes()) {
+            if (!attribute.isReadable()) continue;
+            names.add(attribute.getName());
+            assertEquals(attribute.getName(), reflectiveBean.getAttribute(attribute.getName()), generatedBean.getAttribute(attribute.getName()));
+        }
+        final String[] array = names.toArray(new String[names.size()]);
+        assertEquals(reflectiveBean.getAttributes(array), generatedBean.getAttributes(array));
+    }
+
+    private static boolean isNumeric(String type) {
+        return Arrays.asList("int", "long", "double", "float", "byte", "short").contains(type);
+    }
+
+    private static MyDynamicBean bean(ClassLoader classLoader, String className) throws Exception {
+        final Object instance = classLoader.loadClass(className).newInstance();
+        return new MyDynamicBean("com.example:type=" + className + ",loader=" + System.identityHashCode(classLoader), "Test bean", instance);
+    }
+
+    /**
+     * @return The generated adapter used by the bean, <code>null</code> if it uses reflection.
+     */
+    private static Object adapterOf(MyDynamicBean bean) throws Exception {
+        bean.getMBeanInfo();
+        final Field field = MyDynamicBean.class.getDeclaredField("adapter");
+        field.setAccessible(true);
+        final Object adapter = field.get(bean);
+        return adapter != null && adapter.getClass().getName().endsWith("_JmxAdapter") ? adapter : null;
+    }
+
+    /**
+     * @return Attributes by name, without the descriptors.
+     */
+    private static Map<String, String> attributes(MBeanInfo info) {
+        final Map<String, String> result = new TreeMap<>();
+        for (MBeanAttributeInfo a : info.getAttributes()) {
+            result.put(a.getName(), a.getType() + ", " + a.getDescription() + ", readable " + a.isReadable() + ", writable " + a.isWritable() + ", is " + a.isIs());
+        }
+        return result;
+    }
+
+    /**
+     * @return Operations by name and signature.
+     */
+    private static Map<String, String> operations(MBeanInfo info) {
+        final Map<String, String> result = new TreeMap<>();
+        for (MBeanOperationInfo o : info.getOperations()) {
+            final List<String> signature = new ArrayList<>();
+            for (MBeanParameterInfo p : o.getSignature()) {
+                signature.add(p.getType());
+            }
+            result.put(o.getName() + signature, o.getReturnType() + ", " + o.getDescription() + ", impact " + o.getImpact());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,83 @@
+package com.example;
+
+import com.avast.jmx.JMXOperation;
+import com.avast.jmx.JMXProperty;
+import com.avast.jmx.JMXPropertyGetter;
+import com.avast.jmx.JMXPropertySetter;
+import com.avast.jmx.JMXTimer;
+import com.avast.jmx.LatencyHistogram;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Compiled by JmxAdapterProcessorTest with and without the processor.
+ */
+@SuppressWarnings("unused")
+public class Monitored {
+    @JMXProperty(setable = true, description = "Counter")
+    private long counter = 1;
+    @JMXProperty(setable = true)
+    private AtomicInteger atomicInt = new AtomicInteger(2);
+    @JMXProperty
+    private AtomicLong atomicLong = new AtomicLong(3);
+    @JMXProperty
+    private AtomicReference<String> atomicRef = new AtomicReference<>("ref");
+    @JMXProperty
+    private static String staticField = "static";
+    @JMXProperty(setable = true)
+    int withAccessors = 4;
+    @JMXProperty(setable = true)
+    public String label = "label";
+    @JMXProperty(setable = true)
+    private boolean enabled;
+    @JMXProperty
+    private final Map<String, Object> stats = new LinkedHashMap<>();
+    @JMXTimer(description = "Request latency", unit = TimeUnit.MILLISECONDS)
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    public Monitored() {
+        stats.put("requests", 10L);
+        stats.put("name", "stats");
+    }
+
+    @JMXPropertyGetter
+    public int getWithAccessors() {
+        return withAccessors * 10;
+    }
+
+    @JMXPropertySetter
+    public void setWithAccessors(int value) {
+        withAccessors = value + 1;
+    }
+
+    @JMXProperty(name = "computed")
+    public String computed() {
+        return "computed-" + counter;
+    }
+
+    @JMXOperation(description = "Adds to the counter")
+    public long add(long a, int b) {
+        counter += a + b;
+        return counter;
+    }
+
+    @JMXOperation
+    public void reset() {
+        counter = 0;
+    }
+
+    public static class Inner {
+        @JMXProperty(setable = true)
+        private int value = 5;
+
+        @JMXOperation
+        public int twice() {
+            return value * 2;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.avast.jmx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Compiles property getters and setters to {@link MethodHandle}s, so reading or writing an attribute does not have to go
+ * through {@link Method#invoke(Object, Object...)}. Compilation is best effort - when it fails (security manager, module
+ * restrictions, unusual classes...), <code>null</code> is returned and the caller keeps using reflection.
+ *
+ * @author Jan Kolena - kolena@avast.com
+ */
+abstract class Accessors {//package visibility
+    private static final Logger LOGGER = LoggerFactory.getLogger(Accessors.class);
+
+    static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    /**
+     * Type of unbound compiled getter - takes the receiver, returns the value.
+     */
+    static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    /**
+     * Type of unbound compiled setter - takes the receiver and the new value, returns nothing.
+     */
+    static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private Accessors() {
+    }
+
+    /**
+     * Compiles getter of the property. The handle is not bound to any instance, so it can be shared by all instances of
+     * the class (see {@link PropertyDescriptor}).
+     *
+     * @param property The property.
+     * @return Handle of {@link #GETTER_TYPE} type or <code>null</code> if the getter cannot be compiled.
+     */
+    static MethodHandle compileGetter(Property property) {
+        final Method getter = property.getGetter();
+        if (getter == null) return null;
+
+        try {
+            return rawGetter(property).asType(GETTER_TYPE);
+        } catch (Exception | LinkageError e) {
+            LOGGER.debug("Unable to compile getter for " + property.getName() + ", falling back to reflection", e);
+            return null;
+        }
+    }
+
+    /**
+     * Compiles getter of the property returning a primitive type, so the value can be read without boxing. Wrappers
+     * are unboxed and primitives widened (<code>int</code> can be read as <code>long</code> or <code>double</code>).
+     * Like {@link #compileGetter(Property)}, the handle is not bound to any instance.
+     *
+     * @param property  The property.
+     * @param primitive The primitive type.
+     * @return Handle of <code>(Object)primitive</code> type or <code>null</code> if the getter does not return a
+     * primitive (or wrapper) convertible to the type.
+     */
+    static MethodHandle compilePrimitiveGetter(Property property, Class<?> primitive) {
+        if (property.getGetter() == null) return null;
+
+        try {
+            final MethodHandle raw = rawGetter(property);
+            final Class<?> returned = ValueConverter.primitive(raw.type().returnType());
+            if (returned == null || !widens(returned, primitive)) return null;
+            return raw.asType(MethodType.methodType(primitive, Object.class));
+        } catch (Exception | LinkageError e) {
+            LOGGER.debug("Unable to compile " + primitive + " getter for " + property.getName(), e);
+            return null;
+        }
+    }
+
+    /**
+     * @return Whether value of the primitive type <code>from</code> is converted to <code>to</code> without losing
+     * anything (JLS widening primitive conversion, <code>long</code> to <code>double</code> included).
+     */
+    private static boolean widens(Class<?> from, Class<?> to) {
+        if (from == to) return true;
+        if (from == Boolean.TYPE || to == Boolean.TYPE) return false;
+        if (to == Double.TYPE) return true;
+        final boolean small = from == Short.TYPE || from == Byte.TYPE || from == Character.TYPE;
+        return to == Long.TYPE ? small || from == Integer.TYPE : to == Integer.TYPE && small;
+    }
+
+    /**
+     * @return Handle reading the property with its own return type, the receiver is {@link Object}.
+     */
+    private static MethodHandle rawGetter(Property property) throws IllegalAccessException, NoSuchMethodException {
+        final Object target = property.getGetterTarget();
+        if (target instanceof Getter) {
+            // skip the generated getter completely, read the field directly
+            return ((Getter) target).toMethodHandle();
+        }
+
+        final MethodHandle handle = unreflect(property.getGetter());
+        return handle.asType(handle.type().changeParameterType(0, Object.class));
+    }
+
+    /**
+     * Compiles setter of the property. The handle is not bound to any instance, see {@link #compileGetter(Property)}.
+     *
+     * @param property The property.
+     * @return Handle of {@link #SETTER_TYPE} type or <code>null</code> if the setter cannot be compiled.
+     */
+    static MethodHandle compileSetter(Property property) {
+        final Method setter = property.getSetter();
+        if (setter == null) return null;
+
+        try {
+            final Object target = property.getSetterTarget();
+            if (target instanceof Setter) {
+                // skip the generated setter completely, convert the value and write the field directly
+                return ((Setter) target).toMethodHandle().asType(SETTER_TYPE);
+            }
+
+            // the value is converted to the type of the parameter, just like when the field is written directly
+            final MethodHandle handle = unreflect(setter);
+            return MethodHandles.filterArguments(handle, 1, ValueConverter.forType(setter.getParameterTypes()[0]).toMethodHandle()).asType(SETTER_TYPE);
+        } catch (Exception | LinkageError e) {
+            LOGGER.debug("Unable to compile setter for " + property.getName() + ", falling back to reflection", e);
+            return null;
+        }
+    }
+
+    /**
+     * Unreflects the method. Static methods get an extra ignored first parameter, so they look just like instance ones.
+     */
+    static MethodHandle unreflect(Method method) throws IllegalAccessException {
+        method.setAccessible(true);
+        final MethodHandle handle = LOOKUP.unreflect(method);
+        return Modifier.isStatic(method.getModifiers()) ? MethodHandles.dropArguments(handle, 0, Object.class) : handle;
+    }
+}
@@ -0,0 +1,85 @@
+package com.avast.jmx;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runtime support for adapters generated by <code>jmx-publisher-processor</code>. The generated code calls these methods,
+ * so they behave exactly like the reflective {@link MyDynamicBean}. Not intended to be used directly.
+ *
+ * @author Jan Kolena - kolena@avast.com
+ */
+public final class AdapterSupport {
+    /**
+     * Suffix of generated adapter class. The adapter of <code>com.example.Outer$Inner</code> is
+     * <code>com.example.Outer_Inner_JmxAdapter</code>.
+     */
+    public static final String ADAPTER_SUFFIX = "_JmxAdapter";
+
+    private AdapterSupport() {
+    }
+
+    /**
+     * Converts value coming from JMX client to given type, see {@link ValueConverter}.
+     *
+     * @param value The value.
+     * @param type  The target type.
+     * @return Converted value (boxed for primitive types).
+     * @throws IllegalArgumentException If the value cannot be converted.
+     */
+    public static Object convertValue(Object value, Class<?> type) {
+        return ValueConverter.forType(type).convert(value);
+    }
+
+    /**
+     * Converts value of a {@link Map} property to {@link javax.management.openmbean.CompositeData} reusing the composite
+     * type of the previous conversion, see {@link CompositeDataConverter}.
+     *
+     * @param converter Converter of the property, one per adapter instance.
+     * @param value     The value.
+     * @return The composite data (<code>null</code> if the map is empty or cannot be converted) or the value itself if
+     * it's not a map.
+     */
+    public static Object toCompositeData(CompositeDataConverter converter, Object value) {
+        return value instanceof Map ? converter.convert((Map) value) : value;
+    }
+
+    /**
+     * Converts value of a {@link JMXTimer} field to {@link javax.management.openmbean.CompositeData}.
+     *
+     * @param histogram The histogram, may be <code>null</code>.
+     * @param unit      Unit of the published values.
+     * @return The data or <code>null</code>.
+     */
+    public static Object toCompositeData(LatencyHistogram histogram, TimeUnit unit) {
+        return histogram != null ? histogram.toCompositeData(unit) : null;
+    }
+
+    /**
+     * Sets value of striped counter (<code>LongAdder</code>, <code>DoubleAdder</code>, <code>LongAccumulator</code> or
+     * <code>DoubleAccumulator</code>) - resets it and adds the value.
+     *
+     * @param adder The counter.
+     * @param value Value coming from JMX client.
+     */
+    public static void setAdder(Object adder, Object value) throws InvocationTargetException {
+        Adders.set(adder, value);
+    }
+
+    /**
+     * Checks whether signature of invoked operation matches the expected one.
+     *
+     * @param signature Signature sent by JMX client (may be <code>null</code> for no parameters).
+     * @param expected  Names of parameter types of the operation.
+     * @return <code>true</code> if they match.
+     */
+    public static boolean signatureMatches(String[] signature, String[] expected) {
+        final int length = signature == null ? 0 : signature.length;
+        if (length != expected.length) return false;
+        for (int i = 0; i < length; i++) {
+            if (!expected[i].equals(signature[i])) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,119 @@
+package com.avast.jmx;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Support of striped counters from <code>java.util.concurrent.atomic</code> - <code>LongAdder</code>,
+ * <code>DoubleAdder</code>, <code>LongAccumulator</code> and <code>DoubleAccumulator</code>. They look like their basic
+ * type (<code>long</code> or <code>double</code>), reading gives <code>sum()</code> (<code>get()</code> for
+ * accumulators), setting resets the counter and adds (accumulates) the new value.
+ * <p/>
+ * The classes are recognized by name and used through {@link Number} and method handles, so the library still runs on
+ * Java 7 where they do not exist.
+ *
+ * @author Jan Kolena - kolena@avast.com
+ */
+abstract class Adders {//package visibility
+    private static final String PACKAGE = "java.util.concurrent.atomic.";
+
+    private static final Map<String, Class<?>> BASIC_TYPES;
+
+    static {
+        final Map<String, Class<?>> types = new HashMap<>();
+        types.put(PACKAGE + "LongAdder", Long.TYPE);
+        types.put(PACKAGE + "LongAccumulator", Long.TYPE);
+        types.put(PACKAGE + "DoubleAdder", Double.TYPE);
+        types.put(PACKAGE + "DoubleAccumulator", Double.TYPE);
+        BASIC_TYPES = Collections.unmodifiableMap(types);
+    }
+
+    private static final ClassValue<MethodHandle[]> UPDATERS = new ClassValue<MethodHandle[]>() {
+        @Override
+        protected MethodHandle[] computeValue(Class<?> type) {
+            final Class<?> basic = getBasicType(type);
+            final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            try {
+                final MethodHandle reset = lookup.findVirtual(type, "reset", MethodType.methodType(void.class));
+                final String update = type.getSimpleName().endsWith("Adder") ? "add" : "accumulate";
+                final MethodHandle add = lookup.findVirtual(type, update, MethodType.methodType(void.class, basic));
+                return new MethodHandle[]{
+                        reset.asType(MethodType.methodType(void.class, Object.class)),
+                        add.asType(MethodType.methodType(void.class, Object.class, Object.class))
+                };
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                throw new IllegalArgumentException("Unsupported class: " + type, e);
+            }
+        }
+    };
+
+    private Adders() {
+    }
+
+    /**
+     * @return <code>true</code> if the class is one of the striped counters.
+     */
+    static boolean isAdder(Class<?> cls) {
+        return BASIC_TYPES.containsKey(cls.getName());
+    }
+
+    /**
+     * @return <code>long</code> or <code>double</code> class, <code>null</code> if the class is not a striped counter.
+     */
+    static Class<?> getBasicType(Class<?> cls) {
+        return BASIC_TYPES.get(cls.getName());
+    }
+
+    /**
+     * Reads current value of the counter.
+     *
+     * @param adder The counter (one of the supported classes, all of them are numbers).
+     * @return <code>Long</code> or <code>Double</code>.
+     */
+    static Object read(Object adder) {
+        final Number number = (Number) adder;
+        return getBasicType(adder.getClass()) == Double.TYPE ? (Object) number.doubleValue() : (Object) number.longValue();
+    }
+
+    /**
+     * Resets the counter to its initial value.
+     */
+    static void reset(Object adder) throws InvocationTargetException {
+        try {
+            UPDATERS.get(adder.getClass())[0].invokeExact(adder);
+        } catch (Throwable e) {
+            throw new InvocationTargetException(e);
+        }
+    }
+
+    /**
+     * Resets the counter and adds (accumulates) the value. It's not atomic - updates done concurrently may be lost.
+     *
+     * @param adder The counter.
+     * @param value The new value, converted by {@link ValueConverter}.
+     */
+    static void set(Object adder, Object value) throws InvocationTargetException {
+        final Object converted = ValueConverter.forType(getBasicType(adder.getClass())).convert(value);
+        final MethodHandle[] updaters = UPDATERS.get(adder.getClass());
+        try {
+            updaters[0].invokeExact(adder);
+            updaters[1].invokeExact(adder, converted);
+        } catch (Throwable e) {
+            throw new InvocationTargetException(e);
+        }
+    }
+
+    /**
+     * Creates handle reading the counter - <code>(adder)long</code> or <code>(adder)double</code>.
+     */
+    static MethodHandle reader(Class<?> cls) throws NoSuchMethodException, IllegalAccessException {
+        final Class<?> basic = getBasicType(cls);
+        final MethodHandle handle = MethodHandles.publicLookup().findVirtual(Number.class, basic == Double.TYPE ? "doubleValue" : "longValue", MethodType.methodType(basic));
+        return handle.asType(MethodType.methodType(basic, cls));
+    }
+}
@@ -0,0 +1,77 @@
+package com.avast.jmx;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background registrations and unregistrations, see {@link MyDynamicBean#registerAsync()}. One shared daemon thread
+ * processes the tasks in the order they were submitted. The queue is bounded; when it's full the submitting thread
+ * waits for a free slot, so a flood of registrations slows its producer down instead of filling the heap.
+ *
+ * @author Jan Kolena - kolena@avast.com
+ */
+final class AsyncRegistrar {//package visibility
+    static final int QUEUE_CAPACITY = 10000;
+
+    private static ThreadPoolExecutor executor;
+
+    private AsyncRegistrar() {
+    }
+
+    private static synchronized ThreadPoolExecutor executor() {
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    final Thread thread = new Thread(r, "jmx-publisher-registrar");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }, new RejectedExecutionHandler() {
+                @Override
+                public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                    try {
+                        executor.getQueue().put(r);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException("Interrupted while waiting for the queue of registrations", e);
+                    }
+                }
+            });
+            executor.prestartCoreThread();
+        }
+        return executor;
+    }
+
+    /**
+     * Queues the task, waits if the queue is full.
+     */
+    static void execute(FutureTask<?> task) {
+        executor().execute(task);
+    }
+
+    /**
+     * Waits until all the tasks submitted before are done.
+     */
+    static void flush() throws InterruptedException {
+        final FutureTask<Void> barrier = new FutureTask<>(new Callable<Void>() {
+            @Override
+            public Void call() {
+                return null;
+            }
+        });
+        execute(barrier);
+        try {
+            barrier.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
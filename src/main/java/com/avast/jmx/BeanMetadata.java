@@ -0,0 +1,276 @@
+package com.avast.jmx;
+
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanConstructorInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanOperationInfo;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.*;
+
+/**
+ * Everything {@link MyDynamicBean} learns by scanning a class - annotated members, operations and attribute infos.
+ * It's computed once per class and cached. The properties are described by immutable {@link PropertyDescriptor}s shared
+ * by all instances of the class (the instance is passed to them on every access), so a new bean holds just the
+ * instance, {@link PropertyBinding}s of the few properties with state of their own and a reference to the shared
+ * {@link MBeanInfo}.
+ * <p/>
+ * The cache is a {@link ClassValue}, so the metadata is stored with the class itself and does not prevent its class
+ * loader from being collected.
+ *
+ * @author Jan Kolena - kolena@avast.com
+ */
+final class BeanMetadata {//package visibility
+    private static final ClassValue<BeanMetadata> CACHE = new ClassValue<BeanMetadata>() {
+        @Override
+        protected BeanMetadata computeValue(Class<?> type) {
+            final long start = System.nanoTime();
+            try {
+                final BeanMetadata metadata = new BeanMetadata(type);
+                PublisherMetrics.INSTANCE.classScanned(start);
+                return metadata;
+            } catch (NoSuchMethodException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    };
+
+    static final MBeanConstructorInfo[] CONSTRUCTORS;
+    static final MBeanNotificationInfo[] NOTIFICATIONS = new MBeanNotificationInfo[0];
+
+    static {
+        final Constructor[] constructors = MyDynamicBean.class.getConstructors();
+        CONSTRUCTORS = new MBeanConstructorInfo[]{
+                new MBeanConstructorInfo(MyDynamicBean.class.getSimpleName() + "(): No-parameter constructor", constructors[0])
+        };
+    }
+
+    private final Map<String, PropertyDescriptor> properties;
+    private final List<PropertyDescriptor> flattened;
+    // see PropertyDescriptor#isBound()
+    private final List<PropertyDescriptor> bound;
+    private final Map<String, Map<String, Method>> ops;
+    private final Map<String, Overloads> overloads;
+    private final Map<String, PropertyOperation> propertyOperations;
+    private final MBeanOperationInfo[] operationsInfo;
+    private final MBeanAttributeInfo[] attributesInfo;
+    // info of the last name and description, beans of the same class usually share both
+    private volatile MBeanInfo info;
+    private volatile boolean dispatcherResolved;
+    private CompiledDispatcher dispatcher;
+
+    /**
+     * Gets (cached) metadata of the class.
+     *
+     * @param cls The class.
+     * @return The metadata.
+     * @throws IllegalArgumentException If the class is not annotated correctly.
+     */
+    static BeanMetadata forClass(Class<?> cls) {
+        return CACHE.get(cls);
+    }
+
+    private BeanMetadata(Class<?> cls) throws NoSuchMethodException {
+        // get all methods annotated as JMXPropertyGetter
+        final List<Method> getters = MyDynamicBean.getAnnotatedMethods(cls, JMXPropertyGetter.class);
+        // get all methods annotated as JMXPropertySetter
+        final List<Method> setters = MyDynamicBean.getAnnotatedMethods(cls, JMXPropertySetter.class);
+        // get all fields annotated as JMXProperty
+        final List<Field> fields = MyDynamicBean.getAnnotatedFields(cls, JMXProperty.class);
+        // and JMXTimer or JMXCounter (unless they are JMXProperty too)
+        for (Field f : MyDynamicBean.getAnnotatedFields(cls, JMXTimer.class)) {
+            if (!fields.contains(f)) fields.add(f);
+        }
+        for (Field f : MyDynamicBean.getAnnotatedFields(cls, JMXCounter.class)) {
+            if (!fields.contains(f)) fields.add(f);
+        }
+        // get all methods annotated as JMXProperty (getters-only, gives value)
+        final List<Method> propertyMethods = MyDynamicBean.getAnnotatedMethods(cls, JMXProperty.class);
+        // get all methods annotated as JMXOperation
+        final List<Method> operations = MyDynamicBean.getAnnotatedMethods(cls, JMXOperation.class);
+
+        final Map<String, Map<String, Method>> assignedOps = MyDynamicBean.assignOperations(operations);
+        this.ops = Collections.unmodifiableMap(assignedOps);
+        final Map<String, Overloads> byName = new HashMap<>();
+        for (Map.Entry<String, Map<String, Method>> e : assignedOps.entrySet()) {
+            byName.put(e.getKey(), new Overloads(e.getValue().values()));
+        }
+        this.overloads = byName;
+
+        // properties not bound to any instance, they are described and dropped
+        List<Property> list = MyDynamicBean.getProperties(null, fields, getters, setters, propertyMethods);
+        list = MyDynamicBean.generateMissingGetters(list);
+        list = MyDynamicBean.generateMissingSetters(list);
+
+        final Map<String, Property> unique = new LinkedHashMap<>();
+        for (Property p : list) {
+            final Property origProperty = unique.get(p.getName());
+            if (origProperty != null) {
+                if (!MyDynamicBean.isSubclassOf(origProperty.getOriginalClass(), p.getOriginalClass()))
+                    throw new IllegalArgumentException("Duplicate property " + p.getName() + " " + p);
+            } else {
+                unique.put(p.getName(), p);
+            }
+        }
+
+        final Map<String, PropertyDescriptor> props = new LinkedHashMap<>();
+        final List<PropertyDescriptor> flattenedMaps = new ArrayList<>();
+        final List<PropertyDescriptor> boundProperties = new ArrayList<>();
+        for (Property p : unique.values()) {
+            final PropertyDescriptor descriptor = new PropertyDescriptor(p);
+            props.put(descriptor.getName(), descriptor);
+            if (descriptor.getFlattenedMap() != null) flattenedMaps.add(descriptor);
+            if (descriptor.isBound()) boundProperties.add(descriptor);
+        }
+        this.properties = Collections.unmodifiableMap(props);
+        this.flattened = flattenedMaps.isEmpty() ? Collections.<PropertyDescriptor>emptyList() : Collections.unmodifiableList(flattenedMaps);
+        this.bound = boundProperties.isEmpty() ? Collections.<PropertyDescriptor>emptyList() : Collections.unmodifiableList(boundProperties);
+
+        // operations generated for properties
+        final Map<String, PropertyOperation> propertyOps = new HashMap<>();
+        final List<MBeanOperationInfo> opsInfo = new ArrayList<>(Arrays.asList(MyDynamicBean.createOperationsInfo(operations)));
+        for (PropertyDescriptor p : props.values()) {
+            for (PropertyOperation op : p.createOperations()) {
+                if (assignedOps.containsKey(op.getName()) || propertyOps.containsKey(op.getName())) {
+                    throw new IllegalArgumentException("Duplicate operation " + op.getName() + " of property " + p.getName());
+                }
+                propertyOps.put(op.getName(), op);
+                opsInfo.add(op.getInfo());
+            }
+        }
+        this.propertyOperations = Collections.unmodifiableMap(propertyOps);
+        this.operationsInfo = opsInfo.toArray(new MBeanOperationInfo[opsInfo.size()]);
+        // flattened maps are published by their keys, see MyDynamicBean#getMBeanInfo()
+        final List<Property> published = new ArrayList<>(list.size());
+        for (Property p : list) {
+            if (p.getFlattenedMap() == null) published.add(p);
+        }
+        this.attributesInfo = MyDynamicBean.propertiesToAttributeInfo(published);
+    }
+
+    /**
+     * @return Properties by name, shared by all instances. The map is shared, do not modify it.
+     */
+    Map<String, PropertyDescriptor> getProperties() {
+        return properties;
+    }
+
+    /**
+     * @return Properties with {@link MapExposure#FLATTENED} maps, usually empty.
+     */
+    List<PropertyDescriptor> getFlattened() {
+        return flattened;
+    }
+
+    /**
+     * Binds properties with state of their own (see {@link PropertyDescriptor#isBound()}) to given instance.
+     *
+     * @param instance The instance or its {@link WeakTarget}.
+     * @return The bindings by name of their properties, empty map if the class has no such properties.
+     */
+    Map<String, PropertyBinding> bind(Object instance) {
+        if (bound.isEmpty()) return Collections.emptyMap();
+        final Map<String, PropertyBinding> bindings = new HashMap<>();
+        final Map<Field, CounterRate.Samples> sampled = new HashMap<>();
+        for (PropertyDescriptor p : bound) {
+            bindings.put(p.getName(), p.bind(instance, sampled));
+        }
+        return bindings;
+    }
+
+    /**
+     * Gets info of a bean. Beans with the same name and description (e.g. all beans of the class with the default name)
+     * share one info; the attributes and operations are shared always.
+     *
+     * @param name        Name of the bean (without the counter).
+     * @param description Description of the bean.
+     * @return The info.
+     */
+    MBeanInfo getInfo(String name, String description) {
+        MBeanInfo shared = info;
+        if (shared == null || !shared.getClassName().equals(name) || !shared.getDescription().equals(description)) {
+            shared = new MBeanInfo(name, description, attributesInfo, CONSTRUCTORS, operationsInfo, NOTIFICATIONS);
+            info = shared;
+        }
+        return shared;
+    }
+
+    /**
+     * @return Operations, by name and signature. The map is shared, do not modify it.
+     */
+    Map<String, Map<String, Method>> getOperations() {
+        return ops;
+    }
+
+    /**
+     * Finds operation by its name and the signature sent by JMX client. Signatures of the overloads are precomputed, so
+     * nothing is allocated.
+     *
+     * @return The method or <code>null</code> if there is no such operation.
+     */
+    Method findOperation(String name, String[] signature) {
+        final Overloads candidates = overloads.get(name);
+        return candidates != null ? candidates.find(signature) : null;
+    }
+
+    /**
+     * @return Operations generated for properties, by name. The map is shared, do not modify it.
+     */
+    Map<String, PropertyOperation> getPropertyOperations() {
+        return propertyOperations;
+    }
+
+    MBeanOperationInfo[] getOperationsInfo() {
+        return operationsInfo;
+    }
+
+    MBeanAttributeInfo[] getAttributesInfo() {
+        return attributesInfo;
+    }
+
+    /**
+     * Gets dispatcher for {@link DispatchMode#COMPILED}, compiling it on the first call.
+     *
+     * @return The dispatcher or <code>null</code> if it cannot be compiled for this class.
+     */
+    CompiledDispatcher getCompiledDispatcher() {
+        if (!dispatcherResolved) {
+            synchronized (this) {
+                if (!dispatcherResolved) {
+                    dispatcher = CompiledDispatcher.create(properties.values(), ops, propertyOperations);
+                    dispatcherResolved = true;
+                }
+            }
+        }
+        return dispatcher;
+    }
+
+    /**
+     * Overloads of one operation with names of their parameter types.
+     */
+    private static final class Overloads {
+        private final Method[] methods;
+        private final String[][] signatures;
+
+        private Overloads(Collection<Method> overloads) {
+            this.methods = overloads.toArray(new Method[overloads.size()]);
+            this.signatures = new String[methods.length][];
+            for (int i = 0; i < methods.length; i++) {
+                final Class<?>[] parameterTypes = methods[i].getParameterTypes();
+                signatures[i] = new String[parameterTypes.length];
+                for (int j = 0; j < parameterTypes.length; j++) {
+                    signatures[i][j] = parameterTypes[j].getName();
+                }
+            }
+        }
+
+        private Method find(String[] signature) {
+            for (int i = 0; i < methods.length; i++) {
+                if (AdapterSupport.signatureMatches(signature, signatures[i])) return methods[i];
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.avast.jmx;
+
+/**
+ * Options of {@link MyDynamicBean}. Immutable, every <code>with*</code> method returns a new instance.
+ *
+ * @author Jan Kolena - kolena@avast.com
+ * @see MyDynamicBean#setDefaultOptions(BeanOptions)
+ */
+public final class BeanOptions {
+    private static final BeanOptions DEFAULTS = new BeanOptions(DispatchMode.LOOKUP, false, false, false);
+
+    private final DispatchMode dispatchMode;
+    private final boolean stats;
+    private final boolean lazy;
+    private final boolean weakTarget;
+
+    private BeanOptions(DispatchMode dispatchMode, boolean stats, boolean lazy, boolean weakTarget) {
+        this.dispatchMode = dispatchMode;
+        this.stats = stats;
+        this.lazy = lazy;
+        this.weakTarget = weakTarget;
+    }
+
+    public static BeanOptions defaults() {
+        return DEFAULTS;
+    }
+
+    public DispatchMode getDispatchMode() {
+        return dispatchMode;
+    }
+
+    public BeanOptions withDispatchMode(DispatchMode dispatchMode) {
+        MyPreconditions.checkNotNull(dispatchMode);
+        return new BeanOptions(dispatchMode, stats, lazy, weakTarget);
+    }
+
+    public boolean isStats() {
+        return stats;
+    }
+
+    /**
+     * Enables statistics of calls (count, errors, latency and allocated bytes) of every attribute and operation,
+     * published by companion MBean <code>&lt;name of the bean&gt;,stats=publisher</code>. Disabled by default, it then
+     * costs nothing.
+     *
+     * @param stats <code>true</code> to collect the statistics.
+     * @return The new options.
+     */
+    public BeanOptions withStats(boolean stats) {
+        return new BeanOptions(dispatchMode, stats, lazy, weakTarget);
+    }
+
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    /**
+     * Postpones building of the bean (properties, accessors, {@link javax.management.MBeanInfo}) until it's accessed for
+     * the first time - by <code>getMBeanInfo</code>, <code>getAttribute</code>, <code>invoke</code> etc. Registration
+     * of a lazy bean is cheaper and beans which are never read take less heap. Statistics of a lazy bean (see
+     * {@link #withStats(boolean)}) contain only attributes and operations which were used. Disabled by default.
+     *
+     * @param lazy <code>true</code> to build the bean on the first access.
+     * @return The new options.
+     */
+    public BeanOptions withLazy(boolean lazy) {
+        return new BeanOptions(dispatchMode, stats, lazy, weakTarget);
+    }
+
+    public boolean isWeakTarget() {
+        return weakTarget;
+    }
+
+    /**
+     * References the exposed object weakly, so a bean which is not unregistered does not keep the object (and
+     * everything it references) in the heap forever. Once the object is garbage collected, the bean unregisters itself
+     * and reading it fails with {@link IllegalStateException}. Weak beans do not use the generated adapters, those
+     * would hold the object strongly. Disabled by default.
+     *
+     * @param weakTarget <code>true</code> to reference the object weakly.
+     * @return The new options.
+     */
+    public BeanOptions withWeakTarget(boolean weakTarget) {
+        return new BeanOptions(dispatchMode, stats, lazy, weakTarget);
+    }
+
+    @Override
+    public String toString() {
+        return "BeanOptions{" + "dispatchMode=" + dispatchMode + ", stats=" + stats + ", lazy=" + lazy + ", weakTarget=" + weakTarget + '}';
+    }
+}
@@ -0,0 +1,127 @@
+package com.avast.jmx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Registration of many objects at once, see {@link MyDynamicBean#registerAll(Collection, Executor)}. The objects are
+ * split into chunks; beans of the chunks (scanning of classes, building of {@link javax.management.MBeanInfo}) are
+ * created in parallel by the executor, while the calling thread registers the finished chunks in order - the
+ * {@link javax.management.MBeanServer} would serialize the registrations anyway.
+ *
+ * @author Jan Kolena - kolena@avast.com
+ */
+final class BulkRegistration {//package visibility
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkRegistration.class);
+
+    static final int CHUNK_SIZE = 128;
+
+    private BulkRegistration() {
+    }
+
+    static List<RegistrationResult> registerAll(Collection<?> objects, Executor executor) {
+        final List<Object> list = new ArrayList<>(objects);
+        final List<FutureTask<Object[]>> chunks = new ArrayList<>(list.size() / CHUNK_SIZE + 1);
+        for (int from = 0; from < list.size(); from += CHUNK_SIZE) {
+            final FutureTask<Object[]> chunk = new FutureTask<>(new CreateBeans(list.subList(from, Math.min(from + CHUNK_SIZE, list.size()))));
+            try {
+                executor.execute(chunk);
+            } catch (RejectedExecutionException e) {
+                LOGGER.debug("Executor rejected the chunk, creating the beans in the calling thread", e);
+                chunk.run();
+            }
+            chunks.add(chunk);
+        }
+
+        final List<RegistrationResult> results = new ArrayList<>(list.size());
+        int index = 0;
+        for (FutureTask<Object[]> chunk : chunks) {
+            Object[] created;
+            try {
+                created = chunk.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                created = failed(CHUNK_SIZE, e);
+            } catch (ExecutionException e) {
+                // CreateBeans catches everything, so it's an Error
+                created = failed(CHUNK_SIZE, e);
+            }
+            for (int i = 0; i < created.length && index < list.size(); i++, index++) {
+                results.add(register(list.get(index), created[i]));
+            }
+        }
+        return results;
+    }
+
+    private static RegistrationResult register(Object object, Object created) {
+        if (created instanceof Exception) {
+            PublisherMetrics.INSTANCE.registrationFailed();
+            return new RegistrationResult(object, null, (Exception) created);
+        }
+        final MyDynamicBean bean = (MyDynamicBean) created;
+        try {
+            bean.register();
+            return new RegistrationResult(object, bean, null);
+        } catch (Exception e) {
+            LOGGER.debug("Exception while registering JMX Bean", e);
+            PublisherMetrics.INSTANCE.registrationFailed();
+            return new RegistrationResult(object, bean, e);
+        }
+    }
+
+    static List<RegistrationResult> unregisterAll(Collection<MyDynamicBean> beans) {
+        final List<RegistrationResult> results = new ArrayList<>(beans.size());
+        for (MyDynamicBean bean : beans) {
+            if (bean == null) continue;
+            try {
+                bean.unregister();
+                results.add(new RegistrationResult(bean.getObject(), bean, null));
+            } catch (Exception e) {
+                LOGGER.debug("Exception while unregistering JMX Bean", e);
+                results.add(new RegistrationResult(bean.getObject(), bean, e));
+            }
+        }
+        return results;
+    }
+
+    private static Object[] failed(int size, Exception e) {
+        final Object[] failed = new Object[size];
+        for (int i = 0; i < size; i++) {
+            failed[i] = e;
+        }
+        return failed;
+    }
+
+    /**
+     * Creates beans of one chunk, the result contains the bean or the exception for every object.
+     */
+    private static final class CreateBeans implements Callable<Object[]> {
+        private final List<Object> objects;
+
+        private CreateBeans(List<Object> objects) {
+            this.objects = objects;
+        }
+
+        @Override
+        public Object[] call() {
+            final Object[] created = new Object[objects.size()];
+            for (int i = 0; i < created.length; i++) {
+                try {
+                    created[i] = new MyDynamicBean(objects.get(i));
+                } catch (Exception e) {
+                    created[i] = e;
+                }
+            }
+            return created;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.avast.jmx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cached value of a property of one instance, see {@link JMXProperty#cacheMillis()}. The first read computes the value
+ * (concurrent readers wait for it, so the getter runs once); later reads return the cached value and, once it's
+ * older than the TTL, submit one refresh to a shared daemon thread and return the stale value meanwhile
+ * (stale-while-revalidate). A failed refresh keeps the stale value, the next read tries again. A value computed while
+ * the cache was invalidated (i.e. the property was written meanwhile) is returned but not cached.
+ * <p/>
+ * Hits and misses of all the caches are counted by {@link PublisherMetrics}.
+ *
+ * @author Jan Kolena - kolena@avast.com
+ */
+final class CachedValue implements Runnable {//package visibility
+    private static final Logger LOGGER = LoggerFactory.getLogger(CachedValue.class);
+
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong MISSES = new AtomicLong();
+    private static ExecutorService refresher;
+
+    private final PropertyDescriptor property;
+    private final Object instance;
+    private final long ttlNanos;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    // held while the getter runs, so it never runs concurrently; writes (invalidate()) do not wait for it
+    private final Object loadLock = new Object();
+    private volatile Entry entry;
+    // bumped by invalidate(), guarded by this (the Entry is published under the same lock)
+    private int generation;
+
+    private static final class Entry {
+        private final Object value;
+        private final long loaded;
+
+        private Entry(Object value, long loaded) {
+            this.value = value;
+            this.loaded = loaded;
+        }
+    }
+
+    /**
+     * @param property The property, its {@link PropertyDescriptor#getCacheMillis()} is the TTL.
+     * @param instance The instance, its {@link WeakTarget} or {@link GuardedValue}.
+     */
+    CachedValue(PropertyDescriptor property, Object instance) {
+        this.property = property;
+        this.instance = instance;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(property.getCacheMillis());
+    }
+
+    /**
+     * @return The cached value as the getter returned it (i.e. maps are not converted).
+     */
+    Object get() throws IllegalAccessException, InvocationTargetException {
+        Entry current = entry;
+        if (current == null) {
+            synchronized (loadLock) {
+                current = entry;
+                if (current == null) {
+                    MISSES.incrementAndGet();
+                    return load().value;
+                }
+            }
+        }
+        HITS.incrementAndGet();
+        if (System.nanoTime() - current.loaded > ttlNanos && refreshing.compareAndSet(false, true)) {
+            try {
+                refresher().execute(this);
+            } catch (RuntimeException e) {
+                refreshing.set(false);
+                throw e;
+            }
+        }
+        return current.value;
+    }
+
+    /**
+     * Drops the value, the next read computes it again (e.g. after the property was written).
+     */
+    synchronized void invalidate() {
+        generation++;
+        entry = null;
+    }
+
+    /**
+     * Computes the value, the caller holds the {@link #loadLock}.
+     */
+    private Entry load() throws IllegalAccessException, InvocationTargetException {
+        final int started;
+        synchronized (this) {
+            started = generation;
+        }
+        final Object value = instance instanceof GuardedValue ? ((GuardedValue) instance).get() : property.getRawValue(instance);
+        final Entry loaded = new Entry(value, System.nanoTime());
+        synchronized (this) {
+            if (generation == started) entry = loaded;
+        }
+        return loaded;
+    }
+
+    /**
+     * Refreshes the value, on the refresher thread.
+     */
+    @Override
+    public void run() {
+        try {
+            synchronized (loadLock) {
+                load();
+            }
+        } catch (Exception e) {
+            LOGGER.debug("Unable to refresh cached value of " + property, e);
+        } finally {
+            refreshing.set(false);
+        }
+    }
+
+    private static synchronized ExecutorService refresher() {
+        if (refresher == null) {
+            refresher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    final Thread thread = new Thread(r, "jmx-publisher-cache-refresher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return refresher;
+    }
+
+    /**
+     * @return Number of reads served from the caches, including stale values.
+     */
+    static long getHits() {
+        return HITS.get();
+    }
+
+    /**
+     * @return Number of reads which computed the value.
+     */
+    static long getMisses() {
+        return MISSES.get();
+    }
+}
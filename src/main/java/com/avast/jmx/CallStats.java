@@ -0,0 +1,86 @@
+package com.avast.jmx;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Statistics of calls of one attribute or operation - number of calls and errors, total and maximal latency and
+ * allocated bytes. Threads record into several stripes (by thread id), each on its own cache line, so recording
+ * neither contends nor allocates; the stripes are summed when the statistics are read.
+ *
+ * @author Jan Kolena - kolena@avast.com
+ * @see PublisherStats
+ */
+final class CallStats {//package visibility
+    private static final int STRIPES = Math.min(8, Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1)) << 1);
+
+    // one stripe takes 64 bytes (typical cache line)
+    private static final int STRIPE_LENGTH = 8;
+    private static final int CALLS = 0;
+    private static final int ERRORS = 1;
+    private static final int TOTAL_NANOS = 2;
+    private static final int MAX_NANOS = 3;
+    private static final int ALLOCATED_BYTES = 4;
+
+    private final AtomicLongArray counters = new AtomicLongArray(STRIPES * STRIPE_LENGTH);
+
+    /**
+     * Records one call.
+     *
+     * @param nanos     Duration of the call.
+     * @param allocated Bytes allocated by the call, negative if it's not known.
+     * @param error     <code>true</code> if the call failed.
+     */
+    void record(long nanos, long allocated, boolean error) {
+        final int base = ((int) Thread.currentThread().getId() & (STRIPES - 1)) * STRIPE_LENGTH;
+        counters.incrementAndGet(base + CALLS);
+        if (error) counters.incrementAndGet(base + ERRORS);
+        counters.addAndGet(base + TOTAL_NANOS, nanos);
+        if (allocated > 0) counters.addAndGet(base + ALLOCATED_BYTES, allocated);
+
+        long max;
+        while (nanos > (max = counters.get(base + MAX_NANOS)) && !counters.compareAndSet(base + MAX_NANOS, max, nanos)) {
+            // retry
+        }
+    }
+
+    long getCalls() {
+        return sum(CALLS);
+    }
+
+    long getErrors() {
+        return sum(ERRORS);
+    }
+
+    long getTotalNanos() {
+        return sum(TOTAL_NANOS);
+    }
+
+    long getMaxNanos() {
+        long max = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            max = Math.max(max, counters.get(i * STRIPE_LENGTH + MAX_NANOS));
+        }
+        return max;
+    }
+
+    long getAllocatedBytes() {
+        return sum(ALLOCATED_BYTES);
+    }
+
+    /**
+     * Clears the statistics. Calls recorded concurrently may be partially kept.
+     */
+    void reset() {
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, 0);
+        }
+    }
+
+    private long sum(int counter) {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += counters.get(i * STRIPE_LENGTH + counter);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,331 @@
+package com.avast.jmx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.*;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Per-class dispatch table used by {@link DispatchMode#COMPILED}. Attribute and operation names are placed into
+ * collision-free hash tables, so finding the accessor is one hash, one array read and one <code>equals</code>. Getters and
+ * operations are precompiled method handles (atomic types are already unwrapped in them); properties which have to be
+ * converted (maps) or could not be compiled go through their {@link PropertyDescriptor}. Like the descriptors, the
+ * dispatcher is shared by all instances of the class; an instance binds just itself and its {@link PropertyBinding}s.
+ *
+ * @author Jan Kolena - kolena@avast.com
+ */
+final class CompiledDispatcher {//package visibility
+    private static final Logger LOGGER = LoggerFactory.getLogger(CompiledDispatcher.class);
+
+    private static final MethodType OPERATION_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+
+    private final PerfectHash attributeIndex;
+    private final PropertyDescriptor[] properties;
+    private final MethodHandle[] getters;
+    private final PerfectHash operationIndex;
+    private final String[][][] signatures;
+    private final MethodHandle[][] operations;
+    private final Map<String, PropertyOperation> propertyOperations;
+    private final boolean hasFlattenedMaps;
+
+    /**
+     * Compiles the dispatcher.
+     *
+     * @param properties         Properties of the class.
+     * @param ops                Operations of the class, by name and signature.
+     * @param propertyOperations Operations generated for properties, by name.
+     * @return The dispatcher or <code>null</code> if it cannot be built for the class.
+     */
+    static CompiledDispatcher create(Collection<PropertyDescriptor> properties, Map<String, Map<String, Method>> ops, Map<String, PropertyOperation> propertyOperations) {
+        try {
+            return new CompiledDispatcher(properties, ops, propertyOperations);
+        } catch (IllegalStateException | IllegalAccessException | SecurityException e) {
+            LOGGER.debug("Unable to compile dispatcher, properties will be looked up", e);
+            return null;
+        }
+    }
+
+    private CompiledDispatcher(Collection<PropertyDescriptor> properties, Map<String, Map<String, Method>> ops, Map<String, PropertyOperation> propertyOperations) throws IllegalAccessException {
+        this.propertyOperations = propertyOperations;
+        final String[] attributeNames = new String[properties.size()];
+        this.properties = properties.toArray(new PropertyDescriptor[properties.size()]);
+        this.getters = new MethodHandle[properties.size()];
+        boolean flattened = false;
+        int i = 0;
+        for (PropertyDescriptor p : properties) {
+            attributeNames[i] = p.getName();
+            flattened |= p.getFlattenedMap() != null;
+            // maps have to be converted by the property, rates of counters, cached and guarded values are not read from the instance
+            getters[i] = p.isConverted() || p.isBound() ? null : p.getUnboundGetter();
+            i++;
+        }
+        this.attributeIndex = PerfectHash.build(attributeNames);
+        this.hasFlattenedMaps = flattened;
+
+        final String[] operationNames = ops.keySet().toArray(new String[ops.size()]);
+        this.operationIndex = PerfectHash.build(operationNames);
+        this.signatures = new String[operationNames.length][][];
+        this.operations = new MethodHandle[operationNames.length][];
+        for (i = 0; i < operationNames.length; i++) {
+            final Collection<Method> overloads = ops.get(operationNames[i]).values();
+            signatures[i] = new String[overloads.size()][];
+            operations[i] = new MethodHandle[overloads.size()];
+            int j = 0;
+            for (Method m : overloads) {
+                final Class<?>[] parameterTypes = m.getParameterTypes();
+                signatures[i][j] = new String[parameterTypes.length];
+                for (int k = 0; k < parameterTypes.length; k++) {
+                    signatures[i][j][k] = parameterTypes[k].getName();
+                }
+                operations[i][j] = Accessors.unreflect(m).asSpreader(Object[].class, parameterTypes.length).asType(OPERATION_TYPE);
+                j++;
+            }
+        }
+    }
+
+    /**
+     * Binds the dispatcher to an instance.
+     *
+     * @param bean     The bean publishing the instance, it provides the info.
+     * @param obj      The instance or its {@link WeakTarget}.
+     * @param bindings Bound properties of the instance, by name (see {@link BeanMetadata#bind(Object)}).
+     * @return The bean.
+     */
+    DynamicMBean bind(DynamicMBean bean, Object obj, Map<String, PropertyBinding> bindings) {
+        PropertyBinding[] indexed = null;
+        if (!bindings.isEmpty()) {
+            indexed = new PropertyBinding[properties.length];
+            for (int i = 0; i < properties.length; i++) {
+                indexed[i] = bindings.get(properties[i].getName());
+            }
+        }
+        return new Bound(bean, obj, indexed);
+    }
+
+    private final class Bound implements DynamicMBean {
+        private final DynamicMBean bean;
+        private final Object obj;
+        private final PropertyBinding[] bindings;
+
+        private Bound(DynamicMBean bean, Object obj, PropertyBinding[] bindings) {
+            this.bean = bean;
+            this.obj = obj;
+            this.bindings = bindings;
+        }
+
+        /**
+         * @return Binding of the property or <code>null</code> if the property is not bound.
+         */
+        private PropertyBinding binding(int index) {
+            return bindings != null ? bindings[index] : null;
+        }
+
+        /**
+         * Writes the property, its binding drops the cached value (if there is one).
+         */
+        private void write(int index, Object value) throws IllegalAccessException, InvocationTargetException {
+            final PropertyBinding binding = binding(index);
+            if (binding != null) {
+                binding.setValue(value);
+            } else {
+                properties[index].setValue(obj, value);
+            }
+        }
+
+        private Object read(int index) throws Throwable {
+            final MethodHandle getter = getters[index];
+            if (getter != null) return (Object) getter.invokeExact(WeakTarget.resolve(obj));
+            final PropertyBinding binding = binding(index);
+            return binding != null ? binding.getValue() : properties[index].getValue(obj);
+        }
+
+        /**
+         * Reads attribute <code>property.key</code> of {@link MapExposure#FLATTENED} map.
+         */
+        private Object readFlattened(String attribute) {
+            for (int dot = attribute.indexOf(FlattenedMap.SEPARATOR); dot > 0; dot = attribute.indexOf(FlattenedMap.SEPARATOR, dot + 1)) {
+                final int index = attributeIndex.get(attribute.substring(0, dot));
+                if (index >= 0 && properties[index].getFlattenedMap() != null) {
+                    try {
+                        return binding(index).getKeyValue(attribute.substring(dot + 1));
+                    } catch (IllegalAccessException | InvocationTargetException ex) {
+                        LOGGER.error("Error executing getter for " + properties[index], ex);
+                        throw new RuntimeException("Error getting value for " + properties[index], ex);
+                    }
+                }
+            }
+            throw new IllegalArgumentException("Field " + attribute + " not found");
+        }
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException, MBeanException, ReflectionException {
+            MyPreconditions.checkNotNull(attribute);
+            final int index = attributeIndex.get(attribute);
+            if (index < 0) {
+                if (hasFlattenedMaps) return readFlattened(attribute);
+                throw new IllegalArgumentException("Field " + attribute + " not found");
+            }
+            try {
+                return read(index);
+            } catch (Throwable ex) {
+                LOGGER.error("Error executing getter for " + properties[index], ex);
+                throw new RuntimeException("Error getting value for " + properties[index], ex);
+            }
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException, InvalidAttributeValueException, MBeanException, ReflectionException {
+            MyPreconditions.checkNotNull(attribute);
+            final int index = attributeIndex.get(attribute.getName());
+            if (index < 0) {
+                throw new IllegalArgumentException("Field " + attribute + " not found");
+            }
+            try {
+                write(index, attribute.getValue());
+            } catch (Exception ex) {
+                LOGGER.error("Error executing setter for " + properties[index], ex);
+                throw new RuntimeException("Error setting value for " + properties[index], ex);
+            }
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            final AttributeList list = new AttributeList(attributes.length);
+            for (String attr : attributes) {
+                final int index = attributeIndex.get(attr);
+                if (index < 0) {
+                    if (!hasFlattenedMaps) throw new IllegalArgumentException("Unknown attribute " + attr);
+                    list.add(new Attribute(attr, readFlattened(attr)));
+                    continue;
+                }
+                try {
+                    list.add(new Attribute(properties[index].getName(), read(index)));
+                } catch (Throwable ex) {
+                    LOGGER.error("Exception while creating attribute", ex);
+                    throw new IllegalArgumentException("Error encountered", ex);
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            MyPreconditions.checkNotNull(attributes);
+            final String[] names = new String[attributes.size()];
+            for (int i = 0; i < attributes.size(); i++) {
+                final Attribute atr = (Attribute) attributes.get(i);
+                MyPreconditions.checkNotNull(atr);
+                final int index = attributeIndex.get(atr.getName());
+                if (index < 0) {
+                    throw new IllegalArgumentException("Field " + atr + " not found");
+                }
+                try {
+                    write(index, atr.getValue());
+                } catch (Exception ex) {
+                    LOGGER.error("Exception while setting attribute", ex);
+                    throw new IllegalArgumentException("Error encountered", ex);
+                }
+                names[i] = atr.getName();
+            }
+            return getAttributes(names);
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws MBeanException, ReflectionException {
+            final int index = operationIndex.get(actionName);
+            if (index >= 0) {
+                final String[][] overloads = signatures[index];
+                for (int i = 0; i < overloads.length; i++) {
+                    if (AdapterSupport.signatureMatches(signature, overloads[i])) {
+                        try {
+                            return (Object) operations[index][i].invokeExact(WeakTarget.resolve(obj), params);
+                        } catch (Throwable ex) {
+                            throw new MBeanException(new InvocationTargetException(ex), "Error invoking operation");
+                        }
+                    }
+                }
+            } else {
+                final PropertyOperation propertyOperation = propertyOperations.get(actionName);
+                if (propertyOperation != null) {
+                    final int property = attributeIndex.get(propertyOperation.getProperty());
+                    return propertyOperation.invoke(properties[property], binding(property), obj, params, signature);
+                }
+            }
+            throw new IllegalArgumentException("Operation " + actionName + " not found!");
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            // the info (e.g. attributes of flattened maps) is maintained by the bean
+            return bean.getMBeanInfo();
+        }
+    }
+
+    /**
+     * Open-addressing table without collisions - every key has its own slot, so lookup never probes.
+     */
+    static final class PerfectHash {
+        private static final int MAX_EXTRA_BITS = 4;
+        private static final int ATTEMPTS = 64;
+
+        private final String[] keys;
+        private final int[] values;
+        private final int multiplier;
+        private final int shift;
+
+        private PerfectHash(String[] keys, int[] values, int multiplier, int shift) {
+            this.keys = keys;
+            this.values = values;
+            this.multiplier = multiplier;
+            this.shift = shift;
+        }
+
+        /**
+         * Finds table size and hash multiplier which place all the names to different slots.
+         *
+         * @param names The names; value of each name is its index.
+         * @throws IllegalStateException If no such table exists (e.g. two names have the same hash code).
+         */
+        static PerfectHash build(String[] names) {
+            // at least two slots and load factor at most 0.5
+            final int minBits = Math.max(1, 33 - Integer.numberOfLeadingZeros(Math.max(1, names.length - 1)));
+            for (int bits = minBits; bits <= minBits + MAX_EXTRA_BITS; bits++) {
+                for (int attempt = 0; attempt < ATTEMPTS; attempt++) {
+                    final int multiplier = (0x9E3779B9 + attempt * 0x7F4A7C16) | 1;
+                    final PerfectHash table = tryBuild(names, bits, multiplier);
+                    if (table != null) return table;
+                }
+            }
+            throw new IllegalStateException("Unable to build perfect hash for " + names.length + " names");
+        }
+
+        private static PerfectHash tryBuild(String[] names, int bits, int multiplier) {
+            final int shift = 32 - bits;
+            final String[] keys = new String[1 << bits];
+            final int[] values = new int[1 << bits];
+            for (int i = 0; i < names.length; i++) {
+                final int slot = (names[i].hashCode() * multiplier) >>> shift;
+                if (keys[slot] != null) return null;
+                keys[slot] = names[i];
+                values[slot] = i;
+            }
+            return new PerfectHash(keys, values, multiplier, shift);
+        }
+
+        /**
+         * @return Index of the name or -1 if it's unknown.
+         */
+        int get(String key) {
+            final int slot = (key.hashCode() * multiplier) >>> shift;
+            final String k = keys[slot];
+            return k != null && k.equals(key) ? values[slot] : -1;
+        }
+    }
+}
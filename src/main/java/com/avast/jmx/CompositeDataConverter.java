@@ -0,0 +1,222 @@
+package com.avast.jmx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.openmbean.*;
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Converts values of one {@link Map} property to {@link CompositeData}. The {@link CompositeType} is built on the first
+ * conversion and reused as long as the map has the same keys (in the same iteration order) with values of the same
+ * types, so steady-state reads allocate only the values array and the {@link CompositeDataSupport}.
+ * <p/>
+ * The instance is thread safe. Used by {@link PropertyBinding}s, {@link Property} and by generated adapters.
+ *
+ * @author Jan Kolena - kolena@avast.com
+ */
+public final class CompositeDataConverter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CompositeDataConverter.class);
+
+    private static final Map<Class<?>, SimpleType<?>> SIMPLE_TYPES;
+
+    static {
+        final Map<Class<?>, SimpleType<?>> types = new HashMap<>();
+        types.put(Integer.class, SimpleType.INTEGER);
+        types.put(AtomicInteger.class, SimpleType.INTEGER);
+        types.put(BigInteger.class, SimpleType.BIGINTEGER);
+        types.put(Long.class, SimpleType.LONG);
+        types.put(AtomicLong.class, SimpleType.LONG);
+        types.put(Short.class, SimpleType.SHORT);
+        types.put(Byte.class, SimpleType.BYTE);
+        types.put(Date.class, SimpleType.DATE);
+        types.put(Double.class, SimpleType.DOUBLE);
+        types.put(Float.class, SimpleType.FLOAT);
+        types.put(Boolean.class, SimpleType.BOOLEAN);
+        types.put(AtomicBoolean.class, SimpleType.BOOLEAN);
+        types.put(String.class, SimpleType.STRING);
+        // striped counters of Java 8+, unwrapped by simplifyValue
+        addType(types, "java.util.concurrent.atomic.LongAdder", SimpleType.LONG);
+        addType(types, "java.util.concurrent.atomic.LongAccumulator", SimpleType.LONG);
+        addType(types, "java.util.concurrent.atomic.DoubleAdder", SimpleType.DOUBLE);
+        addType(types, "java.util.concurrent.atomic.DoubleAccumulator", SimpleType.DOUBLE);
+        SIMPLE_TYPES = Collections.unmodifiableMap(types);
+    }
+
+    private static void addType(Map<Class<?>, SimpleType<?>> types, String className, SimpleType<?> type) {
+        try {
+            types.put(Class.forName(className), type);
+        } catch (ClassNotFoundException e) {
+            // older Java
+        }
+    }
+
+    private final String name;
+    private final String description;
+
+    private volatile Layout layout;
+
+    /**
+     * @param name        Name of the property (and of the composite type).
+     * @param description Description of the property.
+     */
+    public CompositeDataConverter(String name, String description) {
+        this.name = name;
+        this.description = description;
+    }
+
+    /**
+     * Convert {@link Map} to {@link CompositeData} obj
+     *
+     * @param inputMap map which will be converted to {@link CompositeData}
+     * @return new representation of map in CompositeData obj OR <code>null</code> if the map is empty or not possible
+     * to convert
+     */
+    public Object convert(Map<?, ?> inputMap) {
+        final int size = inputMap != null ? inputMap.size() : 0;
+
+        if (size == 0) {
+            LOGGER.debug("Exposing empty map");
+            return null;
+        }
+
+        final Layout cached = layout;
+        final Object[] itemValues = new Object[size];
+        boolean matches = cached != null && cached.names.length == size;
+        String[] itemNames = null;
+        OpenType<?>[] itemTypes = null;
+
+        int i = 0;
+        for (Map.Entry<?, ?> entry : inputMap.entrySet()) {
+            if (i == size) return null; // the map grew during conversion, it would not fit anyway
+            final Object value = simplifyValue(entry.getValue());
+            final SimpleType<?> type = getSimpleType(value);
+            final String keyValue = entry.getKey().toString();
+
+            if (matches && (cached.types[i] != type || !cached.names[i].equals(keyValue))) {
+                matches = false;
+            }
+            if (!matches) {
+                if (itemNames == null) {
+                    itemNames = new String[size];
+                    itemTypes = new OpenType<?>[size];
+                    if (cached != null) copyPrefix(cached, itemNames, itemTypes, i);
+                }
+                itemNames[i] = keyValue;
+                itemTypes[i] = type;
+            }
+            itemValues[i] = value;
+            ++i;
+        }
+        if (i != size) return null; // the map shrank during conversion
+
+        try {
+            final Layout current;
+            if (matches) {
+                current = cached;
+            } else {
+                current = new Layout(itemNames, itemTypes, new CompositeType(name, "CompositeData wrapper-" + description, itemNames, itemNames, itemTypes));
+                layout = current;
+            }
+            return new CompositeDataSupport(current.compositeType, current.names, itemValues);
+        } catch (OpenDataException e) {
+            LOGGER.warn("Unable to convert map to open type!", e);
+            return null;
+        } catch (Exception e) {
+            LOGGER.warn("Unknown problem while exposing the data", e);
+            return null;
+        }
+    }
+
+    /**
+     * Fills names and types of entries which matched the cached layout before the first difference was found.
+     */
+    private static void copyPrefix(Layout cached, String[] itemNames, OpenType<?>[] itemTypes, int length) {
+        System.arraycopy(cached.names, 0, itemNames, 0, length);
+        System.arraycopy(cached.types, 0, itemTypes, 0, length);
+    }
+
+    static Object simplifyValue(final Object value) {
+        final Object newValue;
+
+        if (value instanceof AtomicInteger) {
+            newValue = ((AtomicInteger) value).get();
+        } else if (value instanceof AtomicLong) {
+            newValue = ((AtomicLong) value).get();
+        } else if (value instanceof AtomicBoolean) {
+            newValue = ((AtomicBoolean) value).get();
+        } else if (value instanceof Number && Adders.isAdder(value.getClass())) {
+            newValue = Adders.read(value);
+        } else newValue = value;
+
+        return newValue;
+    }
+
+    /**
+     * @return Simple type of values of given class (atomic types are unwrapped) or <code>null</code> if it's not known.
+     */
+    static SimpleType<?> simpleTypeOf(final Class<?> cls) {
+        return SIMPLE_TYPES.get(cls);
+    }
+
+    static SimpleType<?> getSimpleType(final Object value) {
+        final SimpleType<?> type = SIMPLE_TYPES.get(value.getClass());
+        return type != null ? type : getSimpleTypeByName(value);
+    }
+
+    /**
+     * Fallback for classes not in the table, matching by simple name (e.g. <code>java.sql.Date</code>).
+     */
+    private static SimpleType<?> getSimpleTypeByName(final Object value) {
+        switch (value.getClass().getSimpleName().toLowerCase()) {
+            case "integer":
+            case "atomicinteger":
+                return SimpleType.INTEGER;
+            case "biginteger":
+                return SimpleType.BIGINTEGER;
+            case "long":
+            case "atomiclong":
+                return SimpleType.LONG;
+            case "short":
+                return SimpleType.SHORT;
+            case "byte":
+                return SimpleType.BYTE;
+            case "date":
+                return SimpleType.DATE;
+            case "double":
+                return SimpleType.DOUBLE;
+            case "float":
+                return SimpleType.FLOAT;
+            case "boolean":
+            case "atomicboolean":
+                return SimpleType.BOOLEAN;
+
+            default:
+                LOGGER.debug("Unable to convert type of the value");
+            case "string":
+                return SimpleType.STRING;
+        }
+    }
+
+    /**
+     * Item names and types of the last converted map together with the composite type built from them.
+     */
+    private static final class Layout {
+        private final String[] names;
+        private final OpenType<?>[] types;
+        private final CompositeType compositeType;
+
+        private Layout(String[] names, OpenType<?>[] types, CompositeType compositeType) {
+            this.names = names;
+            this.types = types;
+            this.compositeType = compositeType;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.avast.jmx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Rate (per second) of one {@link JMXCounter} field over one {@link Window}. Counters of all instances are sampled by
+ * one shared daemon thread every second - it reads the counter once, stores it into a ring buffer of primitives (one
+ * {@link Samples} per counter, long enough for the longest window) and computes the rates of all windows from it, so
+ * reading the rate attribute is just a volatile read and never touches the counter itself.
+ * <p/>
+ * The sampler thread references the samples weakly, counters of instances which are no longer published are dropped
+ * automatically.
+ *
+ * @author Jan Kolena - kolena@avast.com
+ */
+final class CounterRate {//package visibility
+    private static final Logger LOGGER = LoggerFactory.getLogger(CounterRate.class);
+
+    private static final long PERIOD_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final Method GET_RATE;
+
+    static {
+        try {
+            GET_RATE = CounterRate.class.getMethod("getRate");
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final Queue<WeakReference<Samples>> SAMPLES = new ConcurrentLinkedQueue<>();
+    private static ScheduledExecutorService sampler;
+
+    /**
+     * Derived attributes of every counter, their name is the name of the counter with the suffix.
+     */
+    enum Window {
+        SECOND("Rate1s", 1),
+        MINUTE("Rate1m", 60),
+        FIVE_MINUTES("Rate5m", 300);
+
+        private final String suffix;
+        private final int seconds;
+
+        Window(String suffix, int seconds) {
+            this.suffix = suffix;
+            this.seconds = seconds;
+        }
+    }
+
+    private final Field field;
+    private final Window window;
+    private final Samples samples;
+
+    private CounterRate(Field field, Window window, Samples samples) {
+        this.field = field;
+        this.window = window;
+        this.samples = samples;
+    }
+
+    /**
+     * Creates properties with rates of the counter.
+     *
+     * @param instance The instance, <code>null</code> for properties scanned by {@link BeanMetadata}; their rates are not
+     *                 sampled, {@link PropertyDescriptor#bind(Object)} binds them to every instance.
+     * @param field    The counter field.
+     * @param name     Name of the counter property.
+     * @param desc     Description of the counter property.
+     * @return Read-only <code>double</code> properties, one for every {@link Window}.
+     */
+    static List<Property> createProperties(Object instance, Field field, String name, String desc) {
+        field.setAccessible(true);
+        final Samples samples = instance != null ? Samples.start(field, instance) : null;
+        final List<Property> properties = new ArrayList<>(Window.values().length);
+        for (Window window : Window.values()) {
+            final CounterRate rate = new CounterRate(field, window, samples);
+            final String description = "Rate of " + (desc.isEmpty() ? name : desc) + " per second, " + window.seconds + "s average";
+            final Property p = new Property(instance, field.getDeclaringClass(), null, name + window.suffix, description, true, false, GET_RATE, null);
+            p.setCounterRate(rate);
+            p.setType(Double.TYPE.getName());
+            properties.add(p);
+        }
+        return properties;
+    }
+
+    /**
+     * @return <code>true</code> if the class can be annotated with {@link JMXCounter}.
+     */
+    static boolean isCounterType(Class<?> cls) {
+        return cls == Long.TYPE || cls == Integer.TYPE || Number.class.isAssignableFrom(cls);
+    }
+
+    /**
+     * Creates rate of the same counter of another instance. Rates of one counter of the instance share its samples,
+     * the first of them starts sampling the counter.
+     *
+     * @param instance The instance or its {@link WeakTarget}.
+     * @param sampled  Samples of the counters of the instance sampled so far, by field.
+     */
+    CounterRate bindTo(Object instance, Map<Field, Samples> sampled) {
+        Samples samples = sampled.get(field);
+        if (samples == null) {
+            samples = Samples.start(field, instance);
+            sampled.put(field, samples);
+        }
+        return new CounterRate(field, window, samples);
+    }
+
+    private static synchronized void startSampler() {
+        if (sampler != null) return;
+        sampler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread thread = new Thread(r, "jmx-publisher-counter-sampler");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        sampler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                sampleAll();
+            }
+        }, 0, PERIOD_NANOS, TimeUnit.NANOSECONDS);
+    }
+
+    private static void sampleAll() {
+        final long now = System.nanoTime();
+        for (Iterator<WeakReference<Samples>> it = SAMPLES.iterator(); it.hasNext(); ) {
+            final Samples samples = it.next().get();
+            if (samples == null) {
+                it.remove();
+                continue;
+            }
+            try {
+                samples.sample(now);
+            } catch (Exception e) {
+                // the sampler must survive anything
+                LOGGER.debug("Unable to sample counter " + samples.field, e);
+            }
+        }
+    }
+
+    /**
+     * @return Average increase of the counter per second over the window, 0 until two samples are taken.
+     */
+    public double getRate() {
+        return samples.getRate(window);
+    }
+
+    /**
+     * Samples of one counter of one instance, one every second for the longest window. The rates of all windows are
+     * computed from the same samples.
+     */
+    static final class Samples {
+        private static final int SLOTS = Window.FIVE_MINUTES.seconds + 1;
+
+        private final Field field;
+        private final Object instance;
+
+        // written by the sampler thread only
+        private final long[] values = new long[SLOTS];
+        private final long[] times = new long[SLOTS];
+        private int head = -1;
+        private int count;
+
+        // Double.doubleToRawLongBits of the rates, by ordinal of the window
+        private final AtomicLongArray rates = new AtomicLongArray(Window.values().length);
+
+        private Samples(Field field, Object instance) {
+            this.field = field;
+            this.instance = instance;
+        }
+
+        static Samples start(Field field, Object instance) {
+            final Samples samples = new Samples(field, instance);
+            SAMPLES.add(new WeakReference<>(samples));
+            startSampler();
+            return samples;
+        }
+
+        private void sample(long now) throws IllegalAccessException {
+            final Object target = instance instanceof WeakTarget ? ((WeakTarget) instance).get() : instance;
+            if (target == null && instance != null) return;
+            final Object value = field.get(target);
+            if (value == null) return;
+
+            head = (head + 1) % SLOTS;
+            values[head] = ((Number) value).longValue();
+            times[head] = now;
+            if (count < SLOTS) count++;
+
+            for (Window window : Window.values()) {
+                // the sample <window> seconds ago, the oldest one until the buffer covers the window
+                final int oldest = (head - Math.min(window.seconds, count - 1) + SLOTS) % SLOTS;
+                final long elapsed = times[head] - times[oldest];
+                // a reset counter would give negative rate until the reset drops out of the window
+                final double rate = elapsed == 0 ? 0 : Math.max(0, (values[head] - values[oldest]) * (double) PERIOD_NANOS / elapsed);
+                rates.set(window.ordinal(), Double.doubleToRawLongBits(rate));
+            }
+        }
+
+        double getRate(Window window) {
+            return Double.longBitsToDouble(rates.get(window.ordinal()));
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.avast.jmx;
+
+/**
+ * Java Flight Recorder events of attribute reads, writes and operation invocations. This implementation does nothing,
+ * the multi-release jar contains another one for Java 11+ (<code>src/main/java11</code>) which emits
+ * <code>jdk.jfr.Event</code>s.
+ * <p/>
+ * Usage: <code>event = beginRead()</code> before the call, <code>endRead(event, ...)</code> after it (in finally).
+ *
+ * @author Jan Kolena - kolena@avast.com
+ */
+abstract class Events {//package visibility
+    private Events() {
+    }
+
+    static Object beginRead() {
+        return null;
+    }
+
+    static void endRead(Object event, String bean, String attribute) {
+    }
+
+    /**
+     * Ends read of several attributes at once, see {@link javax.management.DynamicMBean#getAttributes(String[])}.
+     */
+    static void endRead(Object event, String bean, String[] attributes) {
+    }
+
+    static Object beginWrite() {
+        return null;
+    }
+
+    static void endWrite(Object event, String bean, String attribute) {
+    }
+
+    static Object beginInvoke() {
+        return null;
+    }
+
+    static void endInvoke(Object event, String bean, String operation) {
+    }
+}
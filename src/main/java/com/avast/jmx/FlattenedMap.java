@@ -0,0 +1,124 @@
+package com.avast.jmx;
+
+import javax.management.MBeanAttributeInfo;
+import javax.management.openmbean.SimpleType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Publishes keys of one {@link Map} property as separate attributes (see {@link MapExposure#FLATTENED}).
+ * <p/>
+ * The instance is immutable, it's shared by all instances of the class.
+ *
+ * @author Jan Kolena - kolena@avast.com
+ */
+final class FlattenedMap {//package visibility
+    static final char SEPARATOR = '.';
+
+    private final String name;
+    private final String description;
+    private final String valueType;
+    private final boolean stringKeys;
+
+    /**
+     * @param name        Name of the property.
+     * @param description Description of the property.
+     * @param mapType     Generic type of the map (field type or return type of the getter).
+     */
+    FlattenedMap(String name, String description, Type mapType) {
+        this.name = name;
+        this.description = description;
+        Type keyType = null;
+        Type valueType = null;
+        if (mapType instanceof ParameterizedType) {
+            final Type[] arguments = ((ParameterizedType) mapType).getActualTypeArguments();
+            if (arguments.length == 2) {
+                keyType = arguments[0];
+                valueType = arguments[1];
+            }
+        }
+        this.stringKeys = String.class.equals(keyType);
+        this.valueType = attributeType(valueType);
+    }
+
+    private static String attributeType(Type valueType) {
+        if (valueType instanceof Class) {
+            final SimpleType<?> simpleType = CompositeDataConverter.simpleTypeOf((Class<?>) valueType);
+            return simpleType != null ? simpleType.getClassName() : ((Class<?>) valueType).getName();
+        }
+        return Object.class.getName();
+    }
+
+    /**
+     * Finds value of one key, atomic values are unwrapped.
+     *
+     * @param map The map (value of the property), may be <code>null</code>.
+     * @param key The key, as published in the attribute name.
+     * @return The value.
+     * @throws IllegalArgumentException If there is no such key.
+     */
+    Object get(Map<?, ?> map, String key) {
+        if (map != null) {
+            Object value = null;
+            try {
+                value = map.get(key);
+            } catch (ClassCastException e) {
+                // sorted map with keys of different type, find it below
+            }
+            if (value != null || (stringKeys && map.containsKey(key))) {
+                return CompositeDataConverter.simplifyValue(value);
+            }
+            if (!stringKeys) {
+                // keys which are not strings are published by their toString
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    if (key.equals(String.valueOf(entry.getKey()))) return CompositeDataConverter.simplifyValue(entry.getValue());
+                }
+            }
+        }
+        throw new IllegalArgumentException("Field " + name + SEPARATOR + key + " not found");
+    }
+
+    /**
+     * @return Keys of the map as they are published, in the iteration order of the map.
+     */
+    static Set<String> keysOf(Map<?, ?> map) {
+        if (map == null) return Collections.emptySet();
+        final Set<String> keys = new LinkedHashSet<>(map.size() * 4 / 3 + 1);
+        for (Object key : map.keySet()) {
+            keys.add(String.valueOf(key));
+        }
+        return keys;
+    }
+
+    /**
+     * @return <code>true</code> if the map has exactly the given keys.
+     */
+    static boolean hasKeys(Map<?, ?> map, Set<String> keys) {
+        final int size = map == null ? 0 : map.size();
+        if (size != keys.size()) return false;
+        if (size == 0) return true;
+        for (Object key : map.keySet()) {
+            if (!keys.contains(String.valueOf(key))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Creates attribute infos of the keys.
+     *
+     * @param keys Keys of the map.
+     */
+    List<MBeanAttributeInfo> attributesInfo(Set<String> keys) {
+        final List<MBeanAttributeInfo> infos = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            infos.add(new MBeanAttributeInfo(name + SEPARATOR + key, valueType, description, true, false, false));
+        }
+        return infos;
+    }
+}
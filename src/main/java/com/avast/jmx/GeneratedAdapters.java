@@ -0,0 +1,69 @@
+package com.avast.jmx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.DynamicMBean;
+import java.lang.reflect.Constructor;
+
+/**
+ * Finds adapters generated by <code>jmx-publisher-processor</code> (see {@link AdapterSupport}). Result of the lookup
+ * is cached per class, classes without adapter are not looked up again.
+ *
+ * @author Jan Kolena - kolena@avast.com
+ */
+abstract class GeneratedAdapters {//package visibility
+    private static final Logger LOGGER = LoggerFactory.getLogger(GeneratedAdapters.class);
+
+    private static final ClassValue<Constructor<?>> ADAPTERS = new ClassValue<Constructor<?>>() {
+        @Override
+        protected Constructor<?> computeValue(Class<?> type) {
+            return findAdapter(type);
+        }
+    };
+
+    private GeneratedAdapters() {
+    }
+
+    /**
+     * Creates generated adapter for the object.
+     *
+     * @param obj The object.
+     * @return The adapter or <code>null</code> if there is no (usable) adapter for class of the object.
+     */
+    static DynamicMBean create(Object obj) {
+        final Constructor<?> constructor = ADAPTERS.get(obj.getClass());
+        if (constructor == null) return null;
+
+        try {
+            return (DynamicMBean) constructor.newInstance(obj);
+        } catch (Exception | LinkageError e) {
+            LOGGER.warn("Unable to create generated JMX adapter for " + obj.getClass() + ", falling back to reflection", e);
+            return null;
+        }
+    }
+
+    static String adapterClassName(Class<?> cls) {
+        final String name = cls.getName();
+        final int sep = name.lastIndexOf('.') + 1;
+        return name.substring(0, sep) + name.substring(sep).replace('$', '_') + AdapterSupport.ADAPTER_SUFFIX;
+    }
+
+    private static Constructor<?> findAdapter(Class<?> type) {
+        final ClassLoader classLoader = type.getClassLoader();
+        if (classLoader == null) return null;
+
+        try {
+            final Class<?> adapterClass = Class.forName(adapterClassName(type), false, classLoader);
+            if (!DynamicMBean.class.isAssignableFrom(adapterClass)) return null;
+
+            LOGGER.debug("Using generated JMX adapter " + adapterClass.getName());
+            return adapterClass.getConstructor(type);
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (Exception | LinkageError e) {
+            LOGGER.warn("Unusable generated JMX adapter for " + type + ", falling back to reflection", e);
+            return null;
+        }
+    }
+}
@@ -1,8 +1,14 @@
 package com.avast.jmx;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -25,9 +31,15 @@ public class Getter {
         final Class<?> type = f.getType();
         if (type.getSimpleName().startsWith("Atomic")) {
             return getAtomic();
+        } else if (Adders.isAdder(type)) {
+            try {
+                return Adders.read(f.get(WeakTarget.resolve(obj)));
+            } catch (IllegalAccessException e) {
+                throw new InvocationTargetException(e);
+            }
         } else {
             try {
-                return f.get(obj);
+                return f.get(WeakTarget.resolve(obj));
             } catch (IllegalAccessException e) {
                 throw new InvocationTargetException(e);
             }
@@ -36,15 +48,112 @@ public class Getter {
 
     protected Object getAtomic() throws InvocationTargetException {
         try {
-            if (f.getType().equals(AtomicReference.class)) {
-                final Method method = f.getType().getMethod("toString");
-                return method.invoke(f.get(obj));
-            }
+            final Object atomic = f.get(WeakTarget.resolve(obj));
+            // the common types are unwrapped directly, without looking the method up
+            if (atomic instanceof AtomicLong) return ((AtomicLong) atomic).get();
+            if (atomic instanceof AtomicInteger) return ((AtomicInteger) atomic).get();
+            if (atomic instanceof AtomicBoolean) return ((AtomicBoolean) atomic).get();
 
-            final Method method = f.getType().getMethod("get");
-            return method.invoke(f.get(obj));
+            final Method method = f.getType().getMethod(f.getType().equals(AtomicReference.class) ? "toString" : "get");
+            return method.invoke(atomic);
         } catch (NoSuchMethodException | IllegalAccessException e) {
             throw new InvocationTargetException(e);
         }
     }
+
+    /**
+     * Reads the value as <code>long</code> without boxing it (primitive fields, <code>AtomicLong</code> and
+     * <code>AtomicInteger</code>). Other values are read by {@link #get()} and converted like values written by JMX
+     * client, i.e. only integral numbers (or numeric strings) are accepted.
+     *
+     * @throws IllegalArgumentException If the value cannot be read as <code>long</code>.
+     */
+    public long getLong() throws IllegalArgumentException, InvocationTargetException {
+        try {
+            final Object target = WeakTarget.resolve(obj);
+            if (f.getType().isPrimitive()) return f.getLong(target);
+            final Object value = f.get(target);
+            if (value instanceof AtomicLong) return ((AtomicLong) value).get();
+            if (value instanceof AtomicInteger) return ((AtomicInteger) value).get();
+        } catch (IllegalAccessException e) {
+            throw new InvocationTargetException(e);
+        }
+        return ((Number) ValueConverter.forType(Long.TYPE).convert(get())).longValue();
+    }
+
+    /**
+     * Reads the value as <code>int</code>, see {@link #getLong()}.
+     *
+     * @throws IllegalArgumentException If the value cannot be read as <code>int</code> (e.g. it's <code>long</code>).
+     */
+    public int getInt() throws IllegalArgumentException, InvocationTargetException {
+        try {
+            final Object target = WeakTarget.resolve(obj);
+            if (f.getType().isPrimitive()) return f.getInt(target);
+            final Object value = f.get(target);
+            if (value instanceof AtomicInteger) return ((AtomicInteger) value).get();
+        } catch (IllegalAccessException e) {
+            throw new InvocationTargetException(e);
+        }
+        return ((Number) ValueConverter.forType(Integer.TYPE).convert(get())).intValue();
+    }
+
+    /**
+     * Reads the value as <code>double</code>, see {@link #getLong()}. Any number can be read.
+     */
+    public double getDouble() throws IllegalArgumentException, InvocationTargetException {
+        try {
+            final Object target = WeakTarget.resolve(obj);
+            if (f.getType().isPrimitive()) return f.getDouble(target);
+            final Object value = f.get(target);
+            if (value instanceof AtomicLong) return ((AtomicLong) value).get();
+            if (value instanceof AtomicInteger) return ((AtomicInteger) value).get();
+        } catch (IllegalAccessException e) {
+            throw new InvocationTargetException(e);
+        }
+        return ((Number) ValueConverter.forType(Double.TYPE).convert(get())).doubleValue();
+    }
+
+    /**
+     * Reads the value as <code>boolean</code>, see {@link #getLong()}.
+     */
+    public boolean getBoolean() throws IllegalArgumentException, InvocationTargetException {
+        try {
+            final Object target = WeakTarget.resolve(obj);
+            if (f.getType().isPrimitive()) return f.getBoolean(target);
+            final Object value = f.get(target);
+            if (value instanceof AtomicBoolean) return ((AtomicBoolean) value).get();
+        } catch (IllegalAccessException e) {
+            throw new InvocationTargetException(e);
+        }
+        return (Boolean) ValueConverter.forType(Boolean.TYPE).convert(get());
+    }
+
+    Object getObject() {
+        return obj;
+    }
+
+    /**
+     * Creates handle reading the field directly, with the same semantics as {@link #get()} (atomic types are unwrapped).
+     * The handle is not bound to {@link #getObject()}, it takes the object owning the field as its only parameter.
+     *
+     * @return Handle taking the object and returning the (unwrapped) field value.
+     */
+    MethodHandle toMethodHandle() throws IllegalAccessException, NoSuchMethodException {
+        MethodHandle handle = Accessors.LOOKUP.unreflectGetter(f);
+        if (Modifier.isStatic(f.getModifiers())) {
+            handle = MethodHandles.dropArguments(handle, 0, Object.class);
+        }
+
+        final Class<?> type = f.getType();
+        if (type.getSimpleName().startsWith("Atomic")) {
+            final Method method = type.getMethod(type.equals(AtomicReference.class) ? "toString" : "get");
+            final MethodHandle unwrap = Accessors.LOOKUP.unreflect(method);
+            handle = MethodHandles.filterReturnValue(handle, unwrap.asType(unwrap.type().changeParameterType(0, type)));
+        } else if (Adders.isAdder(type)) {
+            handle = MethodHandles.filterReturnValue(handle, Adders.reader(type));
+        }
+
+        return handle;
+    }
 }
@@ -0,0 +1,166 @@
+package com.avast.jmx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Getter of a property with {@link JMXProperty#timeoutMillis()} of one instance. The getter runs on a small shared
+ * pool of daemon threads and the reader waits for it at most the timeout; then it gets the last value the getter
+ * returned (<code>null</code> if there is none yet). A getter which did not finish yet is not called again, the next
+ * reader waits for the same call.
+ * <p/>
+ * Timeouts and failures are counted, once per call of the getter however many readers wait for it. After
+ * {@link #FAILURES_TO_OPEN} of them in a row, or once one call runs for {@link #FAILURES_TO_OPEN} timeouts (a stuck
+ * getter is called just once), the getter is skipped for {@link #OPEN_MILLIS} (readers get the last value right away)
+ * and one warning is logged instead of an error on every read; then the getter is tried (or waited for) again.
+ *
+ * @author Jan Kolena - kolena@avast.com
+ */
+final class GuardedValue implements Callable<Object> {//package visibility
+    private static final Logger LOGGER = LoggerFactory.getLogger(GuardedValue.class);
+
+    static final int FAILURES_TO_OPEN = 3;
+    static final long OPEN_MILLIS = 30000;
+
+    private static final int THREADS = 4;
+    private static final int QUEUE_CAPACITY = 256;
+    private static ThreadPoolExecutor executor;
+
+    private final PropertyDescriptor property;
+    private final Object instance;
+    private final long timeoutNanos;
+    private final AtomicInteger failures = new AtomicInteger();
+    private volatile boolean open;
+    private volatile long openUntil;
+    private volatile Future<Object> running;
+    // when the running call was submitted, guarded by this
+    private long runningSince;
+    // the last call counted by failed(), guarded by this
+    private Future<Object> countedCall;
+    private volatile Object lastValue;
+
+    /**
+     * @param property The property, its {@link PropertyDescriptor#getTimeoutMillis()} is the deadline.
+     * @param instance The instance or its {@link WeakTarget}.
+     */
+    GuardedValue(PropertyDescriptor property, Object instance) {
+        this.property = property;
+        this.instance = instance;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(property.getTimeoutMillis());
+    }
+
+    /**
+     * @return Value returned by the getter (maps are not converted) or the last value if the getter did not finish in
+     * time or it's skipped.
+     * @throws InvocationTargetException If the getter failed (and it's not skipped yet).
+     */
+    Object get() throws InvocationTargetException {
+        if (isOpen()) return lastValue;
+
+        final Future<Object> call;
+        try {
+            call = runningCall();
+        } catch (RejectedExecutionException e) {
+            // all the threads are stuck in other getters
+            failed(null, "the pool of getters is full", null);
+            return lastValue;
+        }
+        try {
+            final Object value = call.get(timeoutNanos, TimeUnit.NANOSECONDS);
+            failures.set(0);
+            open = false;
+            return value;
+        } catch (TimeoutException e) {
+            failed(call, "timed out after " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms", null);
+            return lastValue;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return lastValue;
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            failed(call, "failed", cause);
+            throw cause instanceof InvocationTargetException ? (InvocationTargetException) cause : new InvocationTargetException(cause);
+        }
+    }
+
+    /**
+     * @return The running call of the getter or a new one.
+     */
+    private synchronized Future<Object> runningCall() {
+        final Future<Object> current = running;
+        if (current != null && !current.isDone()) return current;
+        final Future<Object> submitted = executor().submit(this);
+        running = submitted;
+        runningSince = System.nanoTime();
+        return submitted;
+    }
+
+    /**
+     * Calls the getter, on the pool.
+     */
+    @Override
+    public Object call() throws Exception {
+        final Object value = property.getRawValue(instance);
+        lastValue = value;
+        return value;
+    }
+
+    private boolean isOpen() {
+        return open && System.nanoTime() - openUntil < 0;
+    }
+
+    /**
+     * @param call The failed call, <code>null</code> if the getter was not called at all.
+     */
+    private synchronized void failed(Future<Object> call, String reason, Throwable cause) {
+        if (call != null && call == countedCall) {
+            // readers waiting for the same call fail together, it's counted once - unless it does not return at all
+            final long runningNanos = System.nanoTime() - runningSince;
+            if (call.isDone() || runningNanos < timeoutNanos * FAILURES_TO_OPEN || isOpen()) return;
+            open("did not return for " + TimeUnit.NANOSECONDS.toMillis(runningNanos) + " ms", null);
+            return;
+        }
+        if (call != null) countedCall = call;
+        final int count = failures.incrementAndGet();
+        if (count >= FAILURES_TO_OPEN && !isOpen()) {
+            open(reason + " " + count + " times in a row", cause);
+        } else if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Getter of " + property + " " + reason, cause);
+        }
+    }
+
+    private void open(String reason, Throwable cause) {
+        openUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(OPEN_MILLIS);
+        open = true;
+        LOGGER.warn("Getter of " + property + " " + reason + ", skipping it for " + OPEN_MILLIS + " ms" + (cause != null ? ": " + cause : ""));
+    }
+
+    private static synchronized ThreadPoolExecutor executor() {
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY), new ThreadFactory() {
+                private final AtomicInteger counter = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    final Thread thread = new Thread(r, "jmx-publisher-getter-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+}
@@ -0,0 +1,24 @@
+package com.avast.jmx;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotates monotonic counter (<code>long</code>, <code>AtomicLong</code>, <code>LongAdder</code> or another integral
+ * number) that should be visible through JMX together with its rates. Besides the counter itself (read-only, unless
+ * the field is also annotated by {@link JMXProperty} which then defines the counter attribute) there are
+ * <code>double</code> attributes <code>&lt;name&gt;Rate1s</code>, <code>&lt;name&gt;Rate1m</code> and
+ * <code>&lt;name&gt;Rate5m</code> - average increase per second over the last second, minute and five minutes.
+ *
+ * @author Jan Kolena - kolena@avast.com
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface JMXCounter {
+
+    public String name() default "";
+
+    public String description() default "";
+}
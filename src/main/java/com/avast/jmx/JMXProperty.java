@@ -23,4 +23,29 @@ public @interface JMXProperty {
     public boolean setable() default false;
 
     public String description() default "";
+
+    /**
+     * How the property is published if it's a {@link java.util.Map}, ignored otherwise.
+     */
+    public MapExposure mapExposure() default MapExposure.COMPOSITE;
+
+    /**
+     * Maximum number of entries returned at once for {@link MapExposure#TABULAR} maps.
+     */
+    public int pageSize() default 100;
+
+    /**
+     * How long (in milliseconds) the value read from the property is reused by subsequent reads, 0 means no caching.
+     * Stale value is still returned while a shared background thread refreshes it. Meant for expensive property methods
+     * polled by several collectors.
+     */
+    public long cacheMillis() default 0;
+
+    /**
+     * Deadline (in milliseconds) of reading the property, 0 means none. The getter then runs on a shared pool of threads
+     * and a reader which waited for the deadline gets the last value the getter returned (<code>null</code> if there is
+     * none yet). A getter which keeps failing or timing out is skipped for a while. Meant for property methods which
+     * can block, e.g. on a lock held by the application.
+     */
+    public long timeoutMillis() default 0;
 }
@@ -18,4 +18,14 @@ public @interface JMXPropertyGetter {
 
     public String name() default "";
 
+    /**
+     * How long (in milliseconds) the value returned by the getter is cached, see {@link JMXProperty#cacheMillis()}.
+     */
+    public long cacheMillis() default 0;
+
+    /**
+     * Deadline (in milliseconds) of the getter, see {@link JMXProperty#timeoutMillis()}.
+     */
+    public long timeoutMillis() default 0;
+
 }
@@ -0,0 +1,28 @@
+package com.avast.jmx;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Annotates {@link LatencyHistogram} field that should be visible through JMX. It's published as read-only
+ * {@link javax.management.openmbean.CompositeData} with <code>count</code>, <code>min</code>, <code>max</code>,
+ * <code>mean</code>, <code>p50</code>, <code>p90</code>, <code>p99</code> and <code>p999</code> items.
+ *
+ * @author Jan Kolena - kolena@avast.com
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface JMXTimer {
+
+    public String name() default "";
+
+    public String description() default "";
+
+    /**
+     * Unit of the published values (the histogram records nanoseconds).
+     */
+    public TimeUnit unit() default TimeUnit.MICROSECONDS;
+}
@@ -62,7 +62,8 @@ abstract class JmxHelper {//package visibility
     }
 
     /**
-     * Gets basic equiv for some atomic class (one of AtomicInteger, AtomicLong, AtomicBoolean).
+     * Gets basic equiv for some atomic class (one of AtomicInteger, AtomicLong, AtomicBoolean, LongAdder, DoubleAdder,
+     * LongAccumulator, DoubleAccumulator).
      *
      * @param f The field.
      * @return The basic class.
@@ -72,6 +73,11 @@ abstract class JmxHelper {//package visibility
             throw new IllegalArgumentException("Only atomic classes supported");
         }
 
+        final Class<?> adderType = Adders.getBasicType(f.getType());
+        if (adderType != null) {
+            return adderType;
+        }
+
         String cl = f.getType().getSimpleName().replaceAll("Atomic", "").toLowerCase();
 
         switch (cl) {
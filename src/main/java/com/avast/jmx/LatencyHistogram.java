@@ -0,0 +1,287 @@
+package com.avast.jmx;
+
+import javax.management.openmbean.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies, published by fields annotated with {@link JMXTimer}. Recording is one increment of a
+ * bucket counter plus sum and min/max updates, without locks or allocation, so it can stay on hot paths.
+ * <p/>
+ * Values (nanoseconds) are counted in log-linear buckets like in HdrHistogram - every power of two is divided into 32
+ * buckets, so reported percentiles are within ~3% of the recorded values. Threads record into several stripes (by thread
+ * id) to avoid contention, the stripes are merged when the histogram is read.
+ * <p/>
+ * The histogram is either cumulative (everything since creation) or rotating - it then reports the last finished
+ * interval. Rotation happens when the histogram is read, the interval is therefore the time between two reads, at least
+ * the configured one.
+ *
+ * @author Jan Kolena - kolena@avast.com
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    // per-stripe totals stored after the buckets
+    private static final int SUM = BUCKETS;
+    private static final int MIN = BUCKETS + 1;
+    private static final int MAX = BUCKETS + 2;
+    private static final int LENGTH = BUCKETS + 3;
+
+    private static final int DEFAULT_STRIPES = Math.min(8, Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1)) << 1);
+
+    private static final String[] ITEMS = {"count", "min", "max", "mean", "p50", "p90", "p99", "p999"};
+    private static final CompositeType TYPE;
+
+    static {
+        final OpenType<?>[] types = new OpenType<?>[ITEMS.length];
+        types[0] = SimpleType.LONG;
+        for (int i = 1; i < types.length; i++) {
+            types[i] = SimpleType.DOUBLE;
+        }
+        try {
+            TYPE = new CompositeType(LatencyHistogram.class.getName(), "Latency histogram", ITEMS,
+                    new String[]{"Number of recorded values", "Minimum", "Maximum", "Mean", "Median", "90th percentile", "99th percentile", "99.9th percentile"}, types);
+        } catch (OpenDataException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private final long intervalNanos;
+    private final int stripes;
+    private volatile AtomicLongArray[] active;
+    private AtomicLongArray[] spare;
+    private long intervalStart = System.nanoTime();
+    private Snapshot lastInterval;
+
+    /**
+     * Creates cumulative histogram.
+     */
+    public LatencyHistogram() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * Creates cumulative histogram with given number of stripes, e.g. one for rarely recorded values.
+     *
+     * @param stripes Number of stripes, power of two.
+     */
+    LatencyHistogram(int stripes) {
+        MyPreconditions.checkArgument(stripes > 0 && Integer.bitCount(stripes) == 1, "Number of stripes must be a power of two");
+        this.intervalNanos = 0;
+        this.stripes = stripes;
+        this.active = newStripes();
+    }
+
+    /**
+     * Creates rotating histogram, reporting values recorded during the last interval.
+     *
+     * @param interval Minimal length of the interval.
+     * @param unit     Unit of the interval.
+     */
+    public LatencyHistogram(long interval, TimeUnit unit) {
+        MyPreconditions.checkArgument(interval > 0, "Interval must be positive");
+        this.intervalNanos = unit.toNanos(interval);
+        this.stripes = DEFAULT_STRIPES;
+        this.active = newStripes();
+        this.lastInterval = new Snapshot(new long[BUCKETS], 0, 0, 0, 0);
+    }
+
+    private AtomicLongArray[] newStripes() {
+        final AtomicLongArray[] arrays = new AtomicLongArray[stripes];
+        for (int i = 0; i < arrays.length; i++) {
+            arrays[i] = new AtomicLongArray(LENGTH);
+            clear(arrays[i]);
+        }
+        return arrays;
+    }
+
+    private static void clear(AtomicLongArray stripe) {
+        for (int i = 0; i < BUCKETS + 1; i++) {
+            stripe.set(i, 0);
+        }
+        stripe.set(MIN, Long.MAX_VALUE);
+        stripe.set(MAX, Long.MIN_VALUE);
+    }
+
+    /**
+     * Records one value.
+     *
+     * @param nanos The latency in nanoseconds, negative values are recorded as zero.
+     */
+    public void record(long nanos) {
+        final long value = nanos < 0 ? 0 : nanos;
+        final AtomicLongArray stripe = active[(int) Thread.currentThread().getId() & (stripes - 1)];
+        stripe.incrementAndGet(bucket(value));
+        stripe.addAndGet(SUM, value);
+
+        long current;
+        while (value < (current = stripe.get(MIN)) && !stripe.compareAndSet(MIN, current, value)) {
+            // retry
+        }
+        while (value > (current = stripe.get(MAX)) && !stripe.compareAndSet(MAX, current, value)) {
+            // retry
+        }
+    }
+
+    /**
+     * Records time elapsed since <code>startNanos</code>.
+     *
+     * @param startNanos Start of the measured operation, value of {@link System#nanoTime()}.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Records one value.
+     *
+     * @param duration The latency.
+     * @param unit     Unit of the latency.
+     */
+    public void record(long duration, TimeUnit unit) {
+        record(unit.toNanos(duration));
+    }
+
+    /**
+     * Gets current statistics - of the whole life of cumulative histogram, of the last finished interval of the rotating
+     * one.
+     *
+     * @return The statistics.
+     */
+    public Snapshot getSnapshot() {
+        if (intervalNanos == 0) return snapshot(active);
+
+        synchronized (this) {
+            final long now = System.nanoTime();
+            if (now - intervalStart >= intervalNanos) {
+                final AtomicLongArray[] finished = active;
+                active = spare != null ? spare : newStripes();
+                intervalStart = now;
+                lastInterval = snapshot(finished);
+                // late writers of the finished interval may still hit it, they will count to the next one
+                for (AtomicLongArray stripe : finished) {
+                    clear(stripe);
+                }
+                spare = finished;
+            }
+            return lastInterval;
+        }
+    }
+
+    /**
+     * Creates {@link CompositeData} with count, min, max, mean and percentiles (50, 90, 99 and 99.9).
+     *
+     * @param unit Unit of the published values (except count).
+     * @return The data.
+     */
+    public CompositeData toCompositeData(TimeUnit unit) {
+        final Snapshot snapshot = getSnapshot();
+        final double nanosPerUnit = unit.toNanos(1);
+        try {
+            return new CompositeDataSupport(TYPE, ITEMS, new Object[]{
+                    snapshot.getCount(),
+                    snapshot.getMin() / nanosPerUnit,
+                    snapshot.getMax() / nanosPerUnit,
+                    snapshot.getMean() / nanosPerUnit,
+                    snapshot.getPercentile(50) / nanosPerUnit,
+                    snapshot.getPercentile(90) / nanosPerUnit,
+                    snapshot.getPercentile(99) / nanosPerUnit,
+                    snapshot.getPercentile(99.9) / nanosPerUnit
+            });
+        } catch (OpenDataException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Snapshot snapshot(AtomicLongArray[] stripes) {
+        final long[] counts = new long[BUCKETS];
+        long count = 0;
+        long sum = 0;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                final long c = stripe.get(i);
+                counts[i] += c;
+                count += c;
+            }
+            sum += stripe.get(SUM);
+            min = Math.min(min, stripe.get(MIN));
+            max = Math.max(max, stripe.get(MAX));
+        }
+        return count == 0 ? new Snapshot(counts, 0, 0, 0, 0) : new Snapshot(counts, count, sum, min, max);
+    }
+
+    static int bucket(long value) {
+        if (value < 2 * SUB_BUCKETS) return (int) value;
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    /**
+     * @return The highest value counted in the bucket.
+     */
+    static long highestValue(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) return bucket;
+        final int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+        final long top = (bucket & (SUB_BUCKETS - 1)) + SUB_BUCKETS;
+        return ((top + 1) << shift) - 1;
+    }
+
+    /**
+     * Immutable statistics of the histogram, values are in nanoseconds.
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long min;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long sum, long min, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.min = min;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMin() {
+            return min;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * @param percentile The percentile, 0 - 100.
+         * @return The value (the highest one of its bucket, but at most the maximum), 0 if nothing was recorded.
+         */
+        public long getPercentile(double percentile) {
+            MyPreconditions.checkArgument(percentile >= 0 && percentile <= 100, "Percentile must be between 0 and 100");
+            if (count == 0) return 0;
+            final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.max(min, Math.min(max, highestValue(i)));
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot{" + "count=" + count + ", min=" + min + ", max=" + max + ", mean=" + getMean() + ", p50=" + getPercentile(50) + ", p99=" + getPercentile(99) + '}';
+        }
+    }
+}
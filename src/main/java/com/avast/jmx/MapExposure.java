@@ -0,0 +1,35 @@
+package com.avast.jmx;
+
+/**
+ * How a {@link java.util.Map} property is published, see {@link JMXProperty#mapExposure()}.
+ *
+ * @author Jan Kolena - kolena@avast.com
+ */
+public enum MapExposure {
+    /**
+     * The whole map is one {@link javax.management.openmbean.CompositeData}, every key is an item of it.
+     */
+    COMPOSITE,
+
+    /**
+     * The map is {@link javax.management.openmbean.TabularData} with <code>key</code> and <code>value</code> columns.
+     * The attribute holds only the first {@link JMXProperty#pageSize()} entries, the rest is available through generated
+     * operations of the property (named e.g. <code>statsPage</code>, <code>statsGet</code> and <code>statsTopK</code> for
+     * property <code>stats</code>):
+     * <ul>
+     * <li><code>Page(int offset, int limit)</code> - entries in the iteration order of the map</li>
+     * <li><code>Get(String key)</code> - value of one key</li>
+     * <li><code>TopK(int k)</code> - <code>k</code> entries with the highest numeric values, descending</li>
+     * </ul>
+     * Use it for big maps which would make huge {@link #COMPOSITE} values.
+     */
+    TABULAR,
+
+    /**
+     * Every key of the map is a separate read-only attribute named <code>property.key</code> (e.g.
+     * <code>stats.errors</code>), reading it is one lookup in the map. The attributes in
+     * {@link javax.management.MBeanInfo} follow the keys of the map, they are refreshed when the info is requested.
+     * The map itself is not listed.
+     */
+    FLATTENED
+}
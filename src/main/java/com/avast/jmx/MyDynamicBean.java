@@ -7,13 +7,16 @@ import javax.annotation.Nullable;
 import javax.management.*;
 import java.lang.annotation.Annotation;
 import java.lang.management.ManagementFactory;
-import java.lang.reflect.Constructor;
+import java.lang.ref.Reference;
 import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 /**
  * @author Jan Kolena - kolena@avast.com (originally: Tomas Rehak)
@@ -26,20 +29,42 @@ public final class MyDynamicBean implements DynamicMBean {
     public static final String GET_PREFIX = "get";
     public static final String SET_PREFIX = "set";
     public static final String NAME_COUNTER_SEPARATOR = "-";
-    private final String name;
+    private final String requestedName;
+    private String name;
+    private NameAllocator nameAllocator;
+    private long nameSuffix;
     private final Object obj;
-    private final MBeanInfo info;
-    private final Map<String, Map<String, Method>> ops = new ConcurrentHashMap<>();
-    private final Map<String, Property> props = new ConcurrentHashMap<>();
-    private static final Map<String, AtomicLong> names = new ConcurrentHashMap<>();
-    private static final ReentrantLock lock = new ReentrantLock();
+    private final String description;
+    private final BeanOptions options;
+    // built by initialize(), published by the volatile write of initialized
+    private volatile boolean initialized;
+    private volatile Thread registering;
+    private volatile MBeanInfo info;
+    // shared by all beans of the class, null if the bean uses generated adapter
+    private BeanMetadata metadata;
+    // keys of flattened maps (in the order of BeanMetadata#getFlattened()) published by the info
+    private List<Set<String>> flattenedKeys = Collections.emptyList();
+    private Map<String, PropertyBinding> bindings = Collections.emptyMap();
+    private DynamicMBean adapter;
+    private final PublisherStats stats;
     private MBeanServer mBeanServer = defaultMBeanServer;
     private static MBeanServer defaultMBeanServer = ManagementFactory.getPlatformMBeanServer();
+    private static BeanOptions defaultOptions = BeanOptions.defaults();
 
     public static void setDefaultMBeanServer(MBeanServer mBeanServer) {
         defaultMBeanServer = mBeanServer;
     }
 
+    /**
+     * Sets options used by constructors which do not take them explicitly.
+     *
+     * @param options The options.
+     */
+    public static void setDefaultOptions(BeanOptions options) {
+        MyPreconditions.checkNotNull(options);
+        defaultOptions = options;
+    }
+
     /**
      * Exposes and register MBean (one-line method)
      *
@@ -53,6 +78,7 @@ public final class MyDynamicBean implements DynamicMBean {
             return mdb;
         } catch (Exception e) {
             LOGGER.error("Exception while registering JMX Bean", e);
+            PublisherMetrics.INSTANCE.registrationFailed();
             return null;
         }
     }
@@ -71,11 +97,90 @@ public final class MyDynamicBean implements DynamicMBean {
             return mdb;
         } catch (Exception e) {
             LOGGER.error("Exception while registering JMX Bean", e);
+            PublisherMetrics.INSTANCE.registrationFailed();
             return null;
         }
     }
 
+    /**
+     * Exposes and registers many objects at once, like {@link #exposeAndRegisterSilently(Object)} called for each of
+     * them. Scanning of classes and building of beans run in parallel in a temporary {@link ForkJoinPool}.
+     *
+     * @param objects Objects to expose.
+     * @return Result for every object, in the same order.
+     * @see #registerAll(Collection, Executor)
+     */
+    public static List<RegistrationResult> registerAll(Collection<?> objects) {
+        final ForkJoinPool pool = new ForkJoinPool();
+        try {
+            return registerAll(objects, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Exposes and registers many objects at once. Beans are created in parallel by the executor (in chunks) and
+     * registered to the default {@link MBeanServer} in batches by the calling thread. Failure of one object does not stop
+     * the others.
+     *
+     * @param objects  Objects to expose.
+     * @param executor Executor creating the beans.
+     * @return Result for every object, in the same order.
+     */
+    public static List<RegistrationResult> registerAll(Collection<?> objects, Executor executor) {
+        MyPreconditions.checkNotNull(objects);
+        MyPreconditions.checkNotNull(executor);
+        return BulkRegistration.registerAll(objects, executor);
+    }
+
+    /**
+     * Unregisters all the beans (e.g. those from {@link #registerAll(Collection)} on shutdown or redeploy), failure of
+     * one bean does not stop the others.
+     *
+     * @param beans Beans to unregister, <code>null</code>s are skipped.
+     * @return Result for every bean which is not <code>null</code>.
+     */
+    public static List<RegistrationResult> unregisterAll(Collection<MyDynamicBean> beans) {
+        MyPreconditions.checkNotNull(beans);
+        return BulkRegistration.unregisterAll(beans);
+    }
+
+    /**
+     * Exposes the object and registers it in the background, see {@link #registerAsync()}.
+     *
+     * @param obj object to expose
+     * @return Future of the registration.
+     */
+    public static Future<MyDynamicBean> exposeAndRegisterAsync(Object obj) {
+        return new MyDynamicBean(obj).registerAsync();
+    }
+
+    /**
+     * Exposes the object and registers it in the background, see {@link #registerAsync()}.
+     *
+     * @param name object name
+     * @param obj  object to expose
+     * @return Future of the registration.
+     */
+    public static Future<MyDynamicBean> exposeAndRegisterAsync(String name, Object obj) {
+        return new MyDynamicBean(name, obj).registerAsync();
+    }
+
+    /**
+     * Waits until all registrations and unregistrations submitted by {@link #registerAsync()} and
+     * {@link #unregisterAsync()} before are done. Useful mainly in tests.
+     */
+    public static void flushRegistrations() throws InterruptedException {
+        AsyncRegistrar.flush();
+    }
+
     private ObjectName objName;
+    private volatile Future<MyDynamicBean> pendingRegistration;
+    // guards register(), unregister() and the name; the bean is registered iff nameAllocator != null
+    private final Object registrationLock = new Object();
+    // counts the bean in PublisherMetrics until it's unregistered, guarded by registrationLock
+    private Reference<MyDynamicBean> live;
 
     public MyDynamicBean(Object object) {
         this(null, "Default description", object);
@@ -86,7 +191,12 @@ public final class MyDynamicBean implements DynamicMBean {
     }
 
     public MyDynamicBean(String name, String description, Object object) {
+        this(name, description, object, defaultOptions);
+    }
+
+    public MyDynamicBean(String name, String description, Object object, BeanOptions options) {
         MyPreconditions.checkNotNull(object);
+        MyPreconditions.checkNotNull(options);
         if (description == null) {
             description = "Default description";
         }
@@ -94,47 +204,73 @@ public final class MyDynamicBean implements DynamicMBean {
             name = getJMXNameForClass(object.getClass());
         }
 
-        //add counter, if necessary
-        name = getAndEnlistUniqueName(name);
+        // counter is added (if necessary) by register()
+        this.requestedName = name;
+        this.name = name;
+        this.description = description;
+        this.obj = options.isWeakTarget() ? new WeakTarget(object, this) : object;
+        this.options = options;
 
-        try {
-            this.name = name;
-            this.obj = object;
-            final Constructor[] constructors = MyDynamicBean.class.getConstructors();
-            final MBeanConstructorInfo[] constr = new MBeanConstructorInfo[1];
-            constr[0] = new MBeanConstructorInfo(getClass().getSimpleName() + "(): No-parameter constructor", constructors[0]);
-            // new
-            // get all methods annotated as JMXPropertyGetter
-            final List<Method> getters = MyDynamicBean.getAnnotatedMethods(obj.getClass(), JMXPropertyGetter.class);
-            // get all methods annotated as JMXPropertySetter
-            final List<Method> setters = MyDynamicBean.getAnnotatedMethods(obj.getClass(), JMXPropertySetter.class);
-            // get all fields annotated as JMXProperty
-            final List<Field> fields = MyDynamicBean.getAnnotatedFields(obj.getClass(), JMXProperty.class);
-            // get all methods annotated as JMXProperty (getters-only, gives value)
-            final List<Method> propertyMethods = MyDynamicBean.getAnnotatedMethods(obj.getClass(), JMXProperty.class);
-            // get all methods annotated as JMXOperation
-            final List<Method> operations = MyDynamicBean.getAnnotatedMethods(obj.getClass(), JMXOperation.class);
-            // process operations, store to this.ops
-            assignOperations(operations);
-            // create operations info for MBeanInfo
-            final MBeanOperationInfo[] operationsInfo = MyDynamicBean.createOperationsInfo(operations);
-            // create attribute info for MBeanInfo
-            List<Property> properties = MyDynamicBean.getProperties(obj, fields, getters, setters, propertyMethods);
-            properties = MyDynamicBean.generateMissingGetters(properties);
-            properties = MyDynamicBean.generateMissingSetters(properties);
-            for (Property p : properties) {
-                final Property origProperty = props.get(p.getName());
-                if (origProperty != null) {
-                    if (!isSubclassOf(origProperty.getOriginalClass(), p.getOriginalClass()))
-                        throw new IllegalArgumentException("Duplicate property " + p.getName() + " " + p);
-                } else props.put(p.getName(), p);
-            }
-            final MBeanAttributeInfo[] attributes = MyDynamicBean.propertiesToAttributeInfo(properties);
-            this.info = new MBeanInfo(name, description, attributes, constr, operationsInfo, new MBeanNotificationInfo[0]);
-
-        } catch (NoSuchMethodException e) {
-            throw new RuntimeException(e);
+        if (!options.isLazy()) initialize();
+        this.stats = options.isStats() ? new PublisherStats(name, options.isLazy() ? placeholderInfo() : info) : null;
+        synchronized (registrationLock) {
+            live = PublisherMetrics.INSTANCE.beanCreated(this);
+        }
+    }
+
+    /**
+     * Builds the properties, accessors and info of the bean; in the constructor or on the first access of a lazy bean
+     * (see {@link BeanOptions#withLazy(boolean)}).
+     */
+    private synchronized void initialize() {
+        if (initialized) return;
+        final long start = System.nanoTime();
+        final String name = requestedName;
+        final Object object = obj;
+        final Class<?> type = object instanceof WeakTarget ? ((WeakTarget) object).getType() : object.getClass();
+        // adapter generated at build time by jmx-publisher-processor, if there is one (it would hold weak target strongly)
+        DynamicMBean adapter = object instanceof WeakTarget ? null : GeneratedAdapters.create(object);
+        if (adapter != null) {
+            final MBeanInfo generated = adapter.getMBeanInfo();
+            this.info = new MBeanInfo(name, description, generated.getAttributes(), BeanMetadata.CONSTRUCTORS, generated.getOperations(), generated.getNotifications());
+        } else {
+            final BeanMetadata metadata = BeanMetadata.forClass(type);
+            this.metadata = metadata;
+            this.bindings = metadata.bind(object);
+            this.info = metadata.getInfo(name, description);
+            if (!metadata.getFlattened().isEmpty()) {
+                flattenedKeys = new ArrayList<>(Collections.nCopies(metadata.getFlattened().size(), Collections.<String>emptySet()));
+                refreshFlattenedAttributes();
+            }
+
+            if (options.getDispatchMode() == DispatchMode.COMPILED) {
+                final CompiledDispatcher dispatcher = metadata.getCompiledDispatcher();
+                if (dispatcher != null) {
+                    adapter = dispatcher.bind(this, object, bindings);
+                }
+            }
         }
+        this.adapter = adapter;
+        initialized = true;
+        PublisherMetrics.INSTANCE.infoBuilt(start);
+    }
+
+    private void ensureInitialized() {
+        if (!initialized) initialize();
+    }
+
+    /**
+     * @return Info without attributes and operations, given to the {@link MBeanServer} when it registers a lazy bean.
+     */
+    private MBeanInfo placeholderInfo() {
+        return new MBeanInfo(requestedName, description, new MBeanAttributeInfo[0], BeanMetadata.CONSTRUCTORS, new MBeanOperationInfo[0], BeanMetadata.NOTIFICATIONS);
+    }
+
+    /**
+     * @return The exposed object, <code>null</code> if it was referenced weakly and garbage collected.
+     */
+    Object getObject() {
+        return obj instanceof WeakTarget ? ((WeakTarget) obj).get() : obj;
     }
 
     public MyDynamicBean registerWith(MBeanServer mBeanServer) {
@@ -142,7 +278,7 @@ public final class MyDynamicBean implements DynamicMBean {
         return this;
     }
 
-    private static MBeanAttributeInfo[] propertiesToAttributeInfo(List<Property> properties) {
+    static MBeanAttributeInfo[] propertiesToAttributeInfo(List<Property> properties) {
         final MBeanAttributeInfo[] infos = new MBeanAttributeInfo[properties.size()];
         for (int i = 0; i < properties.size(); i++) {
             infos[i] = MyDynamicBean.propertyToAttribute(properties.get(i));
@@ -202,6 +338,10 @@ public final class MyDynamicBean implements DynamicMBean {
     }
 
     private static String getPlainType(final String originalType) {
+        // enums, arrays, BigDecimal, Duration... keep their type
+        if (!originalType.startsWith("java.lang.") && !originalType.startsWith("java.util.concurrent.atomic.")) {
+            return originalType;
+        }
         final int sep = originalType.lastIndexOf(".") + 1;
 
         String type = originalType.substring(sep);
@@ -233,12 +373,21 @@ public final class MyDynamicBean implements DynamicMBean {
         // map fields
         for (Field f : fields) {
             final JMXProperty an = f.getAnnotation(JMXProperty.class);
-            MyPreconditions.checkNotNull(an);
+            final JMXTimer timer = f.getAnnotation(JMXTimer.class);
+            final JMXCounter counter = f.getAnnotation(JMXCounter.class);
+            MyPreconditions.checkArgument(an != null || timer != null || counter != null, "Field is not annotated " + f);
+            if (timer != null && !f.getType().equals(LatencyHistogram.class)) {
+                throw new IllegalArgumentException("JMXTimer field must be LatencyHistogram " + f);
+            }
+            if (counter != null && !CounterRate.isCounterType(f.getType())) {
+                throw new IllegalArgumentException("JMXCounter field must be a number " + f);
+            }
+            final String annotatedName = an != null ? an.name() : timer != null ? timer.name() : counter.name();
             String name;
-            if (an.name() == null || an.name().trim().equals("")) {
+            if (annotatedName == null || annotatedName.trim().equals("")) {
                 name = f.getName();
             } else {
-                name = an.name();
+                name = annotatedName;
             }
             if (fm.get(name) != null) {
                 throw new IllegalArgumentException("Duplicate attribute name " + f);
@@ -278,14 +427,28 @@ public final class MyDynamicBean implements DynamicMBean {
             setters.put(name, m);
         }
         // assign properties from fields
+        final List<Property> rates = new ArrayList<>();
         for (String n : fm.keySet()) {
             final Field f = fm.get(n);
             final JMXProperty anot = f.getAnnotation(JMXProperty.class);
             Method setter = setters.get(n);
             Method getter = getters.get(n);
-            final Property prop = new Property(instance, f.getDeclaringClass(), f, n, anot.description(), anot.readeable(), anot.setable(), getter, setter);
-            prop.setType(f.getType().getName());
+            final Property prop;
+            if (anot != null) {
+                prop = new Property(instance, f.getDeclaringClass(), f, n, anot.description(), anot.readeable(), anot.setable(), getter, setter);
+            } else if (f.getAnnotation(JMXTimer.class) != null) {
+                // timers are read-only, published as CompositeData
+                prop = new Property(instance, f.getDeclaringClass(), f, n, f.getAnnotation(JMXTimer.class).description(), true, false, getter, null);
+            } else {
+                prop = new Property(instance, f.getDeclaringClass(), f, n, f.getAnnotation(JMXCounter.class).description(), true, false, getter, null);
+            }
+            // striped counters look like their basic type
+            final Class<?> adderType = Adders.getBasicType(f.getType());
+            prop.setType(adderType != null ? adderType.getName() : f.getType().getName());
             list.add(prop);
+            if (f.getAnnotation(JMXCounter.class) != null) {
+                rates.addAll(CounterRate.createProperties(instance, f, n, prop.getDesc()));
+            }
         }
         // assign property methods
         for (Method m : propertyMethods) {
@@ -310,6 +473,18 @@ public final class MyDynamicBean implements DynamicMBean {
             prop.setType(m.getReturnType().getName());
             list.add(prop);
         }
+        // derived rates of counters
+        for (Property rate : rates) {
+            if (fm.containsKey(rate.getName()) || getters.containsKey(rate.getName()) || setters.containsKey(rate.getName())) {
+                throw new IllegalArgumentException("Duplicate attribute name " + rate.getName());
+            }
+            for (Property prop : list) {
+                if (prop.getName().equals(rate.getName())) {
+                    throw new IllegalArgumentException("Duplicate attribute name " + rate.getName());
+                }
+            }
+        }
+        list.addAll(rates);
         // lets validate that there are no orphaned setters / getters
         final Set<String> settersNames = setters.keySet();
         final Set<String> gettersNames = getters.keySet();
@@ -359,7 +534,8 @@ public final class MyDynamicBean implements DynamicMBean {
         return stripMethodPrefix(name, new String[]{SET_PREFIX});
     }
 
-    private void assignOperations(final List<Method> methods) {
+    static Map<String, Map<String, Method>> assignOperations(final List<Method> methods) {
+        final Map<String, Map<String, Method>> ops = new HashMap<>();
         for (Method m : methods) {
             final JMXOperation opAnot = m.getAnnotation(JMXOperation.class);
             MyPreconditions.checkNotNull(opAnot);
@@ -368,11 +544,12 @@ public final class MyDynamicBean implements DynamicMBean {
             final String signature = methodParametersToSignature(parameterTypes);
             Map<String, Method> get = ops.get(opName);
             if (get == null) {
-                get = new ConcurrentHashMap<>();
+                get = new HashMap<>();
                 ops.put(opName, get);
             }
             get.put(signature, m);
         }
+        return ops;
     }
 
     public static String getJMXNameForClass(final Class<?> cls) {
@@ -381,46 +558,204 @@ public final class MyDynamicBean implements DynamicMBean {
         return packageName + ":type=" + cls.getSimpleName();
     }
 
+    /**
+     * @return Number of names in use, see {@link NameAllocator}.
+     */
+    static int getUniqueNamesCount() {
+        return NameAllocator.countNames();
+    }
+
+    /**
+     * Gets name which is not used in the default {@link MBeanServer} now, see {@link #setDefaultMBeanServer(MBeanServer)}.
+     * The name is not reserved, so another bean may get it before it's used.
+     *
+     * @deprecated Beans get unique names when they are registered (see {@link #register()}), pass the requested name.
+     */
+    @Deprecated
     public static String getAndEnlistUniqueName(String name) {
-        lock.lock();
+        return NameAllocator.format(name, NameAllocator.forServer(defaultMBeanServer).peek(name));
+    }
+
+    @Override
+    public Object getAttribute(final String attribute) throws AttributeNotFoundException, MBeanException, ReflectionException {
+        final Object event = Events.beginRead();
         try {
-            AtomicLong get = MyDynamicBean.names.get(name);
-            if (get != null) {
-                name += NAME_COUNTER_SEPARATOR + get.incrementAndGet();
-            } else {
-                get = new AtomicLong(0);
-                names.put(name, get);
-            }
-            return name;
+            return stats == null ? readAttribute(attribute) : readAttributeWithStats(attribute);
         } finally {
-            lock.unlock();
+            Events.endRead(event, name, attribute);
         }
     }
 
-    @Override
-    public Object getAttribute(final String attribute) throws AttributeNotFoundException, MBeanException, ReflectionException {
+    private Object readAttributeWithStats(final String attribute) throws AttributeNotFoundException, MBeanException, ReflectionException {
+        final long start = System.nanoTime();
+        final long allocated = PublisherStats.allocatedBytes();
+        boolean failed = true;
+        try {
+            final Object value = readAttribute(attribute);
+            failed = false;
+            return value;
+        } finally {
+            stats.recordRead(attribute, start, allocated, failed);
+        }
+    }
+
+    private Object readAttribute(final String attribute) throws AttributeNotFoundException, MBeanException, ReflectionException {
         MyPreconditions.checkNotNull(attribute);
-        final Property prop = props.get(attribute);
+        ensureInitialized();
+        if (adapter != null) return adapter.getAttribute(attribute);
+        final PropertyDescriptor prop = metadata.getProperties().get(attribute);
         if (prop != null) {
             try {
-                return prop.getValue();
+                return read(prop);
             } catch (Exception ex) {
                 LOGGER.error("Error executing getter for " + prop, ex);
                 throw new RuntimeException("Error getting value for " + prop, ex);
             }
         }
+        if (!flattenedKeys.isEmpty()) return getFlattenedAttribute(attribute);
+        throw new IllegalArgumentException("Field " + attribute + " not found");
+    }
+
+    /**
+     * Reads numeric attribute as <code>long</code> without boxing it, for in-process consumers like exporters or
+     * samplers. Primitive (or wrapper) values are widened, other values are converted like values written by JMX client.
+     * The read is neither counted in {@link PublisherStats} nor recorded as an event.
+     *
+     * @param attribute Name of the attribute.
+     * @return The value.
+     * @throws IllegalArgumentException If the attribute does not exist or cannot be read as <code>long</code>.
+     */
+    public long getLongAttribute(final String attribute) {
+        final PropertyDescriptor prop = findProperty(attribute);
+        if (prop == null) return ((Number) readConverted(attribute, Long.TYPE)).longValue();
+        try {
+            final PropertyBinding binding = bindings.get(attribute);
+            return binding != null ? binding.getLong() : prop.getLong(obj);
+        } catch (IllegalAccessException | InvocationTargetException ex) {
+            throw new RuntimeException("Error getting value for " + prop, ex);
+        }
+    }
+
+    /**
+     * Reads attribute as <code>int</code>, see {@link #getLongAttribute(String)}.
+     */
+    public int getIntAttribute(final String attribute) {
+        final PropertyDescriptor prop = findProperty(attribute);
+        if (prop == null) return ((Number) readConverted(attribute, Integer.TYPE)).intValue();
+        try {
+            final PropertyBinding binding = bindings.get(attribute);
+            return binding != null ? binding.getInt() : prop.getInt(obj);
+        } catch (IllegalAccessException | InvocationTargetException ex) {
+            throw new RuntimeException("Error getting value for " + prop, ex);
+        }
+    }
+
+    /**
+     * Reads attribute as <code>double</code>, see {@link #getLongAttribute(String)}.
+     */
+    public double getDoubleAttribute(final String attribute) {
+        final PropertyDescriptor prop = findProperty(attribute);
+        if (prop == null) return ((Number) readConverted(attribute, Double.TYPE)).doubleValue();
+        try {
+            final PropertyBinding binding = bindings.get(attribute);
+            return binding != null ? binding.getDouble() : prop.getDouble(obj);
+        } catch (IllegalAccessException | InvocationTargetException ex) {
+            throw new RuntimeException("Error getting value for " + prop, ex);
+        }
+    }
+
+    /**
+     * Reads attribute as <code>boolean</code>, see {@link #getLongAttribute(String)}.
+     */
+    public boolean getBooleanAttribute(final String attribute) {
+        final PropertyDescriptor prop = findProperty(attribute);
+        if (prop == null) return (Boolean) readConverted(attribute, Boolean.TYPE);
+        try {
+            final PropertyBinding binding = bindings.get(attribute);
+            return binding != null ? binding.getBoolean() : prop.getBoolean(obj);
+        } catch (IllegalAccessException | InvocationTargetException ex) {
+            throw new RuntimeException("Error getting value for " + prop, ex);
+        }
+    }
+
+    /**
+     * @return Property of the attribute or <code>null</code> if the attribute is not a property (flattened keys, beans
+     * served by generated adapters).
+     */
+    private PropertyDescriptor findProperty(final String attribute) {
+        MyPreconditions.checkNotNull(attribute);
+        ensureInitialized();
+        return metadata != null ? metadata.getProperties().get(attribute) : null;
+    }
+
+    /**
+     * Reads the attribute boxed and converts it to the primitive type.
+     */
+    private Object readConverted(final String attribute, final Class<?> primitive) {
+        try {
+            return ValueConverter.forType(primitive).convert(readAttribute(attribute));
+        } catch (JMException ex) {
+            throw new RuntimeException("Error getting value for " + attribute, ex);
+        }
+    }
+
+    /**
+     * Reads attribute <code>property.key</code> of {@link MapExposure#FLATTENED} map.
+     */
+    private Object getFlattenedAttribute(final String attribute) {
+        for (int dot = attribute.indexOf(FlattenedMap.SEPARATOR); dot > 0; dot = attribute.indexOf(FlattenedMap.SEPARATOR, dot + 1)) {
+            final PropertyDescriptor prop = metadata.getProperties().get(attribute.substring(0, dot));
+            if (prop != null && prop.getFlattenedMap() != null) {
+                try {
+                    return bindings.get(prop.getName()).getKeyValue(attribute.substring(dot + 1));
+                } catch (IllegalAccessException | InvocationTargetException ex) {
+                    LOGGER.error("Error executing getter for " + prop, ex);
+                    throw new RuntimeException("Error getting value for " + prop, ex);
+                }
+            }
+        }
         throw new IllegalArgumentException("Field " + attribute + " not found");
     }
 
     @Override
     public void setAttribute(final Attribute attribute) throws AttributeNotFoundException, InvalidAttributeValueException, MBeanException, ReflectionException {
+        final Object event = Events.beginWrite();
+        try {
+            if (stats == null) {
+                writeAttribute(attribute);
+            } else {
+                writeAttributeWithStats(attribute);
+            }
+        } finally {
+            Events.endWrite(event, name, attribute != null ? attribute.getName() : null);
+        }
+    }
+
+    private void writeAttributeWithStats(final Attribute attribute) throws AttributeNotFoundException, InvalidAttributeValueException, MBeanException, ReflectionException {
+        final long start = System.nanoTime();
+        final long allocated = PublisherStats.allocatedBytes();
+        boolean failed = true;
+        try {
+            writeAttribute(attribute);
+            failed = false;
+        } finally {
+            stats.recordWrite(attribute != null ? attribute.getName() : null, start, allocated, failed);
+        }
+    }
+
+    private void writeAttribute(final Attribute attribute) throws AttributeNotFoundException, InvalidAttributeValueException, MBeanException, ReflectionException {
         MyPreconditions.checkNotNull(attribute);
+        ensureInitialized();
+        if (adapter != null) {
+            adapter.setAttribute(attribute);
+            return;
+        }
         final String name = attribute.getName();
         final Object val = attribute.getValue();
-        final Property prop = props.get(name);
+        final PropertyDescriptor prop = metadata.getProperties().get(name);
         if (prop != null) {
             try {
-                prop.setValue(val);
+                write(prop, val);
             } catch (Exception ex) {
                 LOGGER.error("Error executing setter for " + prop, ex);
                 throw new RuntimeException("Error setting value for " + prop, ex);
@@ -432,17 +767,47 @@ public final class MyDynamicBean implements DynamicMBean {
 
     @Override
     public AttributeList getAttributes(final String[] attributes) {
-        LOGGER.debug("Get attributes " + Arrays.asList(attributes));
-        final AttributeList list = new AttributeList();
+        final Object event = Events.beginRead();
+        try {
+            return stats == null ? readAttributes(attributes) : readAttributesWithStats(attributes);
+        } finally {
+            Events.endRead(event, name, attributes);
+        }
+    }
+
+    private AttributeList readAttributesWithStats(final String[] attributes) {
+        // one by one, so each attribute gets its own statistics
+        final AttributeList list = new AttributeList(attributes.length);
+        for (String attribute : attributes) {
+            final long start = System.nanoTime();
+            final long allocated = PublisherStats.allocatedBytes();
+            boolean failed = true;
+            try {
+                list.addAll(readAttributes(new String[]{attribute}));
+                failed = false;
+            } finally {
+                stats.recordRead(attribute, start, allocated, failed);
+            }
+        }
+        return list;
+    }
+
+    private AttributeList readAttributes(final String[] attributes) {
+        ensureInitialized();
+        if (adapter != null) return adapter.getAttributes(attributes);
+        if (LOGGER.isDebugEnabled()) LOGGER.debug("Get attributes " + Arrays.asList(attributes));
+        final AttributeList list = new AttributeList(attributes.length);
         for (String attr : attributes) {
-            final Property p = props.get(attr);
+            final PropertyDescriptor p = metadata.getProperties().get(attr);
             if (p != null) {
                 try {
-                    list.add(new Attribute(p.getName(), p.getValue()));
+                    list.add(new Attribute(p.getName(), read(p)));
                 } catch (Exception ex) {
                     LOGGER.error("Exception while creating attribute", ex);
                     throw new IllegalArgumentException("Error encountered", ex);
                 }
+            } else if (!flattenedKeys.isEmpty()) {
+                list.add(new Attribute(attr, getFlattenedAttribute(attr)));
             } else {
                 throw new IllegalArgumentException("Unknown attribute " + attr);
             }
@@ -453,13 +818,18 @@ public final class MyDynamicBean implements DynamicMBean {
     @Override
     public AttributeList setAttributes(final AttributeList attributes) {
         MyPreconditions.checkNotNull(attributes);
+        ensureInitialized();
+        if (adapter != null) return adapter.setAttributes(attributes);
         final String[] attribs = new String[attributes.size()];
         for (int i = 0; i < attributes.size(); i++) {
             final Attribute atr = (Attribute) attributes.get(i);
             MyPreconditions.checkNotNull(atr);
-            final Property prop = props.get(atr.getName());
+            final PropertyDescriptor prop = metadata.getProperties().get(atr.getName());
+            if (prop == null) {
+                throw new IllegalArgumentException("Field " + atr + " not found");
+            }
             try {
-                prop.setValue(atr.getValue());
+                write(prop, atr.getValue());
             } catch (Exception ex) {
                 LOGGER.error("Exception while setting attribute", ex);
                 throw new IllegalArgumentException("Error encountered", ex);
@@ -471,38 +841,111 @@ public final class MyDynamicBean implements DynamicMBean {
 
     @Override
     public Object invoke(final String actionName, final Object[] params, final String[] signature) throws MBeanException, ReflectionException {
-        LOGGER.debug("Invoking " + actionName + ", params " + Arrays.toString(params) + ", signature: " + Arrays.toString(signature));
-        final Map<String, Method> get = ops.get(actionName);
-        if (get != null) {
-            String sig = "";
-            for (int i = 0; i < signature.length; i++) {
-                sig += signature[i];
-                if (i < signature.length - 1) {
-                    sig += ",";
-                }
-            }
-            final Method m = get.get(sig);
-            if (m != null) {
-                try {
-                    return m.invoke(obj, params);
-                } catch (Exception ex) {
-                    throw new MBeanException(ex, "Error invoking operation");
-                }
-            } else {
-                throw new IllegalArgumentException("Operation " + actionName + " not found!");
-            }
-        } else {
+        final Object event = Events.beginInvoke();
+        try {
+            return stats == null ? invokeOperation(actionName, params, signature) : invokeOperationWithStats(actionName, params, signature);
+        } finally {
+            Events.endInvoke(event, name, actionName);
+        }
+    }
+
+    private Object invokeOperationWithStats(final String actionName, final Object[] params, final String[] signature) throws MBeanException, ReflectionException {
+        final long start = System.nanoTime();
+        final long allocated = PublisherStats.allocatedBytes();
+        boolean failed = true;
+        try {
+            final Object result = invokeOperation(actionName, params, signature);
+            failed = false;
+            return result;
+        } finally {
+            stats.recordInvoke(actionName, start, allocated, failed);
+        }
+    }
+
+    private Object invokeOperation(final String actionName, final Object[] params, final String[] signature) throws MBeanException, ReflectionException {
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Invoking " + actionName + ", params " + Arrays.toString(params) + ", signature: " + Arrays.toString(signature));
+        }
+        ensureInitialized();
+        if (adapter != null) return adapter.invoke(actionName, params, signature);
+        final PropertyOperation propertyOperation = metadata.getPropertyOperations().get(actionName);
+        if (propertyOperation != null) {
+            return propertyOperation.invoke(metadata.getProperties().get(propertyOperation.getProperty()), bindings.get(propertyOperation.getProperty()), obj, params, signature);
+        }
+        final Method m = metadata.findOperation(actionName, signature);
+        if (m == null) {
             throw new IllegalArgumentException("Operation " + actionName + " not found!");
         }
+        try {
+            return m.invoke(WeakTarget.resolve(obj), params);
+        } catch (Exception ex) {
+            throw new MBeanException(ex, "Error invoking operation");
+        }
     }
 
     @Override
     public MBeanInfo getMBeanInfo() {
-        LOGGER.debug("Get MBean info " + info);
+        if (!initialized) {
+            // the MBeanServer reads the info when it registers the bean, it's not the first access yet
+            if (registering == Thread.currentThread()) return placeholderInfo();
+            initialize();
+        }
+        if (!flattenedKeys.isEmpty()) refreshFlattenedAttributes();
+        if (LOGGER.isDebugEnabled()) LOGGER.debug("Get MBean info " + info);
         return info;
     }
 
-    private static MBeanOperationInfo[] createOperationsInfo(final List<Method> operations) {
+    /**
+     * Rebuilds the info if keys of some {@link MapExposure#FLATTENED} map changed since it was built.
+     */
+    private synchronized void refreshFlattenedAttributes() {
+        final List<PropertyDescriptor> flattened = metadata.getFlattened();
+        boolean changed = false;
+        for (int i = 0; i < flattened.size(); i++) {
+            final Map<?, ?> map = flattenedValue(bindings.get(flattened.get(i).getName()));
+            if (!FlattenedMap.hasKeys(map, flattenedKeys.get(i))) {
+                flattenedKeys.set(i, FlattenedMap.keysOf(map));
+                changed = true;
+            }
+        }
+        if (!changed) return;
+
+        final List<MBeanAttributeInfo> attributes = new ArrayList<>(Arrays.asList(metadata.getAttributesInfo()));
+        for (int i = 0; i < flattened.size(); i++) {
+            attributes.addAll(flattened.get(i).getFlattenedMap().attributesInfo(flattenedKeys.get(i)));
+        }
+        info = new MBeanInfo(requestedName, description, attributes.toArray(new MBeanAttributeInfo[attributes.size()]), BeanMetadata.CONSTRUCTORS, metadata.getOperationsInfo(), BeanMetadata.NOTIFICATIONS);
+    }
+
+    /**
+     * Reads the property of the instance, through its binding if it's bound (see {@link PropertyDescriptor#isBound()}).
+     */
+    private Object read(PropertyDescriptor prop) throws IllegalAccessException, InvocationTargetException {
+        if (!prop.isBound()) return prop.getValue(obj);
+        return bindings.get(prop.getName()).getValue();
+    }
+
+    /**
+     * Writes the property of the instance; binding of the property drops its cached value (if it's cached).
+     */
+    private void write(PropertyDescriptor prop, Object val) throws IllegalAccessException, InvocationTargetException {
+        if (!prop.isBound()) {
+            prop.setValue(obj, val);
+        } else {
+            bindings.get(prop.getName()).setValue(val);
+        }
+    }
+
+    private static Map<?, ?> flattenedValue(PropertyBinding binding) {
+        try {
+            return (Map<?, ?>) binding.getRawValue();
+        } catch (Exception ex) {
+            LOGGER.error("Error executing getter for " + binding, ex);
+            return null;
+        }
+    }
+
+    static MBeanOperationInfo[] createOperationsInfo(final List<Method> operations) {
         MyPreconditions.checkNotNull(operations);
         final List<MBeanOperationInfo> list = new ArrayList<>();
         for (Method m : operations) {
@@ -535,7 +978,7 @@ public final class MyDynamicBean implements DynamicMBean {
         return Getter.newGetter(obj, f);
     }
 
-    private static List<Method> getAnnotatedMethods(Class<?> objectClass, final Class annotationClass) {
+    static List<Method> getAnnotatedMethods(Class<?> objectClass, final Class annotationClass) {
         final List<Method> list = new ArrayList<>();
         Method[] methods;
 
@@ -586,17 +1029,164 @@ public final class MyDynamicBean implements DynamicMBean {
         throw new IllegalArgumentException("Field " + f + " is not Monitorable");
     }
 
+    /**
+     * Registers the bean by the shared background thread, so the caller does not wait for the {@link MBeanServer}. The
+     * thread has a bounded queue, the caller waits only if the queue is full.
+     *
+     * @return Future of the registration, it fails with the exception thrown by {@link #register()}. Cancelling it (or
+     * {@link #unregisterAsync()}) before the registration starts means the bean is never registered.
+     */
+    public Future<MyDynamicBean> registerAsync() {
+        final FutureTask<MyDynamicBean> task = new FutureTask<MyDynamicBean>(new Callable<MyDynamicBean>() {
+            @Override
+            public MyDynamicBean call() {
+                synchronized (registrationLock) {
+                    // cancelled by unregisterAsync() - FutureTask#cancel() succeeds even when the task has just started
+                    if (pendingRegistration == null) return MyDynamicBean.this;
+                    try {
+                        register();
+                    } catch (RuntimeException e) {
+                        LOGGER.error("Exception while registering JMX Bean", e);
+                        PublisherMetrics.INSTANCE.registrationFailed();
+                        throw e;
+                    }
+                }
+                return MyDynamicBean.this;
+            }
+        }) {
+            @Override
+            protected void done() {
+                // do not keep the finished task for the lifetime of the bean
+                synchronized (registrationLock) {
+                    if (pendingRegistration == this) pendingRegistration = null;
+                }
+            }
+        };
+        pendingRegistration = task;
+        AsyncRegistrar.execute(task);
+        return task;
+    }
+
+    /**
+     * Unregisters the bean by the background thread, see {@link #registerAsync()}. If the registration of the bean is
+     * still queued, it's just cancelled - short-lived beans never reach the {@link MBeanServer} then.
+     *
+     * @return Future of the unregistration.
+     */
+    public Future<MyDynamicBean> unregisterAsync() {
+        boolean cancelled = false;
+        synchronized (registrationLock) {
+            final Future<MyDynamicBean> pending = pendingRegistration;
+            pendingRegistration = null;
+            if (pending != null && nameAllocator == null) {
+                // not registered yet, the registration sees the null and skips
+                pending.cancel(false);
+                cancelled = true;
+            }
+        }
+        if (cancelled) {
+            final FutureTask<MyDynamicBean> done = new FutureTask<>(new Callable<MyDynamicBean>() {
+                @Override
+                public MyDynamicBean call() {
+                    return MyDynamicBean.this;
+                }
+            });
+            done.run();
+            return done;
+        }
+        final FutureTask<MyDynamicBean> task = new FutureTask<MyDynamicBean>(new Callable<MyDynamicBean>() {
+            @Override
+            public MyDynamicBean call() throws JMException {
+                unregister();
+                return MyDynamicBean.this;
+            }
+        });
+        AsyncRegistrar.execute(task);
+        return task;
+    }
+
     @SuppressWarnings("unused")
     public void unregister() throws InstanceNotFoundException, MBeanRegistrationException {
-        mBeanServer.unregisterMBean(objName);
+        synchronized (registrationLock) {
+            try {
+                mBeanServer.unregisterMBean(objName);
+                if (stats != null) mBeanServer.unregisterMBean(new ObjectName(name + PublisherStats.NAME_SUFFIX));
+            } catch (MalformedObjectNameException e) {
+                throw new RuntimeException(e);
+            } finally {
+                // the bean is not registered anymore even if the server failed (e.g. somebody unregistered it already)
+                if (nameAllocator != null) {
+                    PublisherMetrics.INSTANCE.beanUnregistered();
+                    PublisherMetrics.INSTANCE.beanDropped(live);
+                    live = null;
+                }
+                releaseName();
+            }
+        }
     }
 
+    /**
+     * Called by {@link WeakTarget} when the object is garbage collected, unregisters the bean if it's registered.
+     */
+    void targetCollected() {
+        synchronized (registrationLock) {
+            if (nameAllocator == null) return;
+            LOGGER.debug("Object of " + objName + " was garbage collected, unregistering the bean");
+            try {
+                unregister();
+            } catch (JMException e) {
+                LOGGER.debug("Unable to unregister " + objName, e);
+            }
+        }
+    }
+
+    /**
+     * Registers the bean to its {@link MBeanServer} under a unique name - the requested name or the name with counter if
+     * the requested one is used by another bean already.
+     *
+     * @throws IllegalStateException If the bean is registered already.
+     */
     public void register() {
-        try {
-            this.objName = new ObjectName(name);
-            mBeanServer.registerMBean(this, objName);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+        synchronized (registrationLock) {
+            if (nameAllocator != null) throw new IllegalStateException("Bean " + objName + " is registered already");
+            // registered again after unregister()
+            if (live == null) live = PublisherMetrics.INSTANCE.beanCreated(this);
+            nameAllocator = NameAllocator.forServer(mBeanServer);
+            nameSuffix = nameAllocator.allocate(requestedName);
+            name = NameAllocator.format(requestedName, nameSuffix);
+            boolean registered = false;
+            try {
+                this.objName = new ObjectName(name);
+                final long start = System.nanoTime();
+                registering = Thread.currentThread();
+                try {
+                    mBeanServer.registerMBean(this, objName);
+                } finally {
+                    registering = null;
+                }
+                registered = true;
+                PublisherMetrics.INSTANCE.beanRegistered(start);
+                PublisherMetrics.registerWith(mBeanServer);
+                if (stats != null) mBeanServer.registerMBean(stats, new ObjectName(name + PublisherStats.NAME_SUFFIX));
+            } catch (Exception e) {
+                if (registered) {
+                    try {
+                        mBeanServer.unregisterMBean(objName);
+                        PublisherMetrics.INSTANCE.beanUnregistered();
+                    } catch (JMException ex) {
+                        LOGGER.debug("Unable to unregister " + objName, ex);
+                    }
+                }
+                releaseName();
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private void releaseName() {
+        if (nameAllocator != null) {
+            nameAllocator.release(requestedName, nameSuffix);
+            nameAllocator = null;
         }
     }
 
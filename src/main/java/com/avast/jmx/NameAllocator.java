@@ -0,0 +1,145 @@
+package com.avast.jmx;
+
+import javax.management.MBeanServer;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Unique names of beans registered to one {@link MBeanServer}. The first bean gets the requested name, the next ones
+ * get suffix <code>-1</code>, <code>-2</code>... Suffixes of unregistered beans are reused (the lowest first) and the
+ * name is forgotten completely once all its beans are unregistered, so the allocator does not grow with churn.
+ * <p/>
+ * Allocation and release are lock-free: every name has a slot with counter of the beans using it; the last release
+ * marks the slot dead (the counter is set to -1) and removes it, allocation which finds a dead slot starts over with
+ * a new one.
+ *
+ * @author Jan Kolena - kolena@avast.com
+ */
+final class NameAllocator {//package visibility
+    private static final Map<MBeanServer, NameAllocator> SERVERS = new WeakHashMap<>();
+    // allocator of the server used last, nearly all beans are registered to one (the platform) server
+    private static volatile LastServer last;
+
+    private final ConcurrentMap<String, Slot> slots = new ConcurrentHashMap<>();
+
+    private static final class Slot {
+        private final AtomicInteger users = new AtomicInteger();
+        private final AtomicLong next = new AtomicLong();
+        private final NavigableSet<Long> free = new ConcurrentSkipListSet<>();
+
+        private boolean acquire() {
+            int n;
+            do {
+                n = users.get();
+                if (n < 0) return false;
+            } while (!users.compareAndSet(n, n + 1));
+            return true;
+        }
+
+        /**
+         * @return <code>true</code> if this was the last user and the slot is dead now.
+         */
+        private boolean release() {
+            return users.decrementAndGet() == 0 && users.compareAndSet(0, -1);
+        }
+    }
+
+    private static final class LastServer {
+        private final WeakReference<MBeanServer> server;
+        private final NameAllocator allocator;
+
+        private LastServer(MBeanServer server, NameAllocator allocator) {
+            this.server = new WeakReference<>(server);
+            this.allocator = allocator;
+        }
+    }
+
+    /**
+     * @return Allocator of names of the server. Allocator of the server used last is returned without locking.
+     */
+    static NameAllocator forServer(MBeanServer server) {
+        final LastServer cached = last;
+        if (cached != null && cached.server.get() == server) return cached.allocator;
+        synchronized (SERVERS) {
+            NameAllocator allocator = SERVERS.get(server);
+            if (allocator == null) {
+                allocator = new NameAllocator();
+                SERVERS.put(server, allocator);
+            }
+            last = new LastServer(server, allocator);
+            return allocator;
+        }
+    }
+
+    /**
+     * @return Number of names in use, over all servers.
+     */
+    static int countNames() {
+        synchronized (SERVERS) {
+            int count = 0;
+            for (NameAllocator allocator : SERVERS.values()) {
+                count += allocator.slots.size();
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Allocates a suffix of the name, see {@link #format(String, long)}.
+     *
+     * @param name The requested name.
+     * @return The suffix, 0 for the name itself.
+     */
+    long allocate(String name) {
+        while (true) {
+            Slot slot = slots.get(name);
+            if (slot == null) {
+                final Slot created = new Slot();
+                slot = slots.putIfAbsent(name, created);
+                if (slot == null) slot = created;
+            }
+            if (!slot.acquire()) {
+                // released concurrently, help removing it and start over
+                slots.remove(name, slot);
+                continue;
+            }
+            final Long reused = slot.free.pollFirst();
+            return reused != null ? reused : slot.next.getAndIncrement();
+        }
+    }
+
+    /**
+     * @return Suffix the next {@link #allocate(String)} of the name would return (unless the name is allocated or
+     * released concurrently), nothing is allocated.
+     */
+    long peek(String name) {
+        final Slot slot = slots.get(name);
+        if (slot == null || slot.users.get() < 0) return 0;
+        final Long reused = slot.free.ceiling(Long.MIN_VALUE);
+        return reused != null ? reused : slot.next.get();
+    }
+
+    /**
+     * Returns the suffix allocated by {@link #allocate(String)} so it can be used by another bean.
+     */
+    void release(String name, long suffix) {
+        final Slot slot = slots.get(name);
+        if (slot == null) return;
+        slot.free.add(suffix);
+        if (slot.release()) slots.remove(name, slot);
+    }
+
+    /**
+     * @return The name with the suffix, e.g. <code>com.avast:type=Connection-2</code>.
+     */
+    static String format(String name, long suffix) {
+        return suffix == 0 ? name : name + MyDynamicBean.NAME_COUNTER_SEPARATOR + suffix;
+    }
+}
@@ -7,12 +7,14 @@ import javax.management.openmbean.*;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Type;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * Property found by scanning a class, bound to the instance it was created for. {@link BeanMetadata} describes the
+ * properties of a class by {@link PropertyDescriptor}s shared by all its instances and does not keep these.
+ *
  * @author Jan Kolena - kolena@avast.com (originally: Tomas Rehak)
  */
 @SuppressWarnings("unused")
@@ -31,6 +33,13 @@ public class Property {
     private String type;
     private Class<?> originalClass;
     private boolean compositeDataWrapper = false;
+    private CompositeDataConverter compositeDataConverter;
+    private TabularDataConverter tabularDataConverter;
+    private FlattenedMap flattenedMap;
+    private TimeUnit histogramUnit;
+    private CounterRate counterRate;
+    private final long cacheMillis;
+    private final long timeoutMillis;
 
     public Property(Object instance, Class<?> originalClass, Field f, String name, String desc, boolean readable, boolean setable, Method getter, Method setter) {
         this.instance = instance;
@@ -44,27 +53,126 @@ public class Property {
         this.getterTarget = instance;
         this.setterTarget = instance;
         this.originalClass = originalClass;
+        this.cacheMillis = cacheMillis(f, getter);
+        this.timeoutMillis = timeoutMillis(f, getter);
         openTypeConversionCheck(f, getter);
     }
 
+    /**
+     * @return The longest {@link JMXProperty#cacheMillis()} (or {@link JMXPropertyGetter#cacheMillis()}) of the field
+     * and the getter.
+     */
+    private static long cacheMillis(Field field, Method getter) {
+        long millis = 0;
+        final JMXProperty fieldAnnotation = field != null ? field.getAnnotation(JMXProperty.class) : null;
+        if (fieldAnnotation != null) millis = fieldAnnotation.cacheMillis();
+        if (getter != null) {
+            final JMXProperty methodAnnotation = getter.getAnnotation(JMXProperty.class);
+            if (methodAnnotation != null) millis = Math.max(millis, methodAnnotation.cacheMillis());
+            final JMXPropertyGetter getterAnnotation = getter.getAnnotation(JMXPropertyGetter.class);
+            if (getterAnnotation != null) millis = Math.max(millis, getterAnnotation.cacheMillis());
+        }
+        return millis;
+    }
+
+    /**
+     * @return The shortest non-zero {@link JMXProperty#timeoutMillis()} (or {@link JMXPropertyGetter#timeoutMillis()})
+     * of the field and the getter, 0 if there is none.
+     */
+    private static long timeoutMillis(Field field, Method getter) {
+        long millis = 0;
+        final JMXProperty fieldAnnotation = field != null ? field.getAnnotation(JMXProperty.class) : null;
+        if (fieldAnnotation != null) millis = shorter(millis, fieldAnnotation.timeoutMillis());
+        if (getter != null) {
+            final JMXProperty methodAnnotation = getter.getAnnotation(JMXProperty.class);
+            if (methodAnnotation != null) millis = shorter(millis, methodAnnotation.timeoutMillis());
+            final JMXPropertyGetter getterAnnotation = getter.getAnnotation(JMXPropertyGetter.class);
+            if (getterAnnotation != null) millis = shorter(millis, getterAnnotation.timeoutMillis());
+        }
+        return millis;
+    }
+
+    private static long shorter(long timeout, long other) {
+        return timeout == 0 || (other > 0 && other < timeout) ? other : timeout;
+    }
+
     public void setType(String type) {
         this.type = type;
     }
 
     public String getType() {
-        if (compositeDataWrapper) {
+        if (tabularDataConverter != null) {
+            return TabularData.class.getName();
+        } else if (compositeDataWrapper) {
             return CompositeData.class.getName();
         } else {
             return type;
         }
     }
 
+    /**
+     * @return Keys of {@link MapExposure#FLATTENED} map, <code>null</code> for other properties.
+     */
+    FlattenedMap getFlattenedMap() {
+        return flattenedMap;
+    }
+
+    /**
+     * @return Rate of {@link JMXCounter} for the derived rate properties, <code>null</code> for other properties.
+     */
+    CounterRate getCounterRate() {
+        return counterRate;
+    }
+
+    /**
+     * @return TTL of cached values of the property (see {@link JMXProperty#cacheMillis()}), 0 if they are not cached.
+     */
+    long getCacheMillis() {
+        return cacheMillis;
+    }
+
+    /**
+     * @return Deadline of the getter (see {@link JMXProperty#timeoutMillis()}), 0 if it has none.
+     */
+    long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * Makes this property a rate of a counter - the rate is the target of its getter.
+     */
+    void setCounterRate(CounterRate counterRate) {
+        this.counterRate = counterRate;
+        this.getterTarget = counterRate;
+    }
+
+    /**
+     * @return Converter of {@link MapExposure#TABULAR} map, <code>null</code> for other properties.
+     */
+    TabularDataConverter getTabularDataConverter() {
+        return tabularDataConverter;
+    }
+
+    /**
+     * @return <code>true</code> if the property is a map (or histogram) converted to open type.
+     */
+    boolean isCompositeDataWrapper() {
+        return compositeDataWrapper;
+    }
+
+    /**
+     * @return Unit of {@link LatencyHistogram}, <code>null</code> for other properties.
+     */
+    TimeUnit getHistogramUnit() {
+        return histogramUnit;
+    }
+
     public Object getValue() throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
         MyPreconditions.checkArgument(readable);
         MyPreconditions.checkNotNull(getter);
         MyPreconditions.checkNotNull(getterTarget);
         if (!getter.isAccessible()) getter.setAccessible(true);
-        return convert(getter.invoke(getterTarget));
+        return convert(getter.invoke(WeakTarget.resolve(getterTarget)));
     }
 
     public Object getSetterTarget() {
@@ -105,6 +213,7 @@ public class Property {
 
     public void setName(String name) {
         this.name = name;
+        if (compositeDataWrapper) createConverter(field, getter);
     }
 
     public String getDesc() {
@@ -113,6 +222,7 @@ public class Property {
 
     public void setDesc(String desc) {
         this.desc = desc;
+        if (compositeDataWrapper) createConverter(field, getter);
     }
 
     public boolean isReadable() {
@@ -152,7 +262,7 @@ public class Property {
         MyPreconditions.checkNotNull(setter);
         MyPreconditions.checkNotNull(setterTarget);
         if (!setter.isAccessible()) setter.setAccessible(true);
-        setter.invoke(setterTarget, val);
+        setter.invoke(WeakTarget.resolve(setterTarget), ValueConverter.forType(setter.getParameterTypes()[0]).convert(val));
     }
 
     public Class<?> getOriginalClass() {
@@ -171,125 +281,59 @@ public class Property {
     private void openTypeConversionCheck(Field field, Method method) {
         if (field != null) { //the field can be null for properties backed by methods
             final Class<?> fieldType = field.getType();
-            if (fieldType.equals(Map.class)) {
+            if (fieldType.equals(Map.class) || fieldType.equals(LatencyHistogram.class)) {
                 compositeDataWrapper = true;
                 setable = false; // Really do not want to set CompositeData
             }
         } else if (method != null) {
             //for properties backed by methods
             final Class<?> returnType = method.getReturnType();
-            if (returnType.equals(Map.class)) {
+            if (returnType.equals(Map.class) || returnType.equals(LatencyHistogram.class)) {
                 compositeDataWrapper = true;
                 setable = false;
             }
         }
+        if (compositeDataWrapper) createConverter(field, method);
+    }
+
+    private void createConverter(Field field, Method method) {
+        if ((field != null ? field.getType() : method.getReturnType()).equals(LatencyHistogram.class)) {
+            final JMXTimer timer = field != null ? field.getAnnotation(JMXTimer.class) : null;
+            histogramUnit = timer != null ? timer.unit() : TimeUnit.MICROSECONDS;
+            return;
+        }
+        final JMXProperty an = field != null ? field.getAnnotation(JMXProperty.class) : method.getAnnotation(JMXProperty.class);
+        final MapExposure exposure = an != null ? an.mapExposure() : MapExposure.COMPOSITE;
+        final Type mapType = field != null ? field.getGenericType() : method.getGenericReturnType();
+        if (exposure == MapExposure.TABULAR) {
+            tabularDataConverter = new TabularDataConverter(name, desc, mapType, an.pageSize());
+        } else {
+            // flattened map can still be read as a whole
+            if (exposure == MapExposure.FLATTENED) flattenedMap = new FlattenedMap(name, desc, mapType);
+            compositeDataConverter = new CompositeDataConverter(name, desc);
+        }
     }
 
     /**
      * Method will convert following classes:
      * <ul>
      * <li>{@link Map}</li>
+     * <li>{@link LatencyHistogram}</li>
      * </ul>
      * <p/>
-     * to new {@link CompositeData} representation
+     * to new {@link CompositeData} (or {@link TabularData}) representation
      *
      * @return original obj or converted obj
      */
     private Object convert(Object obj) {
+        if (histogramUnit != null && obj instanceof LatencyHistogram) {
+            return ((LatencyHistogram) obj).toCompositeData(histogramUnit);
+        }
         if (compositeDataWrapper && (obj instanceof Map)) {
-            return convertMapToCompositeData((Map) obj);
+            if (tabularDataConverter != null) return tabularDataConverter.convert((Map) obj);
+            return compositeDataConverter.convert((Map) obj);
         }
         // do not need to convert data || unable to convert data
         return obj;
     }
-
-    /**
-     * Convert {@link Map} to {@link CompositeData} obj
-     *
-     * @param inputMap map which will be converted to {@link CompositeData}
-     * @return new representation of map in CompositeData obj OR
-     * input Map if not possible
-     */
-    private Object convertMapToCompositeData(Map inputMap) {
-        final int size = inputMap != null ? inputMap.size() : 0;
-
-        if (size == 0) {
-            LOGGER.debug("Exposing empty map");
-            return null;
-        }
-
-        final String[] itemNames = new String[size];
-        final String[] itemDescs = new String[size];
-        final OpenType[] itemTypes = new OpenType[size];
-        final Object[] itemValues = new Object[size];
-
-        int i = 0;
-
-        for (Object key : inputMap.keySet()) {
-            final String keyValue = key.toString();
-            final Object value = inputMap.get(key);
-
-            itemNames[i] = keyValue;
-            itemDescs[i] = keyValue;
-            itemValues[i] = simplifyValue(value);
-            itemTypes[i] = getSimpleType(value);
-            ++i;
-        }
-
-        try {
-            final CompositeType compositeType = new CompositeType(name, "CompositeData wrapper-" + desc, itemNames, itemDescs, itemTypes);
-            return new CompositeDataSupport(compositeType, itemNames, itemValues);
-        } catch (OpenDataException e) {
-            LOGGER.warn("Unable to convert map to open type!", e);
-            return null;
-        } catch (Exception e) {
-            LOGGER.warn("Unknown problem while exposing the data", e);
-            return null;
-        }
-    }
-
-    private Object simplifyValue(final Object value) {
-        final Object newValue;
-
-        if (AtomicInteger.class.isInstance(value)) {
-            newValue = AtomicInteger.class.cast(value).get();
-        } else if (AtomicLong.class.isInstance(value)) {
-            newValue = AtomicLong.class.cast(value).get();
-        } else if (AtomicBoolean.class.isInstance(value)) {
-            newValue = AtomicBoolean.class.cast(value).get();
-        } else newValue = value;
-
-        return newValue;
-    }
-
-    private SimpleType<?> getSimpleType(final Object value) {
-        switch (value.getClass().getSimpleName().toLowerCase()) {
-            case "integer":
-            case "atomicinteger":
-                return SimpleType.INTEGER;
-            case "biginteger":
-                return SimpleType.BIGINTEGER;
-            case "long":
-            case "atomiclong":
-                return SimpleType.LONG;
-            case "short":
-                return SimpleType.SHORT;
-            case "byte":
-                return SimpleType.BYTE;
-            case "date":
-                return SimpleType.DATE;
-            case "double":
-                return SimpleType.DOUBLE;
-            case "float":
-                return SimpleType.FLOAT;
-            case "boolean":
-            case "atomicboolean":
-                return SimpleType.BOOLEAN;
-
-            default:
-                LOGGER.debug("Unable to convert type of the value");
-            case "string":
-                return SimpleType.STRING;
-        }
-    }
-}
\ No newline at end of file
+}
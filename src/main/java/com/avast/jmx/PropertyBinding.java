@@ -0,0 +1,104 @@
+package com.avast.jmx;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Map;
+
+/**
+ * Property of one instance, for properties which keep state of their own in every instance (see
+ * {@link PropertyDescriptor#isBound()}). It holds the instance, the source the value is read from (the instance, rate
+ * of the counter, {@link CachedValue} or {@link GuardedValue}) and converter of composite map, so instances of one class
+ * with different keys of their maps do not rebuild each other's composite type.
+ *
+ * @author Jan Kolena - kolena@avast.com
+ */
+final class PropertyBinding {//package visibility
+    private final PropertyDescriptor descriptor;
+    private final Object instance;
+    private final Object source;
+    private final CompositeDataConverter compositeDataConverter;
+
+    /**
+     * @param descriptor             The (shared) descriptor.
+     * @param instance               The instance or its {@link WeakTarget}, it's written to.
+     * @param source                 The instance, {@link CounterRate} bound to it, its {@link CachedValue} or
+     *                               {@link GuardedValue}; it's read from.
+     * @param compositeDataConverter Converter of composite map, <code>null</code> for other properties.
+     */
+    PropertyBinding(PropertyDescriptor descriptor, Object instance, Object source, CompositeDataConverter compositeDataConverter) {
+        this.descriptor = descriptor;
+        this.instance = instance;
+        this.source = source;
+        this.compositeDataConverter = compositeDataConverter;
+    }
+
+    PropertyDescriptor getDescriptor() {
+        return descriptor;
+    }
+
+    /**
+     * @return The value, converted like {@link PropertyDescriptor#getValue(Object)} does.
+     */
+    Object getValue() throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+        return descriptor.convert(getRawValue(), compositeDataConverter);
+    }
+
+    /**
+     * @return Value of the property as the getter returns it, i.e. maps are not converted.
+     */
+    Object getRawValue() throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+        if (source instanceof CachedValue) return ((CachedValue) source).get();
+        if (source instanceof GuardedValue) return ((GuardedValue) source).get();
+        return descriptor.getRawValue(source);
+    }
+
+    /**
+     * Reads the property as <code>long</code>, see {@link PropertyDescriptor#getLong(Object)}.
+     */
+    long getLong() throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+        return isComputed() ? PropertyDescriptor.toLong(getRawValue()) : descriptor.getLong(source);
+    }
+
+    int getInt() throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+        return isComputed() ? PropertyDescriptor.toInt(getRawValue()) : descriptor.getInt(source);
+    }
+
+    double getDouble() throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+        return isComputed() ? PropertyDescriptor.toDouble(getRawValue()) : descriptor.getDouble(source);
+    }
+
+    boolean getBoolean() throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+        return isComputed() ? PropertyDescriptor.toBoolean(getRawValue()) : descriptor.getBoolean(source);
+    }
+
+    /**
+     * @return <code>true</code> if the value is computed by {@link CachedValue} or {@link GuardedValue}, not read by
+     * the getter of the descriptor directly.
+     */
+    private boolean isComputed() {
+        return source instanceof CachedValue || source instanceof GuardedValue;
+    }
+
+    /**
+     * Writes the property and drops its cached value, if there is one.
+     */
+    void setValue(Object val) throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+        descriptor.setValue(instance, val);
+        if (source instanceof CachedValue) ((CachedValue) source).invalidate();
+    }
+
+    /**
+     * Reads one key of {@link MapExposure#FLATTENED} map.
+     *
+     * @param key The key.
+     * @return The value, atomic types are unwrapped.
+     * @throws IllegalArgumentException If the map does not contain the key.
+     */
+    Object getKeyValue(String key) throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+        return descriptor.getFlattenedMap().get((Map<?, ?>) getRawValue(), key);
+    }
+
+    @Override
+    public String toString() {
+        return descriptor.toString();
+    }
+}
@@ -0,0 +1,357 @@
+package com.avast.jmx;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable description of one property of a class - its name, type, compiled accessors and converters. It's built
+ * from the scanned {@link Property} by {@link BeanMetadata} and shared by all instances of the class, the instance is
+ * passed to every access. State of one instance (rates of counters, cached values, guarded getters, layout of
+ * composite maps) is kept by its {@link PropertyBinding}, see {@link #isBound()}.
+ *
+ * @author Jan Kolena - kolena@avast.com
+ */
+final class PropertyDescriptor {//package visibility
+    private final String name;
+    private final String desc;
+    private final String type;
+    private final boolean readable;
+    private final boolean setable;
+    private final Field field;
+    private final Method getter;
+    private final Method setter;
+    // the getter/setter is generated (see Getter and Setter), it reads/writes the field directly
+    private final boolean fieldGetter;
+    private final boolean fieldSetter;
+    private final boolean compositeMap;
+    private final TimeUnit histogramUnit;
+    private final TabularDataConverter tabularDataConverter;
+    private final FlattenedMap flattenedMap;
+    private final CounterRate counterRate;
+    private final long cacheMillis;
+    private final long timeoutMillis;
+    private final MethodHandle unboundGetter;
+    private final MethodHandle unboundSetter;
+    private final MethodHandle longGetter;
+    private final MethodHandle intGetter;
+    private final MethodHandle doubleGetter;
+    private final MethodHandle booleanGetter;
+
+    /**
+     * Describes the scanned property and compiles its getter and setter to method handles (see {@link Accessors}).
+     * Properties which cannot be compiled keep using reflection.
+     *
+     * @param property The property, not bound to any instance.
+     */
+    PropertyDescriptor(Property property) {
+        this.name = property.getName();
+        this.desc = property.getDesc();
+        this.type = property.getType();
+        this.readable = property.isReadable();
+        this.setable = property.isSetable();
+        this.field = property.getField();
+        this.getter = property.getGetter();
+        this.setter = property.getSetter();
+        this.fieldGetter = property.getGetterTarget() instanceof Getter;
+        this.fieldSetter = property.getSetterTarget() instanceof Setter;
+        this.histogramUnit = property.getHistogramUnit();
+        this.tabularDataConverter = property.getTabularDataConverter();
+        this.flattenedMap = property.getFlattenedMap();
+        this.compositeMap = property.isCompositeDataWrapper() && histogramUnit == null && tabularDataConverter == null;
+        this.counterRate = property.getCounterRate();
+        this.cacheMillis = property.getCacheMillis();
+        this.timeoutMillis = property.getTimeoutMillis();
+
+        this.unboundGetter = readable ? Accessors.compileGetter(property) : null;
+        this.unboundSetter = setable ? Accessors.compileSetter(property) : null;
+        // cached and guarded values are read through their bindings, boxed
+        final boolean primitive = readable && cacheMillis == 0 && timeoutMillis == 0;
+        this.longGetter = primitive ? Accessors.compilePrimitiveGetter(property, Long.TYPE) : null;
+        this.intGetter = primitive ? Accessors.compilePrimitiveGetter(property, Integer.TYPE) : null;
+        this.doubleGetter = primitive ? Accessors.compilePrimitiveGetter(property, Double.TYPE) : null;
+        this.booleanGetter = primitive ? Accessors.compilePrimitiveGetter(property, Boolean.TYPE) : null;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    String getDesc() {
+        return desc;
+    }
+
+    String getType() {
+        return type;
+    }
+
+    boolean isReadable() {
+        return readable;
+    }
+
+    boolean isSetable() {
+        return setable;
+    }
+
+    Field getField() {
+        return field;
+    }
+
+    MethodHandle getUnboundGetter() {
+        return unboundGetter;
+    }
+
+    /**
+     * @return <code>true</code> if the value is converted (maps to {@link CompositeData} or {@link TabularData},
+     * histograms to {@link CompositeData}) before it's returned.
+     */
+    boolean isConverted() {
+        return compositeMap || histogramUnit != null || tabularDataConverter != null;
+    }
+
+    /**
+     * @return Keys of {@link MapExposure#FLATTENED} map, <code>null</code> for other properties.
+     */
+    FlattenedMap getFlattenedMap() {
+        return flattenedMap;
+    }
+
+    /**
+     * @return Converter of {@link MapExposure#TABULAR} map, <code>null</code> for other properties.
+     */
+    TabularDataConverter getTabularDataConverter() {
+        return tabularDataConverter;
+    }
+
+    /**
+     * @return TTL of cached values of the property (see {@link JMXProperty#cacheMillis()}), 0 if they are not cached.
+     */
+    long getCacheMillis() {
+        return cacheMillis;
+    }
+
+    /**
+     * @return Deadline of the getter (see {@link JMXProperty#timeoutMillis()}), 0 if it has none.
+     */
+    long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * @return <code>true</code> if the property keeps state of its own in every instance (rate of a counter, cached
+     * value, guarded getter, layout of composite map), i.e. it's accessed through {@link #bind(Object) binding}.
+     */
+    boolean isBound() {
+        return counterRate != null || cacheMillis > 0 || timeoutMillis > 0 || compositeMap;
+    }
+
+    /**
+     * Creates state of the property of given instance - starts sampling the counter of a rate, creates cached value,
+     * guarded getter and converter of composite map. Cached value of a guarded getter caches what the guarded getter
+     * returns.
+     *
+     * @param instance The instance or its {@link WeakTarget}.
+     * @param sampled  Samples of counters of the instance, shared by the rates of one counter.
+     * @return The binding.
+     */
+    PropertyBinding bind(Object instance, Map<Field, CounterRate.Samples> sampled) {
+        Object source = instance;
+        if (counterRate != null) {
+            source = counterRate.bindTo(instance, sampled);
+        } else {
+            if (timeoutMillis > 0) source = new GuardedValue(this, source);
+            if (cacheMillis > 0) source = new CachedValue(this, source);
+        }
+        return new PropertyBinding(this, instance, source, compositeMap ? new CompositeDataConverter(name, desc) : null);
+    }
+
+    /**
+     * Reads the property of given instance, for properties which are not {@link #isBound() bound}.
+     *
+     * @param target The instance or its {@link WeakTarget}.
+     * @return The value, histograms and tabular maps are converted.
+     */
+    Object getValue(Object target) throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+        return convert(getRawValue(target), null);
+    }
+
+    /**
+     * @param target The instance, its {@link WeakTarget} or (for rates) the {@link CounterRate}.
+     * @return Value of the property as the getter returns it, i.e. maps are not converted.
+     */
+    Object getRawValue(Object target) throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+        MyPreconditions.checkArgument(readable);
+        final MethodHandle handle = unboundGetter;
+        if (handle != null) {
+            final Object resolved = WeakTarget.resolve(target);
+            try {
+                return (Object) handle.invokeExact(resolved);
+            } catch (Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+        }
+        if (fieldGetter) return Getter.newGetter(target, field).get();
+        MyPreconditions.checkNotNull(getter);
+        getter.setAccessible(true);
+        return getter.invoke(WeakTarget.resolve(target));
+    }
+
+    /**
+     * Reads the property as <code>long</code> without boxing it, for in-process consumers (exporters, samplers...).
+     * Primitive (or wrapper) values are widened, e.g. <code>int</code> can be read as <code>long</code>; other values
+     * are converted like values written by JMX client.
+     *
+     * @param target See {@link #getRawValue(Object)}.
+     * @throws IllegalArgumentException If the value cannot be read as <code>long</code>.
+     */
+    long getLong(Object target) throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+        MyPreconditions.checkArgument(readable);
+        final MethodHandle handle = longGetter;
+        if (handle != null) {
+            final Object resolved = WeakTarget.resolve(target);
+            try {
+                return (long) handle.invokeExact(resolved);
+            } catch (Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+        }
+        return toLong(getRawValue(target));
+    }
+
+    int getInt(Object target) throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+        MyPreconditions.checkArgument(readable);
+        final MethodHandle handle = intGetter;
+        if (handle != null) {
+            final Object resolved = WeakTarget.resolve(target);
+            try {
+                return (int) handle.invokeExact(resolved);
+            } catch (Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+        }
+        return toInt(getRawValue(target));
+    }
+
+    double getDouble(Object target) throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+        MyPreconditions.checkArgument(readable);
+        final MethodHandle handle = doubleGetter;
+        if (handle != null) {
+            final Object resolved = WeakTarget.resolve(target);
+            try {
+                return (double) handle.invokeExact(resolved);
+            } catch (Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+        }
+        return toDouble(getRawValue(target));
+    }
+
+    boolean getBoolean(Object target) throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+        MyPreconditions.checkArgument(readable);
+        final MethodHandle handle = booleanGetter;
+        if (handle != null) {
+            final Object resolved = WeakTarget.resolve(target);
+            try {
+                return (boolean) handle.invokeExact(resolved);
+            } catch (Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+        }
+        return toBoolean(getRawValue(target));
+    }
+
+    static long toLong(Object value) {
+        return ((Number) ValueConverter.forType(Long.TYPE).convert(value)).longValue();
+    }
+
+    static int toInt(Object value) {
+        return ((Number) ValueConverter.forType(Integer.TYPE).convert(value)).intValue();
+    }
+
+    static double toDouble(Object value) {
+        return ((Number) ValueConverter.forType(Double.TYPE).convert(value)).doubleValue();
+    }
+
+    static boolean toBoolean(Object value) {
+        return (Boolean) ValueConverter.forType(Boolean.TYPE).convert(value);
+    }
+
+    /**
+     * Writes the property of given instance. Cached value of the property is dropped by its binding, see
+     * {@link PropertyBinding#setValue(Object)}.
+     *
+     * @param target The instance or its {@link WeakTarget}.
+     * @param val    The value sent by JMX client, it's converted to type of the property.
+     */
+    void setValue(Object target, Object val) throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+        MyPreconditions.checkArgument(setable);
+        final MethodHandle handle = unboundSetter;
+        if (handle != null) {
+            final Object resolved = WeakTarget.resolve(target);
+            try {
+                handle.invokeExact(resolved, val);
+            } catch (Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+            return;
+        }
+        if (fieldSetter) {
+            Setter.newSetter(target, field).set(val);
+            return;
+        }
+        MyPreconditions.checkNotNull(setter);
+        setter.setAccessible(true);
+        setter.invoke(WeakTarget.resolve(target), ValueConverter.forType(setter.getParameterTypes()[0]).convert(val));
+    }
+
+    /**
+     * Converts histograms and maps to their open types.
+     *
+     * @param obj                    The value as the getter returned it.
+     * @param compositeDataConverter Converter of composite map of the instance, <code>null</code> for other properties.
+     * @return Converted value or the value itself if it's not converted.
+     */
+    Object convert(Object obj, CompositeDataConverter compositeDataConverter) {
+        // the instanceof checks below are not free on the read path, plain values skip them
+        if (!isConverted()) return obj;
+        if (histogramUnit != null && obj instanceof LatencyHistogram) {
+            return ((LatencyHistogram) obj).toCompositeData(histogramUnit);
+        }
+        if (obj instanceof Map) {
+            if (tabularDataConverter != null) return tabularDataConverter.convert((Map) obj);
+            if (compositeMap) {
+                // composite maps are read through their bindings (see isBound()), each has its own layout
+                MyPreconditions.checkNotNull(compositeDataConverter);
+                return compositeDataConverter.convert((Map) obj);
+            }
+        }
+        return obj;
+    }
+
+    /**
+     * Creates descriptions of operations generated for this property.
+     *
+     * @return The operations, empty list for most of the properties.
+     */
+    List<? extends PropertyOperation> createOperations() {
+        if (tabularDataConverter != null) {
+            return tabularDataConverter.operations(name);
+        }
+        if (field != null && Adders.isAdder(field.getType())) {
+            return Collections.singletonList(new PropertyOperation.Reset(name));
+        }
+        return Collections.emptyList();
+    }
+
+    @Override
+    public String toString() {
+        return "PropertyDescriptor{" + "name=" + name + ", type=" + type + ", field=" + field + ", getter=" + getter + ", setter=" + setter + '}';
+    }
+}
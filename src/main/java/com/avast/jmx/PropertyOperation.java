@@ -0,0 +1,98 @@
+package com.avast.jmx;
+
+import javax.management.MBeanException;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import java.lang.reflect.Field;
+
+/**
+ * Operation generated for a property (e.g. paging of {@link MapExposure#TABULAR} map or reset of a striped counter).
+ * It's described once per class and invoked on the property of the instance.
+ *
+ * @author Jan Kolena - kolena@avast.com
+ */
+abstract class PropertyOperation {//package visibility
+    private final String name;
+    private final String property;
+    private final String[] signature;
+    private final MBeanOperationInfo info;
+
+    /**
+     * @param property    Name of the property.
+     * @param suffix      Suffix appended to the property name to get name of the operation.
+     * @param description Description of the operation.
+     * @param parameters  Parameters of the operation.
+     * @param returnType  Name of the returned type.
+     */
+    PropertyOperation(String property, String suffix, String description, MBeanParameterInfo[] parameters, String returnType) {
+        this.name = property + suffix;
+        this.property = property;
+        this.signature = new String[parameters.length];
+        for (int i = 0; i < signature.length; i++) {
+            signature[i] = parameters[i].getType();
+        }
+        this.info = new MBeanOperationInfo(name, description, parameters, returnType, "void".equals(returnType) ? MBeanOperationInfo.ACTION : MBeanOperationInfo.INFO);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    String getProperty() {
+        return property;
+    }
+
+    MBeanOperationInfo getInfo() {
+        return info;
+    }
+
+    /**
+     * Invokes the operation.
+     *
+     * @param prop      The property (shared by all instances of the class).
+     * @param binding   Binding of the property of the instance, <code>null</code> if the property is not bound.
+     * @param target    The instance the operation is invoked on or its {@link WeakTarget}.
+     * @param params    Parameters sent by JMX client.
+     * @param signature Signature sent by JMX client.
+     */
+    Object invoke(PropertyDescriptor prop, PropertyBinding binding, Object target, Object[] params, String[] signature) throws MBeanException {
+        if (!AdapterSupport.signatureMatches(signature, this.signature)) {
+            throw new IllegalArgumentException("Operation " + name + " not found!");
+        }
+        try {
+            return invoke(prop, binding, target, params);
+        } catch (Exception ex) {
+            throw new MBeanException(ex, "Error invoking operation");
+        }
+    }
+
+    /**
+     * Invokes the operation, parameters already match the signature.
+     */
+    protected abstract Object invoke(PropertyDescriptor prop, PropertyBinding binding, Object target, Object[] params) throws Exception;
+
+    /**
+     * @return Value of the property as the getter returns it, read through the binding if there is one (so cached and
+     * guarded getters are not called directly).
+     */
+    static Object rawValue(PropertyDescriptor prop, PropertyBinding binding, Object target) throws Exception {
+        return binding != null ? binding.getRawValue() : prop.getRawValue(target);
+    }
+
+    /**
+     * Resets striped counter (see {@link Adders}) to its initial value.
+     */
+    static final class Reset extends PropertyOperation {
+        Reset(String property) {
+            super(property, "Reset", "Resets " + property, new MBeanParameterInfo[0], "void");
+        }
+
+        @Override
+        protected Object invoke(PropertyDescriptor prop, PropertyBinding binding, Object target, Object[] params) throws Exception {
+            final Field field = prop.getField();
+            field.setAccessible(true);
+            Adders.reset(field.get(WeakTarget.resolve(target)));
+            return null;
+        }
+    }
+}
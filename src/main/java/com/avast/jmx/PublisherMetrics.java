@@ -0,0 +1,202 @@
+package com.avast.jmx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.*;
+import javax.management.openmbean.CompositeData;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metrics of the publisher itself - number of beans and names, time spent by scanning classes, building
+ * {@link MBeanInfo} and registering beans, failed registrations. One instance per JVM, registered as
+ * <code>com.avast.jmx:type=jmx-publisher</code> to every {@link MBeanServer} the first {@link MyDynamicBean} is
+ * registered with.
+ * <p/>
+ * Everything is either a counter updated next to an operation which is expensive anyway, or computed when it's read.
+ *
+ * @author Jan Kolena - kolena@avast.com
+ */
+final class PublisherMetrics implements DynamicMBean {//package visibility
+    private static final Logger LOGGER = LoggerFactory.getLogger(PublisherMetrics.class);
+
+    static final String NAME = "com.avast.jmx:type=jmx-publisher";
+
+    static final PublisherMetrics INSTANCE = new PublisherMetrics();
+
+    private static final String LIVE_BEANS = "liveBeans";
+    private static final String REGISTERED_BEANS = "registeredBeans";
+    private static final String UNIQUE_NAMES = "uniqueNames";
+    private static final String FAILED_REGISTRATIONS = "failedRegistrations";
+    private static final String SCAN_TIME = "scanTime";
+    private static final String INFO_BUILD_TIME = "infoBuildTime";
+    private static final String REGISTRATION_TIME = "registrationTime";
+    private static final String CACHE_HITS = "cacheHits";
+    private static final String CACHE_MISSES = "cacheMisses";
+
+    // weak references to the live beans have to stay reachable until the beans are collected and the references enqueued
+    private final Set<Reference<MyDynamicBean>> liveBeans = Collections.newSetFromMap(new ConcurrentHashMap<Reference<MyDynamicBean>, Boolean>());
+    private final ReferenceQueue<MyDynamicBean> collectedBeans = new ReferenceQueue<>();
+    private final AtomicInteger liveBeansCount = new AtomicInteger();
+    private final AtomicInteger registeredBeans = new AtomicInteger();
+    private final AtomicLong failedRegistrations = new AtomicLong();
+    // rarely recorded, one stripe is enough
+    private final LatencyHistogram scanTime = new LatencyHistogram(1);
+    private final LatencyHistogram infoBuildTime = new LatencyHistogram(1);
+    private final LatencyHistogram registrationTime = new LatencyHistogram(1);
+    private final MBeanInfo info;
+
+    private PublisherMetrics() {
+        this.info = new MBeanInfo(getClass().getName(), "Metrics of jmx-publisher",
+                new MBeanAttributeInfo[]{
+                        attribute(LIVE_BEANS, "int", "Number of MyDynamicBean instances which were neither unregistered nor garbage collected yet"),
+                        attribute(REGISTERED_BEANS, "int", "Number of beans registered (and not unregistered) by MyDynamicBean#register()"),
+                        attribute(UNIQUE_NAMES, "int", "Number of distinct bean names in use (without counters)"),
+                        attribute(FAILED_REGISTRATIONS, "long", "Number of failures of MyDynamicBean#exposeAndRegisterSilently"),
+                        attribute(SCAN_TIME, CompositeData.class.getName(), "Scanning of annotated classes (us), once per class"),
+                        attribute(INFO_BUILD_TIME, CompositeData.class.getName(), "Building MBeanInfo of new beans (us), includes scanning of new classes"),
+                        attribute(REGISTRATION_TIME, CompositeData.class.getName(), "MBeanServer#registerMBean (us)"),
+                        attribute(CACHE_HITS, "long", "Reads of cached properties (JMXProperty#cacheMillis) served from the cache, including stale values"),
+                        attribute(CACHE_MISSES, "long", "Reads of cached properties which had to compute the value")
+                },
+                BeanMetadata.CONSTRUCTORS,
+                new MBeanOperationInfo[0],
+                new MBeanNotificationInfo[0]);
+    }
+
+    private static MBeanAttributeInfo attribute(String name, String type, String description) {
+        return new MBeanAttributeInfo(name, type, description, true, false, false);
+    }
+
+    /**
+     * Registers the metrics to the server unless they are there already.
+     */
+    static void registerWith(MBeanServer server) {
+        try {
+            final ObjectName name = new ObjectName(NAME);
+            if (!server.isRegistered(name)) server.registerMBean(INSTANCE, name);
+        } catch (InstanceAlreadyExistsException e) {
+            // registered concurrently
+        } catch (JMException e) {
+            LOGGER.warn("Unable to register metrics of jmx-publisher", e);
+        }
+    }
+
+    /**
+     * Counts the bean as live until it's unregistered or garbage collected.
+     *
+     * @return Token of the bean for {@link #beanDropped(Reference)}.
+     */
+    Reference<MyDynamicBean> beanCreated(MyDynamicBean bean) {
+        expungeCollectedBeans();
+        final Reference<MyDynamicBean> live = new WeakReference<>(bean, collectedBeans);
+        liveBeans.add(live);
+        liveBeansCount.incrementAndGet();
+        return live;
+    }
+
+    void infoBuilt(long startNanos) {
+        infoBuildTime.recordSince(startNanos);
+    }
+
+    void classScanned(long startNanos) {
+        scanTime.recordSince(startNanos);
+    }
+
+    void beanRegistered(long startNanos) {
+        registrationTime.recordSince(startNanos);
+        registeredBeans.incrementAndGet();
+    }
+
+    void beanUnregistered() {
+        registeredBeans.decrementAndGet();
+    }
+
+    /**
+     * Stops counting the bean as live (it was unregistered or garbage collected).
+     *
+     * @param live Token returned by {@link #beanCreated(MyDynamicBean)}.
+     */
+    void beanDropped(Reference<?> live) {
+        if (liveBeans.remove(live)) liveBeansCount.decrementAndGet();
+    }
+
+    private void expungeCollectedBeans() {
+        for (Reference<?> collected; (collected = collectedBeans.poll()) != null; ) {
+            beanDropped(collected);
+        }
+    }
+
+    void registrationFailed() {
+        failedRegistrations.incrementAndGet();
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException, MBeanException, ReflectionException {
+        MyPreconditions.checkNotNull(attribute);
+        switch (attribute) {
+            case LIVE_BEANS:
+                expungeCollectedBeans();
+                return liveBeansCount.get();
+            case REGISTERED_BEANS:
+                return registeredBeans.get();
+            case UNIQUE_NAMES:
+                return MyDynamicBean.getUniqueNamesCount();
+            case FAILED_REGISTRATIONS:
+                return failedRegistrations.get();
+            case SCAN_TIME:
+                return scanTime.toCompositeData(TimeUnit.MICROSECONDS);
+            case INFO_BUILD_TIME:
+                return infoBuildTime.toCompositeData(TimeUnit.MICROSECONDS);
+            case REGISTRATION_TIME:
+                return registrationTime.toCompositeData(TimeUnit.MICROSECONDS);
+            case CACHE_HITS:
+                return CachedValue.getHits();
+            case CACHE_MISSES:
+                return CachedValue.getMisses();
+            default:
+                throw new AttributeNotFoundException("Attribute " + attribute + " not found");
+        }
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException, InvalidAttributeValueException, MBeanException, ReflectionException {
+        throw new AttributeNotFoundException("Attribute " + attribute.getName() + " is not setable");
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        final AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            try {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (JMException e) {
+                LOGGER.debug("Skipping attribute " + attribute, e);
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws MBeanException, ReflectionException {
+        throw new IllegalArgumentException("Operation " + actionName + " not found!");
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        return info;
+    }
+}
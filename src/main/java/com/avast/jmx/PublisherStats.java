@@ -0,0 +1,235 @@
+package com.avast.jmx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.*;
+import javax.management.openmbean.*;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Companion MBean of one {@link MyDynamicBean} with statistics of its attributes and operations (see
+ * {@link BeanOptions#withStats(boolean)}). It's registered as <code>&lt;name of the bean&gt;,stats=publisher</code> and
+ * has tables <code>attributeReads</code>, <code>attributeWrites</code> and <code>operations</code> with one row per
+ * attribute (operation) and operation <code>reset</code>.
+ * <p/>
+ * Allocated bytes are measured by <code>com.sun.management.ThreadMXBean#getThreadAllocatedBytes</code>; they are zero
+ * on JVMs which do not support it.
+ *
+ * @author Jan Kolena - kolena@avast.com
+ */
+final class PublisherStats implements DynamicMBean {//package visibility
+    private static final Logger LOGGER = LoggerFactory.getLogger(PublisherStats.class);
+
+    static final String NAME_SUFFIX = ",stats=publisher";
+
+    private static final String READS = "attributeReads";
+    private static final String WRITES = "attributeWrites";
+    private static final String OPERATIONS = "operations";
+    private static final String RESET = "reset";
+
+    private static final String[] ITEMS = {"name", "calls", "errors", "totalNanos", "maxNanos", "meanNanos", "allocatedBytes"};
+    private static final CompositeType ROW_TYPE;
+    private static final TabularType TABLE_TYPE;
+
+    static {
+        try {
+            ROW_TYPE = new CompositeType(CallStats.class.getName(), "Calls of one attribute or operation", ITEMS,
+                    new String[]{"Name", "Number of calls", "Number of failed calls", "Total time (ns)", "Maximal time (ns)", "Mean time (ns)", "Allocated bytes"},
+                    new OpenType<?>[]{SimpleType.STRING, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG, SimpleType.DOUBLE, SimpleType.LONG});
+            TABLE_TYPE = new TabularType(PublisherStats.class.getName(), "Calls by name", ROW_TYPE, new String[]{"name"});
+        } catch (OpenDataException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * <code>()allocatedBytes</code> of the current thread or <code>null</code> if it's not supported.
+     */
+    private static final MethodHandle ALLOCATED_BYTES = allocatedBytesHandle();
+
+    private final ConcurrentMap<String, CallStats> reads = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CallStats> writes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CallStats> operations = new ConcurrentHashMap<>();
+    private final MBeanInfo info;
+
+    /**
+     * @param name     Name of the published bean.
+     * @param beanInfo Info of the published bean, statistics of its attributes and operations are created in advance.
+     */
+    PublisherStats(String name, MBeanInfo beanInfo) {
+        for (MBeanAttributeInfo attribute : beanInfo.getAttributes()) {
+            if (attribute.isReadable()) reads.put(attribute.getName(), new CallStats());
+            if (attribute.isWritable()) writes.put(attribute.getName(), new CallStats());
+        }
+        for (MBeanOperationInfo operation : beanInfo.getOperations()) {
+            operations.put(operation.getName(), new CallStats());
+        }
+        this.info = new MBeanInfo(getClass().getName(), "Statistics of calls of " + name,
+                new MBeanAttributeInfo[]{
+                        table(READS, "Reads of attributes"),
+                        table(WRITES, "Writes of attributes"),
+                        table(OPERATIONS, "Invocations of operations")
+                },
+                BeanMetadata.CONSTRUCTORS,
+                new MBeanOperationInfo[]{
+                        new MBeanOperationInfo(RESET, "Clears all the statistics", new MBeanParameterInfo[0], Void.TYPE.getName(), MBeanOperationInfo.ACTION)
+                },
+                new MBeanNotificationInfo[0]);
+    }
+
+    private static MBeanAttributeInfo table(String name, String description) {
+        return new MBeanAttributeInfo(name, TabularData.class.getName(), description, true, false, false);
+    }
+
+    private static MethodHandle allocatedBytesHandle() {
+        try {
+            final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            final Class<?> extended = Class.forName("com.sun.management.ThreadMXBean");
+            if (!extended.isInstance(threads)) return null;
+            try {
+                // Java 14+, much cheaper than looking the thread up by id
+                return MethodHandles.publicLookup().findVirtual(extended, "getCurrentThreadAllocatedBytes", MethodType.methodType(long.class)).bindTo(threads);
+            } catch (NoSuchMethodException e) {
+                final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+                final MethodHandle byId = lookup.findVirtual(extended, "getThreadAllocatedBytes", MethodType.methodType(long.class, long.class)).bindTo(threads);
+                final MethodHandle currentThreadId = MethodHandles.filterReturnValue(
+                        lookup.findStatic(Thread.class, "currentThread", MethodType.methodType(Thread.class)),
+                        lookup.findVirtual(Thread.class, "getId", MethodType.methodType(long.class)));
+                return MethodHandles.foldArguments(byId, currentThreadId);
+            }
+        } catch (Exception | LinkageError e) {
+            LOGGER.debug("Allocated bytes are not supported", e);
+            return null;
+        }
+    }
+
+    /**
+     * @return Bytes allocated by the current thread so far, negative if it's not known.
+     */
+    static long allocatedBytes() {
+        final MethodHandle handle = ALLOCATED_BYTES;
+        if (handle == null) return -1;
+        try {
+            return (long) handle.invokeExact();
+        } catch (Throwable e) {
+            return -1;
+        }
+    }
+
+    void recordRead(String attribute, long startNanos, long allocatedBefore, boolean error) {
+        record(reads, attribute, startNanos, allocatedBefore, error);
+    }
+
+    void recordWrite(String attribute, long startNanos, long allocatedBefore, boolean error) {
+        record(writes, attribute, startNanos, allocatedBefore, error);
+    }
+
+    void recordInvoke(String operation, long startNanos, long allocatedBefore, boolean error) {
+        record(operations, operation, startNanos, allocatedBefore, error);
+    }
+
+    private static void record(ConcurrentMap<String, CallStats> stats, String name, long startNanos, long allocatedBefore, boolean error) {
+        final long nanos = System.nanoTime() - startNanos;
+        final long allocated = allocatedBefore < 0 ? -1 : allocatedBytes() - allocatedBefore;
+        if (name == null) return;
+
+        CallStats callStats = stats.get(name);
+        if (callStats == null) {
+            // unknown names are tracked only if they exist (e.g. keys of flattened maps), not to fill the map by typos
+            if (error) return;
+            final CallStats created = new CallStats();
+            callStats = stats.putIfAbsent(name, created);
+            if (callStats == null) callStats = created;
+        }
+        callStats.record(nanos, allocated, error);
+    }
+
+    void reset() {
+        reset(reads);
+        reset(writes);
+        reset(operations);
+    }
+
+    private static void reset(Map<String, CallStats> stats) {
+        for (CallStats callStats : stats.values()) {
+            callStats.reset();
+        }
+    }
+
+    private static TabularData toTable(Map<String, CallStats> stats) {
+        final TabularDataSupport table = new TabularDataSupport(TABLE_TYPE);
+        for (Map.Entry<String, CallStats> e : stats.entrySet()) {
+            final CallStats s = e.getValue();
+            final long calls = s.getCalls();
+            final long total = s.getTotalNanos();
+            try {
+                table.put(new CompositeDataSupport(ROW_TYPE, ITEMS, new Object[]{
+                        e.getKey(), calls, s.getErrors(), total, s.getMaxNanos(), calls == 0 ? 0.0 : (double) total / calls, s.getAllocatedBytes()
+                }));
+            } catch (OpenDataException ex) {
+                LOGGER.debug("Skipping statistics of " + e.getKey(), ex);
+            }
+        }
+        return table;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException, MBeanException, ReflectionException {
+        MyPreconditions.checkNotNull(attribute);
+        switch (attribute) {
+            case READS:
+                return toTable(reads);
+            case WRITES:
+                return toTable(writes);
+            case OPERATIONS:
+                return toTable(operations);
+            default:
+                throw new AttributeNotFoundException("Attribute " + attribute + " not found");
+        }
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException, InvalidAttributeValueException, MBeanException, ReflectionException {
+        throw new AttributeNotFoundException("Attribute " + attribute.getName() + " is not setable");
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        final AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            try {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (JMException e) {
+                LOGGER.debug("Skipping attribute " + attribute, e);
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws MBeanException, ReflectionException {
+        if (RESET.equals(actionName) && (signature == null || signature.length == 0)) {
+            reset();
+            return null;
+        }
+        throw new IllegalArgumentException("Operation " + actionName + " not found!");
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        return info;
+    }
+}
@@ -0,0 +1,49 @@
+package com.avast.jmx;
+
+/**
+ * Result of registration (unregistration) of one object by {@link MyDynamicBean#registerAll(java.util.Collection)} or
+ * {@link MyDynamicBean#unregisterAll(java.util.Collection)}.
+ *
+ * @author Jan Kolena - kolena@avast.com
+ */
+public final class RegistrationResult {
+    private final Object object;
+    private final MyDynamicBean bean;
+    private final Exception error;
+
+    RegistrationResult(Object object, MyDynamicBean bean, Exception error) {//package visibility
+        this.object = object;
+        this.bean = bean;
+        this.error = error;
+    }
+
+    /**
+     * @return The exposed object.
+     */
+    public Object getObject() {
+        return object;
+    }
+
+    /**
+     * @return The bean, <code>null</code> if it could not be created.
+     */
+    public MyDynamicBean getBean() {
+        return bean;
+    }
+
+    /**
+     * @return Cause of the failure, <code>null</code> on success.
+     */
+    public Exception getError() {
+        return error;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    @Override
+    public String toString() {
+        return "RegistrationResult{" + "object=" + object + ", error=" + error + '}';
+    }
+}
@@ -1,8 +1,12 @@
 package com.avast.jmx;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 
 /**
  * @author Jan Kolena (originally: Tomas Rehak)
@@ -24,9 +28,15 @@ public class Setter {
         final Class<?> type = f.getType();
         if (type.getSimpleName().startsWith("Atomic")) {
             setAtomic(val);
+        } else if (Adders.isAdder(type)) {
+            try {
+                Adders.set(f.get(WeakTarget.resolve(obj)), val);
+            } catch (IllegalAccessException e) {
+                throw new InvocationTargetException(e);
+            }
         } else {
             try {
-                f.set(obj, JmxHelper.convertValue(val.toString(), type));
+                f.set(WeakTarget.resolve(obj), ValueConverter.forType(type).convert(val));
             } catch (IllegalAccessException e) {
                 throw new InvocationTargetException(e);
             }
@@ -38,9 +48,51 @@ public class Setter {
 
         try {
             final Method method = f.getType().getMethod("set", cl);
-            method.invoke(f.get(obj), JmxHelper.convertValue(val.toString(), cl));
+            method.invoke(f.get(WeakTarget.resolve(obj)), ValueConverter.forType(cl).convert(val));
         } catch (NoSuchMethodException | IllegalAccessException e) {
             throw new InvocationTargetException(e);
         }
     }
+
+    Object getObject() {
+        return obj;
+    }
+
+    /**
+     * Creates handle writing the field directly, with the same semantics as {@link #set(Object)} - the value is converted
+     * by {@link ValueConverter} of the field type and atomic types are set by their own <code>set</code> method. The
+     * handle is not bound to {@link #getObject()}, it takes the object owning the field and the value.
+     *
+     * @return Handle taking the object and the value, returning nothing.
+     */
+    MethodHandle toMethodHandle() throws IllegalAccessException, NoSuchMethodException {
+        final Class<?> type = f.getType();
+        if (type.getSimpleName().startsWith("Atomic")) {
+            final Class<?> basic = JmxHelper.getBasicTypeForAtomic(f);
+            final MethodHandle set = Accessors.LOOKUP.unreflect(type.getMethod("set", basic));
+            final MethodHandle handle = MethodHandles.filterArguments(set, 0, fieldGetter());
+            return MethodHandles.filterArguments(handle, 1, ValueConverter.forType(basic).toMethodHandle());
+        }
+        if (Adders.isAdder(type)) {
+            final MethodHandle set = Accessors.LOOKUP.findStatic(Adders.class, "set", MethodType.methodType(void.class, Object.class, Object.class));
+            return MethodHandles.filterArguments(set, 0, fieldGetter().asType(MethodType.methodType(Object.class, Object.class)));
+        }
+
+        MethodHandle handle = Accessors.LOOKUP.unreflectSetter(f);
+        if (Modifier.isStatic(f.getModifiers())) {
+            handle = MethodHandles.dropArguments(handle, 0, Object.class);
+        }
+        return MethodHandles.filterArguments(handle, 1, ValueConverter.forType(type).toMethodHandle());
+    }
+
+    /**
+     * @return Handle reading the field, <code>(Object)fieldType</code>.
+     */
+    private MethodHandle fieldGetter() throws IllegalAccessException {
+        final MethodHandle getter = Accessors.LOOKUP.unreflectGetter(f);
+        if (Modifier.isStatic(f.getModifiers())) {
+            return MethodHandles.dropArguments(getter, 0, Object.class);
+        }
+        return getter.asType(getter.type().changeParameterType(0, Object.class));
+    }
 }
@@ -0,0 +1,262 @@
+package com.avast.jmx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanParameterInfo;
+import javax.management.openmbean.*;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.*;
+
+/**
+ * Publishes values of one {@link Map} property as {@link TabularData} (see {@link MapExposure#TABULAR}) and implements
+ * the paging operations of the property. Rows have <code>key</code> (string) and <code>value</code> items, the type of
+ * values is given by the generic type of the map (values of unknown types are published as strings).
+ * <p/>
+ * The instance is immutable, it's shared by all instances of the class.
+ *
+ * @author Jan Kolena - kolena@avast.com
+ */
+final class TabularDataConverter {//package visibility
+    private static final Logger LOGGER = LoggerFactory.getLogger(TabularDataConverter.class);
+
+    static final String KEY = "key";
+    static final String VALUE = "value";
+    private static final String[] ITEMS = {KEY, VALUE};
+
+    /**
+     * Operations generated for every tabular property, their name is the name of the property with the suffix.
+     */
+    enum Kind {
+        PAGE("Page", "Entries of %s from offset, at most limit of them",
+                new MBeanParameterInfo("offset", "int", "Index of the first entry"),
+                new MBeanParameterInfo("limit", "int", "Maximum number of entries")),
+        GET("Get", "Value of one key of %s",
+                new MBeanParameterInfo("key", String.class.getName(), "The key")),
+        TOP_K("TopK", "Entries of %s with the highest values, descending",
+                new MBeanParameterInfo("k", "int", "Number of entries"));
+
+        private final String suffix;
+        private final String description;
+        private final MBeanParameterInfo[] parameters;
+
+        Kind(String suffix, String description, MBeanParameterInfo... parameters) {
+            this.suffix = suffix;
+            this.description = description;
+            this.parameters = parameters;
+        }
+    }
+
+    private final String name;
+    private final int pageSize;
+    private final OpenType<?> valueType;
+    private final boolean stringKeys;
+    private final CompositeType rowType;
+    private final TabularType tabularType;
+
+    /**
+     * @param name        Name of the property.
+     * @param description Description of the property.
+     * @param mapType     Generic type of the map (field type or return type of the getter).
+     * @param pageSize    Maximum number of rows returned at once.
+     * @throws IllegalArgumentException If the property cannot be published as a table.
+     */
+    TabularDataConverter(String name, String description, Type mapType, int pageSize) {
+        MyPreconditions.checkArgument(pageSize > 0, "Page size of " + name + " must be positive");
+        this.name = name;
+        this.pageSize = pageSize;
+        this.valueType = valueType(mapType);
+        this.stringKeys = hasStringKeys(mapType);
+        try {
+            this.rowType = new CompositeType(name, "Entry of " + description, ITEMS, ITEMS, new OpenType<?>[]{SimpleType.STRING, valueType});
+            this.tabularType = new TabularType(name, "TabularData wrapper-" + description, rowType, new String[]{KEY});
+        } catch (OpenDataException e) {
+            throw new IllegalArgumentException("Unable to publish map " + name + " as a table", e);
+        }
+    }
+
+    private static OpenType<?> valueType(Type mapType) {
+        if (mapType instanceof ParameterizedType) {
+            final Type[] arguments = ((ParameterizedType) mapType).getActualTypeArguments();
+            if (arguments.length == 2 && arguments[1] instanceof Class) {
+                final SimpleType<?> type = CompositeDataConverter.simpleTypeOf((Class<?>) arguments[1]);
+                if (type != null) return type;
+            }
+        }
+        return SimpleType.STRING;
+    }
+
+    private static boolean hasStringKeys(Type mapType) {
+        if (!(mapType instanceof ParameterizedType)) return false;
+        final Type[] arguments = ((ParameterizedType) mapType).getActualTypeArguments();
+        return arguments.length == 2 && arguments[0] == String.class;
+    }
+
+    /**
+     * @return Value of the attribute - the first page of the map, <code>null</code> for <code>null</code> map.
+     */
+    Object convert(Map<?, ?> map) {
+        return map == null ? null : page(map, 0, pageSize);
+    }
+
+    /**
+     * @return At most <code>limit</code> (and {@link JMXProperty#pageSize()}) entries starting at <code>offset</code>,
+     * in the iteration order of the map.
+     */
+    TabularData page(Map<?, ?> map, int offset, int limit) {
+        MyPreconditions.checkArgument(offset >= 0 && limit >= 0, "Offset and limit must not be negative");
+        final int count = Math.min(limit, pageSize);
+        final TabularDataSupport table = new TabularDataSupport(tabularType);
+        if (map == null || count == 0) return table;
+
+        int i = 0;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (i++ < offset) continue;
+            add(table, entry.getKey(), entry.getValue());
+            if (table.size() == count) break;
+        }
+        return table;
+    }
+
+    /**
+     * Maps with <code>String</code> keys are looked up directly, other keys are compared by their <code>toString</code>
+     * (the map is iterated).
+     *
+     * @return Value of the key (converted to the value type), <code>null</code> if there is no such key.
+     */
+    Object get(Map<?, ?> map, String key) {
+        if (map == null || key == null) return null;
+        Object value = null;
+        try {
+            value = map.get(key);
+        } catch (ClassCastException e) {
+            // sorted map with keys of different type, find it below
+        }
+        if (value == null && !stringKeys) {
+            // keys which are not strings are published by their toString
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                if (key.equals(String.valueOf(entry.getKey()))) {
+                    value = entry.getValue();
+                    break;
+                }
+            }
+        }
+        return value(value);
+    }
+
+    /**
+     * Selects entries with the highest numeric values using heap of size <code>k</code>, so the map is never sorted.
+     * Entries with values which are not numbers are skipped.
+     *
+     * @return At most <code>k</code> (and {@link JMXProperty#pageSize()}) entries, the highest value first.
+     */
+    TabularData topK(Map<?, ?> map, int k) {
+        MyPreconditions.checkArgument(k >= 0, "K must not be negative");
+        final int count = Math.min(k, pageSize);
+        final TabularDataSupport table = new TabularDataSupport(tabularType);
+        if (map == null || count == 0) return table;
+
+        final PriorityQueue<Entry> heap = new PriorityQueue<>(count);
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            final Object value = CompositeDataConverter.simplifyValue(entry.getValue());
+            if (!(value instanceof Number)) continue;
+
+            final Number number = (Number) value;
+            if (heap.size() < count) {
+                heap.add(new Entry(entry.getKey(), number));
+            } else if (compare(number, heap.peek().value) > 0) {
+                heap.poll();
+                heap.add(new Entry(entry.getKey(), number));
+            }
+        }
+
+        final Entry[] entries = heap.toArray(new Entry[heap.size()]);
+        Arrays.sort(entries, Collections.reverseOrder());
+        for (Entry entry : entries) {
+            add(table, entry.key, entry.value);
+        }
+        return table;
+    }
+
+    private void add(TabularDataSupport table, Object key, Object value) {
+        try {
+            table.put(new CompositeDataSupport(rowType, ITEMS, new Object[]{String.valueOf(key), value(value)}));
+        } catch (OpenDataException | KeyAlreadyExistsException e) {
+            LOGGER.debug("Skipping entry " + key + " of " + name, e);
+        }
+    }
+
+    private Object value(Object value) {
+        final Object simple = CompositeDataConverter.simplifyValue(value);
+        if (simple == null || valueType.isValue(simple)) return simple;
+        return valueType == SimpleType.STRING ? simple.toString() : null;
+    }
+
+    private static int compare(Number a, Number b) {
+        if (isIntegral(a) && isIntegral(b)) return Long.compare(a.longValue(), b.longValue());
+        return Double.compare(a.doubleValue(), b.doubleValue());
+    }
+
+    private static boolean isIntegral(Number n) {
+        return n instanceof Long || n instanceof Integer || n instanceof Short || n instanceof Byte;
+    }
+
+    /**
+     * Creates descriptions of operations of the property.
+     *
+     * @param property Name of the property.
+     */
+    List<Operation> operations(String property) {
+        final List<Operation> operations = new ArrayList<>(Kind.values().length);
+        for (Kind kind : Kind.values()) {
+            operations.add(new Operation(property, kind, kind == Kind.GET ? valueType.getClassName() : TabularData.class.getName()));
+        }
+        return operations;
+    }
+
+    Object invoke(Kind kind, Map<?, ?> map, Object[] params) {
+        switch (kind) {
+            case PAGE:
+                return page(map, (Integer) params[0], (Integer) params[1]);
+            case GET:
+                return get(map, (String) params[0]);
+            case TOP_K:
+                return topK(map, (Integer) params[0]);
+            default:
+                throw new IllegalArgumentException("Unknown operation " + kind);
+        }
+    }
+
+    /**
+     * One generated operation of a tabular property.
+     */
+    static final class Operation extends PropertyOperation {
+        private final Kind kind;
+
+        private Operation(String property, Kind kind, String returnType) {
+            super(property, kind.suffix, String.format(kind.description, property), kind.parameters, returnType);
+            this.kind = kind;
+        }
+
+        @Override
+        protected Object invoke(PropertyDescriptor prop, PropertyBinding binding, Object target, Object[] params) throws Exception {
+            return prop.getTabularDataConverter().invoke(kind, (Map<?, ?>) rawValue(prop, binding, target), params);
+        }
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+        private final Object key;
+        private final Number value;
+
+        private Entry(Object key, Number value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public int compareTo(Entry o) {
+            return compare(value, o.value);
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package com.avast.jmx;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Converts values sent by JMX client to the type of the written property. The converter is resolved once per type (and
+ * compiled into the setters, see {@link Setter#toMethodHandle()}), so writing does not look anything up:
+ * <ul>
+ * <li>value of the right type is used as it is</li>
+ * <li>numbers are widened (<code>Integer</code> to <code>long</code>, any number to <code>double</code>...); integral
+ * numbers are narrowed only if they fit</li>
+ * <li>only <code>String</code> is parsed (like {@link JmxHelper#convertValue(String, Class)} does)</li>
+ * <li>enums are parsed by name, <code>BigDecimal</code> and <code>BigInteger</code> from numbers or strings,
+ * <code>java.time.Duration</code> from ISO-8601 strings (<code>PT30S</code>)</li>
+ * <li>arrays from arrays (element by element) or from comma separated strings</li>
+ * </ul>
+ * Other values are converted through their <code>toString()</code>, as before.
+ *
+ * @author Jan Kolena - kolena@avast.com
+ */
+abstract class ValueConverter {//package visibility
+    private static final MethodType CONVERT_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final String DURATION = "java.time.Duration";
+
+    private static final ClassValue<ValueConverter> CACHE = new ClassValue<ValueConverter>() {
+        @Override
+        protected ValueConverter computeValue(Class<?> type) {
+            return create(type);
+        }
+    };
+
+    final Class<?> type;
+
+    private ValueConverter(Class<?> type) {
+        this.type = type;
+    }
+
+    /**
+     * @param type Type of the property.
+     * @return The (shared) converter.
+     */
+    static ValueConverter forType(Class<?> type) {
+        return CACHE.get(type);
+    }
+
+    /**
+     * @param value Value sent by JMX client.
+     * @return The value converted to the type (boxed for primitive types).
+     * @throws IllegalArgumentException If the value cannot be converted.
+     */
+    Object convert(Object value) {
+        if (value == null) {
+            if (type.isPrimitive()) throw new IllegalArgumentException("Null cannot be converted to " + type);
+            return null;
+        }
+        return doConvert(value);
+    }
+
+    protected abstract Object doConvert(Object value);
+
+    /**
+     * @return Handle of the conversion, <code>(Object)type</code>.
+     */
+    MethodHandle toMethodHandle() throws NoSuchMethodException, IllegalAccessException {
+        final MethodHandle convert = Accessors.LOOKUP.findVirtual(ValueConverter.class, "convert", CONVERT_TYPE).bindTo(this);
+        return convert.asType(MethodType.methodType(type, Object.class));
+    }
+
+    private static ValueConverter create(Class<?> type) {
+        final Class<?> primitive = primitive(type);
+        if (primitive == Integer.TYPE || primitive == Long.TYPE || primitive == Short.TYPE || primitive == Byte.TYPE) {
+            return new Integral(type, primitive);
+        }
+        if (primitive == Double.TYPE || primitive == Float.TYPE) return new Floating(type, primitive);
+        if (type == String.class) {
+            return new ValueConverter(type) {
+                @Override
+                protected Object doConvert(Object value) {
+                    return value.toString();
+                }
+            };
+        }
+        if (type.isEnum()) return new EnumConverter(type);
+        if (type == BigDecimal.class || type == BigInteger.class) return new BigNumber(type);
+        if (type.getName().equals(DURATION)) return new Parsed(type, "parse", CharSequence.class);
+        if (type.isArray()) return new ArrayConverter(type);
+        final Class<?> boxed = primitive == Boolean.TYPE ? Boolean.class : primitive == Character.TYPE ? Character.class : type;
+        return new ValueConverter(type) {
+            @Override
+            protected Object doConvert(Object value) {
+                return boxed.isInstance(value) ? value : parse(value.toString());
+            }
+        };
+    }
+
+    /**
+     * Converts value of a type the converter does not know through its <code>toString()</code>.
+     */
+    Object parse(String value) {
+        return JmxHelper.convertValue(value, type);
+    }
+
+    /**
+     * @return The primitive type of primitive or wrapper type, <code>null</code> for other types.
+     */
+    static Class<?> primitive(Class<?> type) {
+        if (type.isPrimitive()) return type;
+        if (type == Integer.class) return Integer.TYPE;
+        if (type == Long.class) return Long.TYPE;
+        if (type == Short.class) return Short.TYPE;
+        if (type == Byte.class) return Byte.TYPE;
+        if (type == Double.class) return Double.TYPE;
+        if (type == Float.class) return Float.TYPE;
+        if (type == Boolean.class) return Boolean.TYPE;
+        if (type == Character.class) return Character.TYPE;
+        return null;
+    }
+
+    private static boolean isIntegral(Object value) {
+        return value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte;
+    }
+
+    /**
+     * <code>int</code>, <code>long</code>, <code>short</code> and <code>byte</code> (primitive or boxed).
+     */
+    private static final class Integral extends ValueConverter {
+        private final Class<?> primitive;
+
+        private Integral(Class<?> type, Class<?> primitive) {
+            super(type);
+            this.primitive = primitive;
+        }
+
+        @Override
+        protected Object doConvert(Object value) {
+            if (!isIntegral(value)) return parse(value.toString());
+            final long l = ((Number) value).longValue();
+            if (primitive == Long.TYPE) return value instanceof Long ? value : (Object) l;
+            if (primitive == Integer.TYPE) {
+                if ((int) l != l) throw new IllegalArgumentException("Value " + value + " does not fit to int");
+                return value instanceof Integer ? value : (Object) (int) l;
+            }
+            if (primitive == Short.TYPE) {
+                if ((short) l != l) throw new IllegalArgumentException("Value " + value + " does not fit to short");
+                return value instanceof Short ? value : (Object) (short) l;
+            }
+            if ((byte) l != l) throw new IllegalArgumentException("Value " + value + " does not fit to byte");
+            return value instanceof Byte ? value : (Object) (byte) l;
+        }
+
+        @Override
+        Object parse(String value) {
+            if (primitive == Short.TYPE) return Short.parseShort(value);
+            return JmxHelper.convertValue(value, primitive);
+        }
+    }
+
+    /**
+     * <code>double</code> and <code>float</code> (primitive or boxed), any number is converted.
+     */
+    private static final class Floating extends ValueConverter {
+        private final boolean isDouble;
+
+        private Floating(Class<?> type, Class<?> primitive) {
+            super(type);
+            this.isDouble = primitive == Double.TYPE;
+        }
+
+        @Override
+        protected Object doConvert(Object value) {
+            if (value instanceof Number) {
+                if (isDouble) return value instanceof Double ? value : (Object) ((Number) value).doubleValue();
+                return value instanceof Float ? value : (Object) ((Number) value).floatValue();
+            }
+            return parse(value.toString());
+        }
+
+        @Override
+        Object parse(String value) {
+            return isDouble ? (Object) Double.parseDouble(value) : (Object) Float.parseFloat(value);
+        }
+    }
+
+    private static final class EnumConverter extends ValueConverter {
+        private EnumConverter(Class<?> type) {
+            super(type);
+        }
+
+        @Override
+        protected Object doConvert(Object value) {
+            return type.isInstance(value) ? value : parse(value.toString());
+        }
+
+        @Override
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Object parse(String value) {
+            return Enum.valueOf((Class<? extends Enum>) type, value.trim());
+        }
+    }
+
+    /**
+     * <code>BigDecimal</code> and <code>BigInteger</code>.
+     */
+    private static final class BigNumber extends ValueConverter {
+        private final boolean decimal;
+
+        private BigNumber(Class<?> type) {
+            super(type);
+            this.decimal = type == BigDecimal.class;
+        }
+
+        @Override
+        protected Object doConvert(Object value) {
+            if (type.isInstance(value)) return value;
+            if (isIntegral(value)) {
+                final long l = ((Number) value).longValue();
+                return decimal ? BigDecimal.valueOf(l) : BigInteger.valueOf(l);
+            }
+            if (decimal && value instanceof BigInteger) return new BigDecimal((BigInteger) value);
+            if (decimal && (value instanceof Double || value instanceof Float)) return BigDecimal.valueOf(((Number) value).doubleValue());
+            return parse(value.toString());
+        }
+
+        @Override
+        Object parse(String value) {
+            return decimal ? new BigDecimal(value.trim()) : new BigInteger(value.trim());
+        }
+    }
+
+    /**
+     * Type parsed by its static factory method, e.g. <code>Duration.parse(CharSequence)</code>. The type is used by
+     * name, so the library still runs on Java 7.
+     */
+    private static final class Parsed extends ValueConverter {
+        private final MethodHandle factory;
+
+        private Parsed(Class<?> type, String method, Class<?> parameter) {
+            super(type);
+            try {
+                this.factory = MethodHandles.publicLookup().findStatic(type, method, MethodType.methodType(type, parameter))
+                        .asType(MethodType.methodType(Object.class, String.class));
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                throw new IllegalArgumentException("Unsupported class: " + type, e);
+            }
+        }
+
+        @Override
+        protected Object doConvert(Object value) {
+            return type.isInstance(value) ? value : parse(value.toString());
+        }
+
+        @Override
+        Object parse(String value) {
+            try {
+                return (Object) factory.invokeExact(value.trim());
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalArgumentException("Unable to parse " + value + " to " + type, e);
+            }
+        }
+    }
+
+    /**
+     * Arrays, every element is converted by the converter of the component type.
+     */
+    private static final class ArrayConverter extends ValueConverter {
+        private final Class<?> component;
+        private final ValueConverter elements;
+
+        private ArrayConverter(Class<?> type) {
+            super(type);
+            this.component = type.getComponentType();
+            this.elements = forType(component);
+        }
+
+        @Override
+        protected Object doConvert(Object value) {
+            if (type.isInstance(value)) return value;
+            if (value.getClass().isArray()) {
+                final int length = Array.getLength(value);
+                final Object array = Array.newInstance(component, length);
+                for (int i = 0; i < length; i++) {
+                    Array.set(array, i, elements.convert(Array.get(value, i)));
+                }
+                return array;
+            }
+            return parse(value.toString());
+        }
+
+        @Override
+        Object parse(String value) {
+            final String trimmed = value.trim();
+            final String[] parts = trimmed.isEmpty() ? new String[0] : trimmed.split("\\s*,\\s*");
+            final Object array = Array.newInstance(component, parts.length);
+            for (int i = 0; i < parts.length; i++) {
+                Array.set(array, i, elements.convert(parts[i]));
+            }
+            return array;
+        }
+    }
+}
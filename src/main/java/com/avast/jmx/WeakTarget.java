@@ -0,0 +1,74 @@
+package com.avast.jmx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+/**
+ * Weak reference to the object of a bean, used instead of the object itself (by the bean, its properties, getters and
+ * setters) when the bean is created with {@link BeanOptions#withWeakTarget(boolean)}. Once the object is garbage
+ * collected, a shared daemon thread unregisters the bean and accessing it fails fast with
+ * {@link IllegalStateException}.
+ *
+ * @author Jan Kolena - kolena@avast.com
+ */
+final class WeakTarget extends WeakReference<Object> {//package visibility
+    private static final Logger LOGGER = LoggerFactory.getLogger(WeakTarget.class);
+
+    private static final ReferenceQueue<Object> QUEUE = new ReferenceQueue<>();
+    private static Thread cleaner;
+
+    private final Class<?> type;
+    private final MyDynamicBean bean;
+
+    WeakTarget(Object target, MyDynamicBean bean) {
+        super(target, QUEUE);
+        this.type = target.getClass();
+        this.bean = bean;
+        startCleaner();
+    }
+
+    /**
+     * @return Class of the object, available even after it's collected.
+     */
+    Class<?> getType() {
+        return type;
+    }
+
+    /**
+     * @param target Object or its {@link WeakTarget}.
+     * @return The object.
+     * @throws IllegalStateException If the object was garbage collected already.
+     */
+    static Object resolve(Object target) {
+        if (!(target instanceof WeakTarget)) return target;
+        final Object resolved = ((WeakTarget) target).get();
+        if (resolved == null) throw new IllegalStateException("Object of type " + ((WeakTarget) target).type.getName() + " was garbage collected");
+        return resolved;
+    }
+
+    private static synchronized void startCleaner() {
+        if (cleaner != null) return;
+        cleaner = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (true) {
+                    try {
+                        final Reference<?> collected = QUEUE.remove();
+                        ((WeakTarget) collected).bean.targetCollected();
+                    } catch (InterruptedException e) {
+                        return;
+                    } catch (Exception e) {
+                        // the cleaner must survive anything
+                        LOGGER.debug("Unable to unregister bean of collected object", e);
+                    }
+                }
+            }
+        }, "jmx-publisher-cleaner");
+        cleaner.setDaemon(true);
+        cleaner.start();
+    }
+}
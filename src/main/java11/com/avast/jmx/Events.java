@@ -0,0 +1,71 @@
+package com.avast.jmx;
+
+/**
+ * Java Flight Recorder events of attribute reads, writes and operation invocations (Java 11+ version of the class, see
+ * <code>src/main/java/com/avast/jmx/Events.java</code>). While the events are disabled, JFR leaves their methods empty
+ * and the JIT removes the event objects completely.
+ *
+ * @author Jan Kolena - kolena@avast.com
+ */
+abstract class Events {//package visibility
+    private Events() {
+    }
+
+    static Object beginRead() {
+        final JmxEvent.AttributeRead event = new JmxEvent.AttributeRead();
+        event.begin();
+        return event;
+    }
+
+    static void endRead(Object event, String bean, String attribute) {
+        final JmxEvent.AttributeRead e = (JmxEvent.AttributeRead) event;
+        e.end();
+        if (e.shouldCommit()) {
+            e.bean = bean;
+            e.attribute = attribute;
+            e.commit();
+        }
+    }
+
+    static void endRead(Object event, String bean, String[] attributes) {
+        final JmxEvent.AttributeRead e = (JmxEvent.AttributeRead) event;
+        e.end();
+        if (e.shouldCommit()) {
+            e.bean = bean;
+            e.attribute = attributes == null ? null : String.join(",", attributes);
+            e.commit();
+        }
+    }
+
+    static Object beginWrite() {
+        final JmxEvent.AttributeWrite event = new JmxEvent.AttributeWrite();
+        event.begin();
+        return event;
+    }
+
+    static void endWrite(Object event, String bean, String attribute) {
+        final JmxEvent.AttributeWrite e = (JmxEvent.AttributeWrite) event;
+        e.end();
+        if (e.shouldCommit()) {
+            e.bean = bean;
+            e.attribute = attribute;
+            e.commit();
+        }
+    }
+
+    static Object beginInvoke() {
+        final JmxEvent.OperationInvoke event = new JmxEvent.OperationInvoke();
+        event.begin();
+        return event;
+    }
+
+    static void endInvoke(Object event, String bean, String operation) {
+        final JmxEvent.OperationInvoke e = (JmxEvent.OperationInvoke) event;
+        e.end();
+        if (e.shouldCommit()) {
+            e.bean = bean;
+            e.operation = operation;
+            e.commit();
+        }
+    }
+}
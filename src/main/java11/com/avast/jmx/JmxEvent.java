@@ -0,0 +1,45 @@
+package com.avast.jmx;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder events emitted by {@link Events}. All of them are enabled with threshold 1 ms by default, both can be
+ * changed in the recording settings (<code>.jfc</code> file or Mission Control).
+ *
+ * @author Jan Kolena - kolena@avast.com
+ */
+@Category("JMX")
+@StackTrace(false)
+@Threshold("1 ms")
+abstract class JmxEvent extends Event {//package visibility
+    @Label("Bean")
+    @Description("Object name of the bean")
+    String bean;
+
+    @Name("com.avast.jmx.AttributeRead")
+    @Label("JMX Attribute Read")
+    static final class AttributeRead extends JmxEvent {
+        @Label("Attribute")
+        String attribute;
+    }
+
+    @Name("com.avast.jmx.AttributeWrite")
+    @Label("JMX Attribute Write")
+    static final class AttributeWrite extends JmxEvent {
+        @Label("Attribute")
+        String attribute;
+    }
+
+    @Name("com.avast.jmx.OperationInvoke")
+    @Label("JMX Operation Invocation")
+    static final class OperationInvoke extends JmxEvent {
+        @Label("Operation")
+        String operation;
+    }
+}
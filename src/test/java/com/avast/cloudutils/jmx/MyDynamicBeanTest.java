@@ -0,0 +1,1211 @@
+package com.avast.cloudutils.jmx;
+
+import com.avast.jmx.BeanOptions;
+import com.avast.jmx.DispatchMode;
+import com.avast.jmx.JMXCounter;
+import com.avast.jmx.JMXOperation;
+import com.avast.jmx.JMXProperty;
+import com.avast.jmx.JMXPropertyGetter;
+import com.avast.jmx.JMXPropertySetter;
+import com.avast.jmx.JMXTimer;
+import com.avast.jmx.LatencyHistogram;
+import com.avast.jmx.MapExposure;
+import com.avast.jmx.MyDynamicBean;
+import com.avast.jmx.RegistrationResult;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs against a private in-process MBeanServer, no remote JMX connection is needed.
+ */
+public class MyDynamicBeanTest extends TestCase {
+
+    @SuppressWarnings("unused")
+    public static class Monitored {
+        @JMXProperty(setable = true)
+        private long counter = 1;
+        @JMXProperty(setable = true)
+        private AtomicInteger atomicInt = new AtomicInteger(2);
+        @JMXProperty
+        private AtomicLong atomicLong = new AtomicLong(3);
+        @JMXProperty
+        private AtomicReference<String> atomicRef = new AtomicReference<>("ref");
+        @JMXProperty
+        private static String staticField = "static";
+        @JMXProperty(setable = true)
+        private int withAccessors = 4;
+        @JMXProperty
+        private Map<String, Object> stats = new LinkedHashMap<>();
+        @JMXProperty(mapExposure = MapExposure.TABULAR, pageSize = 3)
+        private Map<String, AtomicLong> perCustomer = new LinkedHashMap<>();
+        @JMXProperty(mapExposure = MapExposure.FLATTENED)
+        private Map<String, AtomicLong> requests = new ConcurrentHashMap<>();
+        @JMXTimer(description = "Request latency", unit = TimeUnit.MILLISECONDS)
+        private final LatencyHistogram latency = new LatencyHistogram();
+        @JMXCounter(description = "Served requests")
+        private final AtomicLong served = new AtomicLong();
+
+        @JMXPropertyGetter
+        public int getWithAccessors() {
+            return withAccessors * 10;
+        }
+
+        @JMXPropertySetter
+        public void setWithAccessors(int value) {
+            withAccessors = value + 1;
+        }
+
+        @JMXProperty(name = "computed")
+        public String computed() {
+            return "computed-" + counter;
+        }
+
+        @JMXProperty(name = "failing")
+        public String failing() {
+            throw new IllegalStateException("broken");
+        }
+
+        @JMXOperation
+        public long add(long a, int b) {
+            return a + b;
+        }
+    }
+
+    private MBeanServer server() {
+        return MBeanServerFactory.newMBeanServer();
+    }
+
+    private ObjectName register(MBeanServer server, Object obj) throws Exception {
+        return register(server, obj, BeanOptions.defaults());
+    }
+
+    private ObjectName register(MBeanServer server, Object obj, BeanOptions options) throws Exception {
+        final String name = "com.avast.cloudutils.jmx:type=MyDynamicBeanTest" + System.nanoTime();
+        new MyDynamicBean(name, "Test bean", obj, options).registerWith(server).register();
+        return new ObjectName(name);
+    }
+
+    @Test
+    public void testReadsAndWrites() throws Exception {
+        assertReadsAndWrites(BeanOptions.defaults());
+    }
+
+    @Test
+    public void testReadsAndWritesCompiledDispatch() throws Exception {
+        assertReadsAndWrites(BeanOptions.defaults().withDispatchMode(DispatchMode.COMPILED));
+    }
+
+    @Test
+    public void testDispatchUnknownAttribute() throws Exception {
+        for (DispatchMode mode : DispatchMode.values()) {
+            final MyDynamicBean bean = new MyDynamicBean("com.avast.cloudutils.jmx:type=MyDynamicBeanTest" + System.nanoTime(), "Test bean",
+                    new Monitored(), BeanOptions.defaults().withDispatchMode(mode));
+            try {
+                bean.setAttribute(new Attribute("unknown", 1));
+                fail("Unknown attribute written");
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage(), e.getMessage().endsWith(" not found"));
+            }
+            final AttributeList attributes = new AttributeList();
+            attributes.add(new Attribute("unknown", 1));
+            try {
+                bean.setAttributes(attributes);
+                fail("Unknown attribute written");
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage(), e.getMessage().endsWith(" not found"));
+            }
+        }
+    }
+
+    private void assertReadsAndWrites(BeanOptions options) throws Exception {
+        final MBeanServer server = server();
+        final Monitored monitored = new Monitored();
+        final ObjectName name = register(server, monitored, options);
+
+        assertEquals(1L, server.getAttribute(name, "counter"));
+        assertEquals(2, server.getAttribute(name, "atomicInt"));
+        assertEquals(3L, server.getAttribute(name, "atomicLong"));
+        assertEquals("ref", server.getAttribute(name, "atomicRef"));
+        assertEquals("static", server.getAttribute(name, "staticField"));
+        assertEquals(40, server.getAttribute(name, "withAccessors"));
+        assertEquals("computed-1", server.getAttribute(name, "computed"));
+
+        server.setAttribute(name, new Attribute("counter", 42L));
+        server.setAttribute(name, new Attribute("atomicInt", 43));
+        server.setAttribute(name, new Attribute("withAccessors", 5));
+
+        assertEquals(42L, monitored.counter);
+        assertEquals(43, monitored.atomicInt.get());
+        assertEquals(6, monitored.withAccessors);
+        assertEquals("computed-42", server.getAttribute(name, "computed"));
+
+        // values written by setters are converted too
+        server.setAttribute(name, new Attribute("withAccessors", "7"));
+        assertEquals(8, monitored.withAccessors);
+
+        monitored.atomicLong.set(100);
+        assertEquals(100L, server.getAttribute(name, "atomicLong"));
+    }
+
+    @Test
+    public void testFailingGetter() throws Exception {
+        final MBeanServer server = server();
+        final ObjectName name = register(server, new Monitored());
+
+        try {
+            server.getAttribute(name, "failing");
+            fail("Exception expected");
+        } catch (Exception e) {
+            // ok, the getter throws
+        }
+    }
+
+    @Test
+    public void testInvoke() throws Exception {
+        for (DispatchMode mode : DispatchMode.values()) {
+            final MBeanServer server = server();
+            final ObjectName name = register(server, new Monitored(), BeanOptions.defaults().withDispatchMode(mode));
+
+            assertEquals(5L, server.invoke(name, "add", new Object[]{2L, 3}, new String[]{"long", "int"}));
+            assertEquals(2, server.getAttributes(name, new String[]{"counter", "computed"}).size());
+        }
+    }
+
+    public enum Level {
+        LOW, HIGH
+    }
+
+    public static class Config {
+        @JMXProperty(setable = true)
+        private long timeout;
+        @JMXProperty(setable = true)
+        private int size;
+        @JMXProperty(setable = true)
+        private double ratio;
+        @JMXProperty(setable = true)
+        private final AtomicLong limit = new AtomicLong();
+        @JMXProperty(setable = true)
+        private Level level = Level.LOW;
+        @JMXProperty(setable = true)
+        private BigDecimal price = BigDecimal.ZERO;
+        @JMXProperty(setable = true)
+        private int[] ports = new int[0];
+        @JMXProperty(setable = true)
+        private String[] hosts = new String[0];
+    }
+
+    @Test
+    public void testTypedSetters() throws Exception {
+        for (DispatchMode mode : DispatchMode.values()) {
+            final Config config = new Config();
+            final MyDynamicBean bean = new MyDynamicBean(null, "Test bean", config, BeanOptions.defaults().withDispatchMode(mode));
+
+            final AttributeList attributes = new AttributeList();
+            attributes.add(new Attribute("timeout", 5));
+            attributes.add(new Attribute("size", 6L));
+            attributes.add(new Attribute("ratio", 7));
+            attributes.add(new Attribute("limit", 8));
+            attributes.add(new Attribute("level", "HIGH"));
+            attributes.add(new Attribute("price", 9L));
+            attributes.add(new Attribute("ports", new Integer[]{80, 443}));
+            attributes.add(new Attribute("hosts", "a, b"));
+            bean.setAttributes(attributes);
+
+            assertEquals(5L, config.timeout);
+            assertEquals(6, config.size);
+            assertEquals(7.0, config.ratio);
+            assertEquals(8L, config.limit.get());
+            assertEquals(Level.HIGH, config.level);
+            assertEquals(BigDecimal.valueOf(9), config.price);
+            assertTrue(Arrays.equals(new int[]{80, 443}, config.ports));
+            assertTrue(Arrays.equals(new String[]{"a", "b"}, config.hosts));
+
+            // strings are still parsed
+            bean.setAttribute(new Attribute("size", "10"));
+            bean.setAttribute(new Attribute("price", "1.25"));
+            bean.setAttribute(new Attribute("ports", "8080"));
+            assertEquals(10, config.size);
+            assertEquals(new BigDecimal("1.25"), config.price);
+            assertTrue(Arrays.equals(new int[]{8080}, config.ports));
+
+            try {
+                bean.setAttribute(new Attribute("size", Long.MAX_VALUE));
+                fail("Exception expected");
+            } catch (RuntimeException e) {
+                // ok, does not fit to int
+            }
+            assertEquals(10, config.size);
+
+            // converting a value to its own type or widening it allocates nothing, parsing its string did
+            final Attribute timeout = new Attribute("timeout", 42L);
+            final Attribute limit = new Attribute("limit", 43);
+            assertAllocatesAtMost(64, new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    bean.setAttribute(timeout);
+                    bean.setAttribute(limit);
+                    return null;
+                }
+            });
+        }
+    }
+
+    @Test
+    public void testReadPathDoesNotAllocate() throws Exception {
+        for (DispatchMode mode : DispatchMode.values()) {
+            final MyDynamicBean bean = new MyDynamicBean(null, "Test bean", new Monitored(), BeanOptions.defaults().withDispatchMode(mode));
+            final String[] attributes = new String[]{"counter", "atomicInt", "withAccessors"};
+            final Object[] params = new Object[]{2L, 3};
+            final String[] signature = new String[]{"long", "int"};
+
+            // small boxed values are cached, so only the returned list and its attributes should be allocated; the
+            // limits leave room for JVMs with weaker escape analysis, building a debug message or a signature key on
+            // every call takes more
+            assertAllocatesAtMost(64, new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    return bean.getAttribute("counter");
+                }
+            });
+            assertAllocatesAtMost(320, new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    return bean.getAttributes(attributes);
+                }
+            });
+            assertAllocatesAtMost(64, new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    return bean.invoke("add", params, signature);
+                }
+            });
+        }
+    }
+
+    @Test
+    public void testPrimitiveReads() throws Exception {
+        for (DispatchMode mode : DispatchMode.values()) {
+            final Monitored monitored = new Monitored();
+            monitored.counter = 5000000000L;
+            final MyDynamicBean bean = new MyDynamicBean(null, "Test bean", monitored, BeanOptions.defaults().withDispatchMode(mode));
+
+            assertEquals(5000000000L, bean.getLongAttribute("counter"));
+            assertEquals(5000000000.0, bean.getDoubleAttribute("counter"));
+            assertEquals(2, bean.getIntAttribute("atomicInt"));
+            assertEquals(2L, bean.getLongAttribute("atomicInt"));
+            assertEquals(3L, bean.getLongAttribute("atomicLong"));
+            assertEquals(bean.getAttribute("withAccessors"), bean.getIntAttribute("withAccessors"));
+            try {
+                bean.getIntAttribute("counter");
+                fail("Exception expected");
+            } catch (IllegalArgumentException e) {
+                // ok, does not fit to int
+            }
+
+            // nothing is boxed, the Long and Double read by getAttribute would take 32 bytes
+            assertAllocatesAtMost(16, new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    bean.getLongAttribute("counter");
+                    bean.getDoubleAttribute("atomicLong");
+                    return null;
+                }
+            });
+        }
+    }
+
+    /**
+     * Checks bytes allocated per call by the current thread after warm-up (what JMH <code>-prof gc</code> reports as
+     * <code>gc.alloc.rate.norm</code>). The best of a few rounds is taken, so a round disturbed by compilation or a
+     * new TLAB does not fail the test. Skipped on JVMs which don't count allocated bytes.
+     */
+    private static void assertAllocatesAtMost(long limit, Callable<Object> task) throws Exception {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) return;
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) return;
+        final int calls = 20000;
+        for (int i = 0; i < calls; i++) {
+            task.call();
+        }
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 5 && best > limit; round++) {
+            final long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            for (int i = 0; i < calls; i++) {
+                task.call();
+            }
+            best = Math.min(best, (threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before) / calls);
+        }
+        assertTrue("Allocated " + best + " B per call, expected at most " + limit, best <= limit);
+    }
+
+    @Test
+    public void testInstancesOfOneClassAreIndependent() throws Exception {
+        final MBeanServer server = server();
+        final Monitored first = new Monitored();
+        final Monitored second = new Monitored();
+        final ObjectName firstName = register(server, first);
+        final ObjectName secondName = register(server, second);
+
+        server.setAttribute(firstName, new Attribute("counter", 10L));
+        server.setAttribute(secondName, new Attribute("counter", 20L));
+        server.setAttribute(secondName, new Attribute("withAccessors", 7));
+
+        assertEquals(10L, first.counter);
+        assertEquals(20L, second.counter);
+        assertEquals("computed-10", server.getAttribute(firstName, "computed"));
+        assertEquals("computed-20", server.getAttribute(secondName, "computed"));
+        assertEquals(40, server.getAttribute(firstName, "withAccessors"));
+        assertEquals(80, server.getAttribute(secondName, "withAccessors"));
+    }
+
+    @Test
+    public void testInstancesKeepTheirOwnCompositeTypes() throws Exception {
+        for (DispatchMode mode : DispatchMode.values()) {
+            final Monitored first = new Monitored();
+            final Monitored second = new Monitored();
+            first.stats.put("requests", 1L);
+            second.stats.put("errors", 2);
+            second.stats.put("name", "second");
+            final BeanOptions options = BeanOptions.defaults().withDispatchMode(mode);
+            final MyDynamicBean firstBean = new MyDynamicBean(null, "Test bean", first, options);
+            final MyDynamicBean secondBean = new MyDynamicBean(null, "Test bean", second, options);
+
+            final CompositeData firstStats = (CompositeData) firstBean.getAttribute("stats");
+            final CompositeData secondStats = (CompositeData) secondBean.getAttribute("stats");
+            assertEquals(1L, firstStats.get("requests"));
+            assertFalse(firstStats.containsKey("errors"));
+            assertEquals(2, secondStats.get("errors"));
+            assertEquals("second", secondStats.get("name"));
+
+            // reading the other instance does not rebuild the composite type of this one
+            assertSame(firstStats.getCompositeType(), ((CompositeData) firstBean.getAttribute("stats")).getCompositeType());
+            assertSame(secondStats.getCompositeType(), ((CompositeData) secondBean.getAttribute("stats")).getCompositeType());
+        }
+    }
+
+    public static class Gauge {
+        @JMXProperty(setable = true)
+        private int value;
+        @JMXCounter
+        private final AtomicLong hits = new AtomicLong();
+    }
+
+    @Test
+    public void testInstancesShareInfo() throws Exception {
+        for (DispatchMode mode : DispatchMode.values()) {
+            final BeanOptions options = BeanOptions.defaults().withDispatchMode(mode);
+            final Gauge first = new Gauge();
+            final Gauge second = new Gauge();
+            final MyDynamicBean firstBean = new MyDynamicBean("com.avast.cloudutils.jmx:type=Gauge", "Gauge", first, options);
+            final MyDynamicBean secondBean = new MyDynamicBean("com.avast.cloudutils.jmx:type=Gauge", "Gauge", second, options);
+            assertSame(firstBean.getMBeanInfo(), secondBean.getMBeanInfo());
+
+            final MyDynamicBean renamed = new MyDynamicBean("com.avast.cloudutils.jmx:type=OtherGauge", "Gauge", new Gauge(), options);
+            assertEquals("com.avast.cloudutils.jmx:type=OtherGauge", renamed.getMBeanInfo().getClassName());
+            assertEquals("com.avast.cloudutils.jmx:type=Gauge", firstBean.getMBeanInfo().getClassName());
+            assertEquals(firstBean.getMBeanInfo().getAttributes().length, renamed.getMBeanInfo().getAttributes().length);
+
+            // the properties are shared, the values are not
+            firstBean.setAttribute(new Attribute("value", 1));
+            secondBean.setAttribute(new Attribute("value", 2));
+            second.hits.set(5);
+            assertEquals(1, firstBean.getAttribute("value"));
+            assertEquals(2, secondBean.getAttribute("value"));
+            assertEquals(0L, firstBean.getAttribute("hits"));
+            assertEquals(5L, secondBean.getAttribute("hits"));
+            assertEquals(0.0, secondBean.getAttribute("hitsRate1s"));
+        }
+    }
+
+    @Test
+    public void testMapPropertyFollowsKeyChanges() throws Exception {
+        final MBeanServer server = server();
+        final Monitored monitored = new Monitored();
+        final ObjectName name = register(server, monitored);
+
+        assertNull(server.getAttribute(name, "stats"));
+
+        monitored.stats.put("errors", new AtomicLong(1));
+        monitored.stats.put("state", "ok");
+        CompositeData data = (CompositeData) server.getAttribute(name, "stats");
+        assertEquals(1L, data.get("errors"));
+        assertEquals("ok", data.get("state"));
+
+        ((AtomicLong) monitored.stats.get("errors")).set(2);
+        data = (CompositeData) server.getAttribute(name, "stats");
+        assertEquals(2L, data.get("errors"));
+
+        monitored.stats.put("state", 3);
+        monitored.stats.put("hits", 4L);
+        data = (CompositeData) server.getAttribute(name, "stats");
+        assertEquals(3, data.get("state"));
+        assertEquals(4L, data.get("hits"));
+        assertEquals(3, data.getCompositeType().keySet().size());
+
+        monitored.stats.remove("errors");
+        data = (CompositeData) server.getAttribute(name, "stats");
+        assertFalse(data.containsKey("errors"));
+        assertEquals(4L, data.get("hits"));
+    }
+
+    @Test
+    public void testTabularMap() throws Exception {
+        for (DispatchMode mode : DispatchMode.values()) {
+            final MBeanServer server = server();
+            final Monitored monitored = new Monitored();
+            final ObjectName name = register(server, monitored, BeanOptions.defaults().withDispatchMode(mode));
+            for (int i = 0; i < 10; i++) {
+                monitored.perCustomer.put("customer" + i, new AtomicLong((i * 7) % 10));
+            }
+
+            final TabularData firstPage = (TabularData) server.getAttribute(name, "perCustomer");
+            assertEquals(3, firstPage.size());
+            assertEquals(0L, firstPage.get(new Object[]{"customer0"}).get("value"));
+
+            final TabularData page = (TabularData) server.invoke(name, "perCustomerPage", new Object[]{8, 5}, new String[]{"int", "int"});
+            assertEquals(2, page.size());
+            assertEquals(6L, page.get(new Object[]{"customer8"}).get("value"));
+
+            assertEquals(4L, server.invoke(name, "perCustomerGet", new Object[]{"customer2"}, new String[]{String.class.getName()}));
+            assertNull(server.invoke(name, "perCustomerGet", new Object[]{"nobody"}, new String[]{String.class.getName()}));
+
+            final TabularData top = (TabularData) server.invoke(name, "perCustomerTopK", new Object[]{2}, new String[]{"int"});
+            assertEquals(2, top.size());
+            final Object[] rows = top.values().toArray();
+            assertEquals("customer7", ((CompositeData) rows[0]).get("key"));
+            assertEquals(9L, ((CompositeData) rows[0]).get("value"));
+            assertEquals("customer4", ((CompositeData) rows[1]).get("key"));
+        }
+    }
+
+    public static class Ranking {
+        private final AtomicInteger computed = new AtomicInteger();
+
+        @JMXProperty(name = "ranking", mapExposure = MapExposure.TABULAR, cacheMillis = 60000)
+        public Map<String, Long> ranking() {
+            computed.incrementAndGet();
+            return Collections.singletonMap("first", 10L);
+        }
+    }
+
+    @Test
+    public void testTabularOperationsReadThroughBinding() throws Exception {
+        for (DispatchMode mode : DispatchMode.values()) {
+            final MBeanServer server = server();
+            final Ranking ranking = new Ranking();
+            final ObjectName name = register(server, ranking, BeanOptions.defaults().withDispatchMode(mode));
+
+            assertEquals(1, ((TabularData) server.getAttribute(name, "ranking")).size());
+            assertEquals(10L, server.invoke(name, "rankingGet", new Object[]{"first"}, new String[]{String.class.getName()}));
+            assertNull(server.invoke(name, "rankingGet", new Object[]{"second"}, new String[]{String.class.getName()}));
+            assertEquals(1, ((TabularData) server.invoke(name, "rankingTopK", new Object[]{5}, new String[]{"int"})).size());
+            // the operations are served from the cached value, the getter is not called again
+            assertEquals(1, ranking.computed.get());
+        }
+    }
+
+    @Test
+    public void testFlattenedMap() throws Exception {
+        for (DispatchMode mode : DispatchMode.values()) {
+            final MBeanServer server = server();
+            final Monitored monitored = new Monitored();
+            monitored.requests.put("errors", new AtomicLong(1));
+            final ObjectName name = register(server, monitored, BeanOptions.defaults().withDispatchMode(mode));
+
+            assertEquals(1L, server.getAttribute(name, "requests.errors"));
+            assertTrue(hasAttribute(server, name, "requests.errors"));
+            assertFalse(hasAttribute(server, name, "requests"));
+
+            monitored.requests.put("ok", new AtomicLong(5));
+            monitored.requests.get("errors").incrementAndGet();
+            assertEquals(5L, server.getAttribute(name, "requests.ok"));
+            assertEquals(2, server.getAttributes(name, new String[]{"requests.ok", "requests.errors"}).size());
+            assertTrue(hasAttribute(server, name, "requests.ok"));
+
+            monitored.requests.remove("errors");
+            assertFalse(hasAttribute(server, name, "requests.errors"));
+            try {
+                server.getAttribute(name, "requests.errors");
+                fail("Exception expected");
+            } catch (Exception e) {
+                // ok, the key was removed
+            }
+        }
+    }
+
+    private static boolean hasAttribute(MBeanServer server, ObjectName name, String attribute) throws Exception {
+        for (MBeanAttributeInfo info : server.getMBeanInfo(name).getAttributes()) {
+            if (info.getName().equals(attribute)) return true;
+        }
+        return false;
+    }
+
+    @Test
+    public void testTimer() throws Exception {
+        for (DispatchMode mode : DispatchMode.values()) {
+            final MBeanServer server = server();
+            final Monitored monitored = new Monitored();
+            final ObjectName name = register(server, monitored, BeanOptions.defaults().withDispatchMode(mode));
+
+            CompositeData data = (CompositeData) server.getAttribute(name, "latency");
+            assertEquals(0L, data.get("count"));
+
+            for (int i = 1; i <= 1000; i++) {
+                monitored.latency.record(i, TimeUnit.MILLISECONDS);
+            }
+            data = (CompositeData) server.getAttribute(name, "latency");
+            assertEquals(1000L, data.get("count"));
+            assertEquals(1.0, (Double) data.get("min"), 0.0);
+            assertEquals(1000.0, (Double) data.get("max"), 0.0);
+            assertEquals(500.5, (Double) data.get("mean"), 0.001);
+            // log buckets are within ~3% of the value
+            assertEquals(500, (Double) data.get("p50"), 500 * 0.035);
+            assertEquals(900, (Double) data.get("p90"), 900 * 0.035);
+            assertEquals(990, (Double) data.get("p99"), 990 * 0.035);
+            assertEquals(1000.0, (Double) data.get("p999"), 1000 * 0.035);
+            for (MBeanAttributeInfo info : server.getMBeanInfo(name).getAttributes()) {
+                if (info.getName().equals("latency")) assertFalse(info.isWritable());
+            }
+        }
+
+        final LatencyHistogram rotating = new LatencyHistogram(1, TimeUnit.NANOSECONDS);
+        rotating.record(100);
+        Thread.sleep(1);
+        assertEquals(1, rotating.getSnapshot().getCount());
+        Thread.sleep(1);
+        assertEquals(0, rotating.getSnapshot().getCount());
+    }
+
+    @Test
+    public void testCounterRates() throws Exception {
+        final DispatchMode[] modes = DispatchMode.values();
+        final MBeanServer server = server();
+        final Monitored[] monitored = new Monitored[modes.length];
+        final ObjectName[] names = new ObjectName[modes.length];
+        for (int m = 0; m < modes.length; m++) {
+            monitored[m] = new Monitored();
+            names[m] = register(server, monitored[m], BeanOptions.defaults().withDispatchMode(modes[m]));
+
+            assertEquals(0.0, server.getAttribute(names[m], "servedRate1s"));
+            for (MBeanAttributeInfo info : server.getMBeanInfo(names[m]).getAttributes()) {
+                if (info.getName().startsWith("servedRate")) {
+                    assertEquals("double", info.getType());
+                    assertFalse(info.isWritable());
+                }
+            }
+        }
+
+        // the sampler runs every second, keep counting for more than two samples
+        for (int i = 0; i < 250; i++) {
+            for (Monitored counted : monitored) {
+                counted.served.addAndGet(10);
+            }
+            Thread.sleep(10);
+        }
+        for (ObjectName name : names) {
+            assertEquals(2500L, server.getAttribute(name, "served"));
+            assertTrue((Double) server.getAttribute(name, "servedRate1s") > 0);
+            assertTrue((Double) server.getAttribute(name, "servedRate1m") > 0);
+            assertTrue((Double) server.getAttribute(name, "servedRate5m") > 0);
+        }
+    }
+
+    @Test
+    public void testPublisherStats() throws Exception {
+        for (DispatchMode mode : DispatchMode.values()) {
+            final MBeanServer server = server();
+            final ObjectName name = register(server, new Monitored(), BeanOptions.defaults().withDispatchMode(mode).withStats(true));
+            final ObjectName statsName = new ObjectName(name + ",stats=publisher");
+
+            server.getAttribute(name, "counter");
+            server.getAttributes(name, new String[]{"counter", "atomicInt"});
+            try {
+                server.getAttribute(name, "failing");
+                fail();
+            } catch (Exception e) {
+                // expected
+            }
+            server.setAttribute(name, new Attribute("counter", 5L));
+            server.invoke(name, "add", new Object[]{1L, 2}, new String[]{"long", "int"});
+
+            final TabularData reads = (TabularData) server.getAttribute(statsName, "attributeReads");
+            assertEquals(2L, reads.get(new Object[]{"counter"}).get("calls"));
+            assertEquals(1L, reads.get(new Object[]{"atomicInt"}).get("calls"));
+            assertEquals(1L, reads.get(new Object[]{"failing"}).get("errors"));
+            assertEquals(0L, reads.get(new Object[]{"computed"}).get("calls"));
+            final TabularData writes = (TabularData) server.getAttribute(statsName, "attributeWrites");
+            assertEquals(1L, writes.get(new Object[]{"counter"}).get("calls"));
+            final CompositeData add = ((TabularData) server.getAttribute(statsName, "operations")).get(new Object[]{"add"});
+            assertEquals(1L, add.get("calls"));
+            assertEquals(0L, add.get("errors"));
+            assertTrue((Long) add.get("maxNanos") > 0);
+
+            server.invoke(statsName, "reset", null, null);
+            assertEquals(0L, ((TabularData) server.getAttribute(statsName, "attributeReads")).get(new Object[]{"counter"}).get("calls"));
+
+            // disabled by default
+            final ObjectName plain = register(server, new Monitored());
+            assertFalse(server.isRegistered(new ObjectName(plain + ",stats=publisher")));
+        }
+    }
+
+    public static class Broken {
+        @JMXTimer
+        private long notHistogram;
+    }
+
+    @Test
+    public void testPublisherMetrics() throws Exception {
+        final MBeanServer server = server();
+        register(server, new Monitored());
+        final ObjectName metrics = new ObjectName("com.avast.jmx:type=jmx-publisher");
+
+        assertTrue(server.isRegistered(metrics));
+        assertTrue((Integer) server.getAttribute(metrics, "liveBeans") >= 1);
+        assertTrue((Integer) server.getAttribute(metrics, "registeredBeans") >= 1);
+        assertTrue((Integer) server.getAttribute(metrics, "uniqueNames") >= 1);
+        assertTrue((Long) ((CompositeData) server.getAttribute(metrics, "registrationTime")).get("count") >= 1);
+        assertTrue((Long) ((CompositeData) server.getAttribute(metrics, "infoBuildTime")).get("count") >= 1);
+
+        final long failed = (Long) server.getAttribute(metrics, "failedRegistrations");
+        assertNull(MyDynamicBean.exposeAndRegisterSilently(new Broken()));
+        assertEquals(failed + 1, server.getAttribute(metrics, "failedRegistrations"));
+
+        final MyDynamicBean bean = new MyDynamicBean("com.avast.cloudutils.jmx:type=Live", "Test bean", new Monitored()).registerWith(server);
+        bean.register();
+        final int live = (Integer) server.getAttribute(metrics, "liveBeans");
+        bean.unregister();
+        // other beans may be garbage collected meanwhile
+        assertTrue((Integer) server.getAttribute(metrics, "liveBeans") <= live - 1);
+        bean.register();
+        assertTrue((Integer) server.getAttribute(metrics, "liveBeans") <= live);
+        assertTrue((Integer) server.getAttribute(metrics, "liveBeans") >= 1);
+        bean.unregister();
+    }
+
+    public static class Expensive {
+        private final AtomicInteger computed = new AtomicInteger();
+        @JMXProperty(setable = true, cacheMillis = 60000)
+        private int limit = 1;
+
+        @JMXProperty(cacheMillis = 50)
+        public int size() {
+            return computed.incrementAndGet();
+        }
+    }
+
+    @Test
+    public void testCachedProperties() throws Exception {
+        for (DispatchMode mode : DispatchMode.values()) {
+            final MBeanServer server = server();
+            final Expensive expensive = new Expensive();
+            final ObjectName name = register(server, expensive, BeanOptions.defaults().withDispatchMode(mode));
+            final ObjectName metrics = new ObjectName("com.avast.jmx:type=jmx-publisher");
+            final long misses = (Long) server.getAttribute(metrics, "cacheMisses");
+            final long hits = (Long) server.getAttribute(metrics, "cacheHits");
+
+            assertEquals(1, server.getAttribute(name, "size"));
+            assertEquals(1, server.getAttribute(name, "size"));
+            assertEquals(1, expensive.computed.get());
+            assertEquals(misses + 1, server.getAttribute(metrics, "cacheMisses"));
+            assertTrue((Long) server.getAttribute(metrics, "cacheHits") >= hits + 1);
+
+            // stale value is returned while it's refreshed in the background
+            Thread.sleep(100);
+            assertEquals(1, server.getAttribute(name, "size"));
+            final long deadline = System.currentTimeMillis() + 5000;
+            Object refreshed;
+            while ((refreshed = server.getAttribute(name, "size")).equals(1) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(2, refreshed);
+
+            // written value is not hidden by the cache
+            assertEquals(1, server.getAttribute(name, "limit"));
+            server.setAttribute(name, new Attribute("limit", 5));
+            assertEquals(5, server.getAttribute(name, "limit"));
+            expensive.limit = 6;
+            assertEquals(5, server.getAttribute(name, "limit"));
+        }
+    }
+
+    public static class Refreshed {
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+        private volatile boolean blocking;
+        @JMXProperty(setable = true)
+        private volatile int value = 1;
+
+        @JMXPropertyGetter(cacheMillis = 200)
+        public int getValue() throws InterruptedException {
+            final int current = value;
+            if (blocking) {
+                started.countDown();
+                released.await();
+            }
+            return current;
+        }
+
+        @JMXPropertySetter
+        public void setValue(int value) {
+            this.value = value;
+        }
+    }
+
+    @Test
+    public void testRefreshDoesNotOverwriteWrittenValue() throws Exception {
+        final Refreshed refreshed = new Refreshed();
+        final MyDynamicBean bean = new MyDynamicBean(null, "Test bean", refreshed);
+        assertEquals(1, bean.getAttribute("value"));
+
+        // stale value triggers refresh, which reads the old value and then waits
+        Thread.sleep(250);
+        refreshed.blocking = true;
+        assertEquals(1, bean.getAttribute("value"));
+        assertTrue(refreshed.started.await(10, TimeUnit.SECONDS));
+
+        bean.setAttribute(new Attribute("value", 5));
+        refreshed.blocking = false;
+        refreshed.released.countDown();
+        Thread.sleep(50);
+        assertEquals(5, bean.getAttribute("value"));
+    }
+
+    @Test
+    public void testWriteDoesNotWaitForLoad() throws Exception {
+        final Refreshed refreshed = new Refreshed();
+        refreshed.blocking = true;
+        final MyDynamicBean bean = new MyDynamicBean(null, "Test bean", refreshed);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<Object> read = executor.submit(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    return bean.getAttribute("value");
+                }
+            });
+            assertTrue(refreshed.started.await(10, TimeUnit.SECONDS));
+
+            // the first load is stuck in the getter, the write only drops the value it's going to cache
+            executor.submit(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    bean.setAttribute(new Attribute("value", 5));
+                    return null;
+                }
+            }).get(10, TimeUnit.SECONDS);
+
+            refreshed.blocking = false;
+            refreshed.released.countDown();
+            assertEquals(1, read.get(10, TimeUnit.SECONDS));
+            assertEquals(5, bean.getAttribute("value"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public static class Slow {
+        private final CountDownLatch released = new CountDownLatch(1);
+        private final AtomicInteger failures = new AtomicInteger();
+        private volatile boolean blocking;
+        @JMXProperty
+        private int fast = 1;
+
+        @JMXProperty(timeoutMillis = 50)
+        public int blocked() throws InterruptedException {
+            if (blocking) released.await();
+            return 7;
+        }
+
+        @JMXProperty(timeoutMillis = 1000)
+        public int failing() {
+            failures.incrementAndGet();
+            throw new IllegalStateException("broken");
+        }
+    }
+
+    @Test
+    public void testGuardedGetters() throws Exception {
+        for (DispatchMode mode : DispatchMode.values()) {
+            final Slow slow = new Slow();
+            final MyDynamicBean bean = new MyDynamicBean(null, "Test bean", slow, BeanOptions.defaults().withDispatchMode(mode));
+            assertEquals(7, bean.getAttribute("blocked"));
+
+            // the last value is returned when the getter does not finish in time
+            slow.blocking = true;
+            try {
+                final long start = System.nanoTime();
+                final AttributeList attributes = bean.getAttributes(new String[]{"blocked", "fast"});
+                assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+                assertEquals(7, ((Attribute) attributes.get(0)).getValue());
+                assertEquals(1, ((Attribute) attributes.get(1)).getValue());
+            } finally {
+                slow.released.countDown();
+            }
+
+            // a getter which keeps failing is skipped after a few failures
+            for (int i = 0; i < 3; i++) {
+                try {
+                    bean.getAttribute("failing");
+                    fail("Exception expected");
+                } catch (RuntimeException e) {
+                    // ok
+                }
+            }
+            assertNull(bean.getAttribute("failing"));
+            assertEquals(3, slow.failures.get());
+        }
+    }
+
+    @Test
+    public void testGuardedGetterCountsCallOnce() throws Exception {
+        final Slow slow = new Slow();
+        final MyDynamicBean bean = new MyDynamicBean(null, "Test bean", slow);
+        assertEquals(7, bean.getAttribute("blocked"));
+
+        slow.blocking = true;
+        final ExecutorService executor = Executors.newFixedThreadPool(3 + 1);
+        try {
+            // readers waiting for the same call time out together, it's one failure
+            final List<Future<Object>> reads = new ArrayList<>();
+            for (int i = 0; i < 3 + 1; i++) {
+                reads.add(executor.submit(new Callable<Object>() {
+                    @Override
+                    public Object call() throws Exception {
+                        return bean.getAttribute("blocked");
+                    }
+                }));
+            }
+            for (Future<Object> read : reads) {
+                assertEquals(7, read.get(10, TimeUnit.SECONDS));
+            }
+
+            // so the getter is not skipped, the reader waits for it again
+            final long start = System.nanoTime();
+            assertEquals(7, bean.getAttribute("blocked"));
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40));
+        } finally {
+            slow.released.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testStuckGetterOpensBreaker() throws Exception {
+        final Slow slow = new Slow();
+        final MyDynamicBean bean = new MyDynamicBean(null, "Test bean", slow);
+        assertEquals(7, bean.getAttribute("blocked"));
+
+        slow.blocking = true;
+        try {
+            // the getter never returns, readers wait for the same call until it runs for 3 timeouts
+            for (int i = 0; i < 3 + 1; i++) {
+                assertEquals(7, bean.getAttribute("blocked"));
+            }
+
+            // then it's skipped, 10 reads would take 500 ms otherwise
+            final long start = System.nanoTime();
+            for (int i = 0; i < 10; i++) {
+                assertEquals(7, bean.getAttribute("blocked"));
+            }
+            assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(50));
+        } finally {
+            slow.released.countDown();
+        }
+    }
+
+    @Test
+    public void testUniqueNames() throws Exception {
+        final MBeanServer server = server();
+        final String name = "com.avast.cloudutils.jmx:type=MyDynamicBeanTest" + System.nanoTime();
+        final MyDynamicBean first = new MyDynamicBean(name, new Monitored()).registerWith(server);
+        final MyDynamicBean second = new MyDynamicBean(name, new Monitored()).registerWith(server);
+        final MyDynamicBean third = new MyDynamicBean(name, new Monitored()).registerWith(server);
+        first.register();
+        second.register();
+        third.register();
+        assertTrue(server.isRegistered(new ObjectName(name)));
+        assertTrue(server.isRegistered(new ObjectName(name + "-1")));
+        assertTrue(server.isRegistered(new ObjectName(name + "-2")));
+
+        // names are scoped per server
+        final MBeanServer other = server();
+        new MyDynamicBean(name, new Monitored()).registerWith(other).register();
+        assertTrue(other.isRegistered(new ObjectName(name)));
+
+        // freed suffix is reused
+        second.unregister();
+        assertFalse(server.isRegistered(new ObjectName(name + "-1")));
+        final MyDynamicBean fourth = new MyDynamicBean(name, new Monitored()).registerWith(server);
+        fourth.register();
+        assertTrue(server.isRegistered(new ObjectName(name + "-1")));
+
+        first.unregister();
+        third.unregister();
+        fourth.unregister();
+        first.register();
+        assertTrue(server.isRegistered(new ObjectName(name)));
+        assertFalse(server.isRegistered(new ObjectName(name + "-1")));
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testUniqueNameIsNotReserved() throws Exception {
+        final MBeanServer server = server();
+        MyDynamicBean.setDefaultMBeanServer(server);
+        try {
+            final String name = "com.avast.cloudutils.jmx:type=MyDynamicBeanTest" + System.nanoTime();
+            assertEquals(name, MyDynamicBean.getAndEnlistUniqueName(name));
+            assertEquals(name, MyDynamicBean.getAndEnlistUniqueName(name));
+
+            final MyDynamicBean bean = new MyDynamicBean(name, new Monitored()).registerWith(server);
+            bean.register();
+            assertTrue(server.isRegistered(new ObjectName(name)));
+            assertEquals(name + "-1", MyDynamicBean.getAndEnlistUniqueName(name));
+
+            bean.unregister();
+            assertEquals(name, MyDynamicBean.getAndEnlistUniqueName(name));
+        } finally {
+            MyDynamicBean.setDefaultMBeanServer(ManagementFactory.getPlatformMBeanServer());
+        }
+    }
+
+    @Test
+    public void testRegisterAll() throws Exception {
+        final MBeanServer server = server();
+        MyDynamicBean.setDefaultMBeanServer(server);
+        try {
+            final List<Object> objects = new ArrayList<>();
+            for (int i = 0; i < 300; i++) {
+                objects.add(i == 200 ? new Broken() : new Monitored());
+            }
+            final List<RegistrationResult> results = MyDynamicBean.registerAll(objects);
+            assertEquals(300, results.size());
+
+            final List<MyDynamicBean> beans = new ArrayList<>();
+            for (int i = 0; i < results.size(); i++) {
+                final RegistrationResult result = results.get(i);
+                assertSame(objects.get(i), result.getObject());
+                assertEquals(i != 200, result.isSuccess());
+                beans.add(result.getBean());
+            }
+            assertNull(results.get(200).getBean());
+            assertTrue(results.get(200).getError() instanceof IllegalArgumentException);
+            final ObjectName pattern = new ObjectName(MyDynamicBean.getJMXNameForClass(Monitored.class) + "*");
+            assertEquals(299, server.queryNames(pattern, null).size());
+
+            for (RegistrationResult result : MyDynamicBean.unregisterAll(beans)) {
+                assertTrue(result.isSuccess());
+            }
+            assertTrue(server.queryNames(pattern, null).isEmpty());
+        } finally {
+            MyDynamicBean.setDefaultMBeanServer(ManagementFactory.getPlatformMBeanServer());
+        }
+    }
+
+    @Test
+    public void testLazy() throws Exception {
+        for (DispatchMode mode : DispatchMode.values()) {
+            assertReadsAndWrites(BeanOptions.defaults().withDispatchMode(mode).withLazy(true));
+
+            final MBeanServer server = server();
+            register(server, new Monitored());
+            final ObjectName metrics = new ObjectName("com.avast.jmx:type=jmx-publisher");
+            final long built = (Long) ((CompositeData) server.getAttribute(metrics, "infoBuildTime")).get("count");
+            final ObjectName name = register(server, new Monitored(), BeanOptions.defaults().withDispatchMode(mode).withLazy(true));
+            assertEquals(built, ((CompositeData) server.getAttribute(metrics, "infoBuildTime")).get("count"));
+
+            // the first access builds the bean exactly once, even if there are more of them at the same time
+            final ExecutorService executor = Executors.newFixedThreadPool(4);
+            try {
+                final List<Future<Object>> reads = new ArrayList<>();
+                for (int i = 0; i < 8; i++) {
+                    reads.add(executor.submit(new Callable<Object>() {
+                        @Override
+                        public Object call() throws Exception {
+                            return server.getAttribute(name, "counter");
+                        }
+                    }));
+                }
+                for (Future<Object> read : reads) {
+                    assertEquals(1L, read.get());
+                }
+            } finally {
+                executor.shutdown();
+            }
+            assertEquals(built + 1, ((CompositeData) server.getAttribute(metrics, "infoBuildTime")).get("count"));
+            assertTrue(server.getMBeanInfo(name).getAttributes().length > 0);
+        }
+    }
+
+    @Test
+    public void testRegisterTwice() throws Exception {
+        final MBeanServer server = server();
+        final String name = "com.avast.cloudutils.jmx:type=MyDynamicBeanTest" + System.nanoTime();
+        final MyDynamicBean bean = new MyDynamicBean(name, new Monitored()).registerWith(server);
+        bean.register();
+        try {
+            bean.register();
+            fail("Registered twice");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertTrue(server.isRegistered(new ObjectName(name)));
+        assertEquals(1, server.queryNames(new ObjectName(name + "*"), null).size());
+
+        // unregistered by somebody else, unregister() fails but still releases the name
+        server.unregisterMBean(new ObjectName(name));
+        try {
+            bean.unregister();
+            fail("Unregistered twice");
+        } catch (InstanceNotFoundException e) {
+            // expected
+        }
+        bean.register();
+        assertTrue(server.isRegistered(new ObjectName(name)));
+        bean.unregister();
+    }
+
+    @Test
+    public void testRegisterAsync() throws Exception {
+        final MBeanServer server = server();
+        final String name = "com.avast.cloudutils.jmx:type=MyDynamicBeanTest" + System.nanoTime();
+        final Future<MyDynamicBean> registration = new MyDynamicBean(name, new Monitored()).registerWith(server).registerAsync();
+        MyDynamicBean.flushRegistrations();
+        assertTrue(registration.isDone());
+        assertTrue(server.isRegistered(new ObjectName(name)));
+
+        registration.get().unregisterAsync().get();
+        assertFalse(server.isRegistered(new ObjectName(name)));
+
+        // short-lived beans, registrations which did not start yet are just cancelled
+        final List<MyDynamicBean> beans = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            final MyDynamicBean bean = new MyDynamicBean(name, new Monitored()).registerWith(server);
+            bean.registerAsync();
+            beans.add(bean);
+        }
+        final List<Future<MyDynamicBean>> unregistrations = new ArrayList<>();
+        for (MyDynamicBean bean : beans) {
+            unregistrations.add(bean.unregisterAsync());
+        }
+        MyDynamicBean.flushRegistrations();
+        for (Future<MyDynamicBean> unregistration : unregistrations) {
+            assertNotNull(unregistration.get());
+        }
+        assertTrue(server.queryNames(new ObjectName(name + "*"), null).isEmpty());
+    }
+
+    @Test
+    public void testUnregisterAsyncWhileRegistrationRuns() throws Exception {
+        final MBeanServer server = server();
+        final String name = "com.avast.cloudutils.jmx:type=MyDynamicBeanTest" + System.nanoTime();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch released = new CountDownLatch(1);
+        // server blocking the registration of the bean, i.e. the task has already started when it's cancelled
+        final MBeanServer blocking = (MBeanServer) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{MBeanServer.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("registerMBean") && args[1].toString().equals(name)) {
+                    started.countDown();
+                    released.await();
+                }
+                try {
+                    return method.invoke(server, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        });
+
+        final MyDynamicBean bean = new MyDynamicBean(name, new Monitored()).registerWith(blocking);
+        final Future<MyDynamicBean> registration = bean.registerAsync();
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<Future<MyDynamicBean>> unregistration = executor.submit(new Callable<Future<MyDynamicBean>>() {
+                @Override
+                public Future<MyDynamicBean> call() throws Exception {
+                    return bean.unregisterAsync();
+                }
+            });
+            Thread.sleep(50);
+            released.countDown();
+            registration.get(10, TimeUnit.SECONDS);
+            unregistration.get(10, TimeUnit.SECONDS).get(10, TimeUnit.SECONDS);
+        } finally {
+            released.countDown();
+            executor.shutdown();
+        }
+        assertFalse(server.isRegistered(new ObjectName(name)));
+        // the name is released, the next bean gets it without a counter
+        new MyDynamicBean(name, new Monitored()).registerWith(server).register();
+        assertTrue(server.isRegistered(new ObjectName(name)));
+    }
+
+    @Test
+    public void testWeakTarget() throws Exception {
+        for (DispatchMode mode : DispatchMode.values()) {
+            final BeanOptions options = BeanOptions.defaults().withDispatchMode(mode).withWeakTarget(true);
+            assertReadsAndWrites(options);
+
+            // registered bean unregisters itself once nothing else references the object
+            final MBeanServer server = server();
+            final ObjectName name = register(server, new Monitored(), options);
+            assertEquals(1L, server.getAttribute(name, "counter"));
+            for (int i = 0; i < 100 && server.isRegistered(name); i++) {
+                System.gc();
+                Thread.sleep(50);
+            }
+            assertFalse(server.isRegistered(name));
+
+            // and reading a bean of collected object fails fast
+            final MyDynamicBean bean = new MyDynamicBean(null, "Test bean", new Monitored(), options);
+            Throwable failure = null;
+            for (int i = 0; i < 100 && failure == null; i++) {
+                System.gc();
+                try {
+                    bean.getAttribute("counter");
+                    Thread.sleep(50);
+                } catch (RuntimeException e) {
+                    failure = e;
+                }
+            }
+            assertNotNull(failure);
+            while (failure.getCause() != null) failure = failure.getCause();
+            assertTrue(failure instanceof IllegalStateException);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.avast.cloudutils.jmx;
+
+import com.avast.jmx.BeanOptions;
+import com.avast.jmx.DispatchMode;
+import com.avast.jmx.JMXOperation;
+import com.avast.jmx.JMXProperty;
+import com.avast.jmx.MyDynamicBean;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Flight Recorder events of reads, writes and invocations. Compiled only on JDK 11+ (profile <code>java11</code>) and run
+ * against the multi-release jar, which contains the events (<code>src/main/java11</code>).
+ */
+public class JfrEventsTest extends TestCase {
+    private static final String READ = "com.avast.jmx.AttributeRead";
+    private static final String WRITE = "com.avast.jmx.AttributeWrite";
+    private static final String INVOKE = "com.avast.jmx.OperationInvoke";
+
+    public static class Recorded {
+        @JMXProperty(setable = true)
+        private int value = 1;
+
+        @JMXOperation
+        public void pause() throws InterruptedException {
+            Thread.sleep(20);
+        }
+    }
+
+    @Test
+    public void testEvents() throws Exception {
+        for (DispatchMode mode : DispatchMode.values()) {
+            final MBeanServer server = MBeanServerFactory.newMBeanServer();
+            final String name = "com.avast.cloudutils.jmx:type=JfrEventsTest" + System.nanoTime();
+            new MyDynamicBean(name, "Test bean", new Recorded(), BeanOptions.defaults().withDispatchMode(mode)).registerWith(server).register();
+            final ObjectName objectName = new ObjectName(name);
+
+            final List<RecordedEvent> events;
+            try (Recording recording = new Recording()) {
+                recording.enable(READ).withThreshold(Duration.ZERO);
+                recording.enable(WRITE).withThreshold(Duration.ZERO);
+                recording.enable(INVOKE).withThreshold(Duration.ZERO);
+                recording.start();
+
+                assertEquals(1, server.getAttribute(objectName, "value"));
+                server.setAttribute(objectName, new Attribute("value", 2));
+                server.invoke(objectName, "pause", new Object[0], new String[0]);
+
+                recording.stop();
+                events = read(recording, name);
+            }
+
+            assertEquals(3, events.size());
+            final RecordedEvent read = find(events, READ);
+            assertEquals("value", read.getString("attribute"));
+            assertFalse(read.getDuration().isNegative());
+
+            final RecordedEvent write = find(events, WRITE);
+            assertEquals("value", write.getString("attribute"));
+            assertFalse(write.getDuration().isNegative());
+
+            final RecordedEvent invoke = find(events, INVOKE);
+            assertEquals("pause", invoke.getString("operation"));
+            assertTrue(invoke.getDuration().compareTo(Duration.ofMillis(20)) >= 0);
+        }
+    }
+
+    /**
+     * @return Events of the bean, the recording may contain events of other beans (e.g. the metrics of the publisher).
+     */
+    private static List<RecordedEvent> read(Recording recording, String bean) throws Exception {
+        final Path file = Files.createTempFile("jfr-events-test", ".jfr");
+        try {
+            recording.dump(file);
+            final List<RecordedEvent> events = new ArrayList<>();
+            for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+                if (bean.equals(event.getString("bean"))) events.add(event);
+            }
+            return events;
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static RecordedEvent find(List<RecordedEvent> events, String type) {
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(type)) return event;
+        }
+        fail("No event " + type + " in " + events);
+        return null;
+    }
+}
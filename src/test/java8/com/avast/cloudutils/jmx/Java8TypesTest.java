@@ -0,0 +1,118 @@
+package com.avast.cloudutils.jmx;
+
+import com.avast.jmx.BeanOptions;
+import com.avast.jmx.DispatchMode;
+import com.avast.jmx.JMXProperty;
+import com.avast.jmx.MyDynamicBean;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import javax.management.Attribute;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Properties of Java 8 types. Compiled only on JDK 8+ (profile <code>java8</code>), the rest of the tests are Java 7.
+ */
+public class Java8TypesTest extends TestCase {
+
+    @SuppressWarnings("unused")
+    public static class Striped {
+        @JMXProperty(setable = true)
+        private LongAdder adder = new LongAdder();
+        @JMXProperty
+        private DoubleAdder doubleAdder = new DoubleAdder();
+        @JMXProperty(setable = true)
+        private LongAccumulator maximum = new LongAccumulator(new LongBinaryOperator() {
+            @Override
+            public long applyAsLong(long left, long right) {
+                return Math.max(left, right);
+            }
+        }, Long.MIN_VALUE);
+        @JMXProperty
+        private Map<String, LongAdder> adders = new LinkedHashMap<>();
+    }
+
+    public static class Config {
+        @JMXProperty(setable = true)
+        private Duration interval = Duration.ZERO;
+    }
+
+    private MBeanServer server() {
+        return MBeanServerFactory.newMBeanServer();
+    }
+
+    private ObjectName register(MBeanServer server, Object obj, BeanOptions options) throws Exception {
+        final String name = "com.avast.cloudutils.jmx:type=Java8TypesTest" + System.nanoTime();
+        new MyDynamicBean(name, "Test bean", obj, options).registerWith(server).register();
+        return new ObjectName(name);
+    }
+
+    @Test
+    public void testStripedCounters() throws Exception {
+        for (DispatchMode mode : DispatchMode.values()) {
+            final MBeanServer server = server();
+            final Striped striped = new Striped();
+            final ObjectName name = register(server, striped, BeanOptions.defaults().withDispatchMode(mode));
+
+            striped.adder.add(5);
+            striped.doubleAdder.add(1.5);
+            striped.maximum.accumulate(7);
+            striped.adders.put("a", new LongAdder());
+            striped.adders.get("a").add(3);
+
+            assertEquals(5L, server.getAttribute(name, "adder"));
+            assertEquals(1.5, server.getAttribute(name, "doubleAdder"));
+            assertEquals(7L, server.getAttribute(name, "maximum"));
+            assertEquals(3L, ((CompositeData) server.getAttribute(name, "adders")).get("a"));
+            for (MBeanAttributeInfo info : server.getMBeanInfo(name).getAttributes()) {
+                if (info.getName().equals("adder")) assertEquals("long", info.getType());
+                if (info.getName().equals("doubleAdder")) assertEquals("double", info.getType());
+            }
+
+            server.setAttribute(name, new Attribute("adder", 42L));
+            assertEquals(42L, striped.adder.sum());
+            server.setAttribute(name, new Attribute("maximum", 3L));
+            assertEquals(3L, striped.maximum.get());
+
+            server.invoke(name, "adderReset", new Object[0], new String[0]);
+            server.invoke(name, "doubleAdderReset", null, null);
+            assertEquals(0L, server.getAttribute(name, "adder"));
+            assertEquals(0.0, server.getAttribute(name, "doubleAdder"));
+        }
+    }
+
+    @Test
+    public void testPrimitiveReadsOfAdders() throws Exception {
+        for (DispatchMode mode : DispatchMode.values()) {
+            final Striped striped = new Striped();
+            striped.adder.add(5);
+            striped.doubleAdder.add(1.5);
+            final MyDynamicBean bean = new MyDynamicBean(null, "Test bean", striped, BeanOptions.defaults().withDispatchMode(mode));
+
+            assertEquals(5L, bean.getLongAttribute("adder"));
+            assertEquals(1.5, bean.getDoubleAttribute("doubleAdder"));
+        }
+    }
+
+    @Test
+    public void testDurationSetter() throws Exception {
+        for (DispatchMode mode : DispatchMode.values()) {
+            final Config config = new Config();
+            final MyDynamicBean bean = new MyDynamicBean(null, "Test bean", config, BeanOptions.defaults().withDispatchMode(mode));
+
+            bean.setAttribute(new Attribute("interval", "PT30S"));
+            assertEquals(Duration.ofSeconds(30), config.interval);
+        }
+    }
+}